@@ -0,0 +1,156 @@
+package com.example.cache.benchmark;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存版 redis 连接，供基准测试使用
+ * <p>
+ * 只实现批量缓存用到的命令（GET、MGET、SET、SETEX、DEL、PUBLISH 和 pipeline），数据存在 ConcurrentHashMap 中，不处理过期时间；
+ * 没有网络和 redis 服务端的开销，基准结果只反映客户端的 CPU 和内存分配
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/24 AM10:20
+ */
+public class InMemoryRedisConnectionFactory implements RedisConnectionFactory {
+
+    private final Map<ByteBuffer, byte[]> data = new ConcurrentHashMap<>();
+
+    /**
+     * 只读时忽略写入，用于固定基准测试中的命中率
+     */
+    private volatile boolean readOnly;
+
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        return (RedisConnection) Proxy.newProxyInstance(RedisConnection.class.getClassLoader(),
+            new Class[]{RedisConnection.class}, new ConnectionHandler());
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        throw new UnsupportedOperationException("cluster is not supported");
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return true;
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        throw new UnsupportedOperationException("sentinel is not supported");
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return null;
+    }
+
+    private Object execute(String command, Object[] args) {
+        switch (command) {
+            case "get":
+                return data.get(ByteBuffer.wrap((byte[]) args[0]));
+            case "mGet":
+                byte[][] keys = (byte[][]) args[0];
+                List<byte[]> values = new ArrayList<>(keys.length);
+                for (byte[] key : keys) {
+                    values.add(data.get(ByteBuffer.wrap(key)));
+                }
+                return values;
+            case "set":
+                this.write((byte[]) args[0], (byte[]) args[1]);
+                return Boolean.TRUE;
+            case "setEx":
+                this.write((byte[]) args[0], (byte[]) args[2]);
+                return Boolean.TRUE;
+            case "del":
+                long deleted = 0;
+                for (byte[] key : (byte[][]) args[0]) {
+                    if (!readOnly && data.remove(ByteBuffer.wrap(key)) != null) {
+                        deleted++;
+                    }
+                }
+                return deleted;
+            case "publish":
+                return 0L;
+            default:
+                throw new UnsupportedOperationException("command not supported: " + command);
+        }
+    }
+
+    private void write(byte[] key, byte[] value) {
+        if (!readOnly) {
+            data.put(ByteBuffer.wrap(key), value);
+        }
+    }
+
+    /**
+     * 一个连接，pipeline 状态只属于该连接
+     */
+    private class ConnectionHandler implements InvocationHandler {
+
+        private List<Object> pipelineResults;
+
+        private boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "InMemoryRedisConnection";
+                case "openPipeline":
+                    pipelineResults = new ArrayList<>();
+                    return null;
+                case "closePipeline":
+                    List<Object> results = pipelineResults == null ? Collections.emptyList() : pipelineResults;
+                    pipelineResults = null;
+                    return results;
+                case "isPipelined":
+                    return pipelineResults != null;
+                case "isQueueing":
+                    return false;
+                case "isClosed":
+                    return closed;
+                case "close":
+                    closed = true;
+                    return null;
+                case "getNativeConnection":
+                    return null;
+                default:
+                    Object result = InMemoryRedisConnectionFactory.this.execute(method.getName(), args);
+                    if (pipelineResults != null) {
+                        pipelineResults.add(result);
+                        return null;
+                    }
+                    return result;
+            }
+        }
+    }
+}
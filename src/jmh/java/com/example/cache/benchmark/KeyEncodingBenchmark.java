@@ -0,0 +1,83 @@
+package com.example.cache.benchmark;
+
+import com.example.cache.support.BatchCacheKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量 key 生成和编码基准测试（一批 Long id 生成 redis key 并编码为 byte[]）
+ * <p>
+ * 1 concat：prefix + ":" + id.toString()，再由 StringRedisSerializer.UTF_8 编码（原来的实现）
+ * 2 key：BatchCacheKeys.key + BatchCacheKeys.toBytes（需要 String key 时，如开启本地缓存）
+ * 3 rawKey：BatchCacheKeys.rawKey，前缀预先编码，id 直接写入 byte[]，不生成 String（只访问 redis 时）
+ * </p>
+ * 运行方式：mvn -Pjmh test-compile exec:exec -Djmh.args="KeyEncodingBenchmark"
+ *
+ * @author zhuwei
+ * @Date 2020/12/30 PM3:10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyEncodingBenchmark {
+
+    private static final String PREFIX = "user";
+
+    private static final String CACHE_KEY_PREFIX = PREFIX + ":";
+
+    private static final byte[] CACHE_KEY_PREFIX_BYTES = CACHE_KEY_PREFIX.getBytes(StandardCharsets.UTF_8);
+
+    @Param({"100", "1000"})
+    private int batchSize;
+
+    private List<Object> keyList;
+
+    @Setup
+    public void setUp() {
+        keyList = new ArrayList<>(batchSize);
+        for (long i = 0; i < batchSize; i++) {
+            keyList.add(1_000_000L + i);
+        }
+    }
+
+    @Benchmark
+    public void concat(Blackhole blackhole) {
+        for (Object key : keyList) {
+            String cacheKey = PREFIX + ":" + key.toString();
+            blackhole.consume(StringRedisSerializer.UTF_8.serialize(cacheKey));
+        }
+    }
+
+    @Benchmark
+    public void key(Blackhole blackhole) {
+        for (Object key : keyList) {
+            blackhole.consume(BatchCacheKeys.toBytes(BatchCacheKeys.key(CACHE_KEY_PREFIX, key)));
+        }
+    }
+
+    @Benchmark
+    public void rawKey(Blackhole blackhole) {
+        for (Object key : keyList) {
+            blackhole.consume(BatchCacheKeys.rawKey(CACHE_KEY_PREFIX_BYTES, key));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.cache.benchmark;
+
+import com.example.cache.codec.BatchCacheCodecs;
+import com.example.cache.codec.BatchValueSerializer;
+import com.example.cache.codec.CborBatchCacheCodec;
+import com.example.cache.codec.JsonBatchCacheCodec;
+import com.example.cache.codec.ValueCompressor;
+import com.example.cache.entity.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * value 编解码基准测试：redisTemplate 默认的 JSON（带 @class）、按类型的 JSON / CBOR，以及是否开启 LZ4 压缩
+ * <p>
+ * 运行方式：mvn -Pjmh test-compile exec:exec -Djmh.args="SerializationBenchmark"
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/24 AM11:40
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"template", "json", "cbor"})
+    private String codec;
+
+    @Param({"false", "true"})
+    private boolean compression;
+
+    /**
+     * 用户名长度，控制 value 大小
+     */
+    @Param({"16", "1024"})
+    private int nameLength;
+
+    private RedisSerializer<Object> serializer;
+
+    private User user;
+
+    private byte[] bytes;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        RedisSerializer<?> target;
+        if ("json".equals(codec)) {
+            target = new BatchValueSerializer(BatchCacheCodecs.get(JsonBatchCacheCodec.class), User.class);
+        } else if ("cbor".equals(codec)) {
+            target = new BatchValueSerializer(BatchCacheCodecs.get(CborBatchCacheCodec.class), User.class);
+        } else {
+            target = new GenericJackson2JsonRedisSerializer();
+        }
+        serializer = new ValueCompressor(compression, 256).wrap(target);
+
+        StringBuilder name = new StringBuilder(nameLength);
+        while (name.length() < nameLength) {
+            name.append("user-name-");
+        }
+        user = new User(1L, name.substring(0, nameLength));
+        bytes = serializer.serialize(user);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(user);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(bytes);
+    }
+}
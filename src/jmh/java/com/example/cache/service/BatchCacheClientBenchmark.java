@@ -0,0 +1,168 @@
+package com.example.cache.service;
+
+import com.example.cache.BatchCacheProperties;
+import com.example.cache.RedisMultiCache;
+import com.example.cache.annotation.BatchCache;
+import com.example.cache.benchmark.InMemoryRedisConnectionFactory;
+import com.example.cache.bloom.BloomFilterRegistry;
+import com.example.cache.codec.CborBatchCacheCodec;
+import com.example.cache.entity.User;
+import com.example.cache.local.HotKeyDetector;
+import com.example.cache.local.LocalBatchCache;
+import com.example.cache.metrics.BatchCacheMetrics;
+import com.example.cache.support.BatchCacheExecutors;
+import com.example.cache.support.BatchCacheGenerations;
+import com.example.cache.support.BatchCacheLoader;
+import com.example.cache.support.BatchCacheOperation;
+import com.example.cache.support.BatchCacheWriter;
+import com.example.cache.support.LeaseReleaseListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchCacheClientImpl 热点路径基准测试
+ * <p>
+ * 1 loadCache：不同批量大小、命中率和编解码方式下的整体耗时，未命中的 key 每次都调用加载方法（redis 只读，写回被忽略）
+ * 2 generatetKey / convertListToMap：key 拼接和结果转换
+ * </p>
+ * 运行方式：mvn -Pjmh test-compile exec:exec -Djmh.args="BatchCacheClientBenchmark"
+ *
+ * @author zhuwei
+ * @Date 2020/12/24 AM11:05
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchCacheClientBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int batchSize;
+
+    @Param({"0.0", "0.5", "0.9", "1.0"})
+    private double hitRatio;
+
+    @Param({"template", "cbor"})
+    private String codec;
+
+    private BatchCacheExecutors executors;
+
+    private BatchCacheClientImpl client;
+
+    private BatchCacheOperation operation;
+
+    private List<Object> keyList;
+
+    private List<Object> valueList;
+
+    private BatchCacheLoader loader;
+
+    @Setup
+    public void setup() throws Exception {
+        InMemoryRedisConnectionFactory connectionFactory = new InMemoryRedisConnectionFactory();
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(StringRedisSerializer.UTF_8);
+        redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+
+        RedisMultiCache redisMultiCache = new RedisMultiCache(null, redisTemplate, null, false);
+        executors = new BatchCacheExecutors(4, 4);
+        client = new BatchCacheClientImpl(redisMultiCache,
+            new LocalBatchCache(10_000, redisTemplate, "batch-cache:invalidation"),
+            new BatchCacheProperties(),
+            executors,
+            new BloomFilterRegistry(redisTemplate, 1_000_000, 0.01),
+            new BatchCacheWriter(redisMultiCache),
+            new BatchCacheMetrics(null),
+            new BatchCacheGenerations(redisMultiCache, executors, 0L, 500, 0L),
+            new HotKeyDetector(),
+            new LeaseReleaseListener(redisTemplate, "batch-cache:lease-release"));
+
+        Method method = UserSource.class.getMethod("cbor".equals(codec) ? "listByIdsCbor" : "listByIds", List.class);
+        operation = BatchCacheOperation.of(method, new String[]{"ids"}, method.getAnnotation(BatchCache.class));
+
+        // 前 hitRatio 比例的 key 预先写入缓存，之后只读
+        keyList = new ArrayList<>(batchSize);
+        valueList = new ArrayList<>(batchSize);
+        Map<String, Object> cached = new HashMap<>();
+        int hits = (int) Math.round(batchSize * hitRatio);
+        for (long id = 0; id < batchSize; id++) {
+            User user = newUser(id);
+            keyList.add(id);
+            valueList.add(user);
+            if (id < hits) {
+                cached.put(client.generatetKey(operation, id), user);
+            }
+        }
+        redisMultiCache.putBatch(cached, key -> operation.getSeconds(), operation.getValueSerializer());
+        connectionFactory.setReadOnly(true);
+
+        loader = missKeyList -> {
+            Map<Object, Object> loaded = new HashMap<>((int) (missKeyList.size() / 0.75f) + 1);
+            missKeyList.forEach(key -> loaded.put(key, newUser((Long) key)));
+            return loaded;
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        executors.destroy();
+    }
+
+    @Benchmark
+    public Map<Object, Object> loadCache() {
+        return client.loadCache(operation, keyList, loader);
+    }
+
+    @Benchmark
+    public void generateKey(Blackhole blackhole) {
+        for (Object key : keyList) {
+            blackhole.consume(client.generatetKey(operation, key));
+        }
+    }
+
+    @Benchmark
+    public Map<Object, Object> convertListToMap() {
+        return client.convertListToMap(operation, valueList);
+    }
+
+    private static User newUser(long id) {
+        return new User(id, "user-" + id);
+    }
+
+    /**
+     * 提供 @BatchCache 注解的方法，只用于解析元数据
+     */
+    public interface UserSource {
+
+        @BatchCache(value = "bench:user", seconds = 600)
+        Map<Long, User> listByIds(List<Long> ids);
+
+        @BatchCache(value = "bench:user:cbor", seconds = 600, codec = CborBatchCacheCodec.class)
+        Map<Long, User> listByIdsCbor(List<Long> ids);
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.cache;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 批量缓存配置项，前缀 batch-cache
+ *
+ * @author zhuwei
+ * @Date 2020/12/3 PM2:10
+ */
+@Data
+@ConfigurationProperties(prefix = "batch-cache")
+public class BatchCacheProperties {
+
+    /**
+     * 本地一级缓存配置
+     */
+    private Local local = new Local();
+
+    /**
+     * 批量读写 pipeline 配置
+     */
+    private Pipeline pipeline = new Pipeline();
+
+    /**
+     * 并发加载合并配置
+     */
+    private SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 后台加载配置
+     */
+    private Loader loader = new Loader();
+
+    /**
+     * 单 key 请求合并配置
+     */
+    private Dispatcher dispatcher = new Dispatcher();
+
+    /**
+     * 布隆过滤器配置
+     */
+    private Bloom bloom = new Bloom();
+
+    /**
+     * 加载结果异步写回配置
+     */
+    private WriteBehind writeBehind = new WriteBehind();
+
+    /**
+     * value 压缩配置
+     */
+    private Compression compression = new Compression();
+
+    /**
+     * micrometer 指标配置
+     */
+    private Metrics metrics = new Metrics();
+
+    /**
+     * redis 熔断配置
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * 缓存版本号配置
+     */
+    private Generation generation = new Generation();
+
+    /**
+     * 热点 key 识别配置
+     */
+    private HotKey hotKey = new HotKey();
+
+    @Data
+    public static class Local {
+
+        /**
+         * 本地缓存最大条目数，超过后按 W-TinyLFU 策略淘汰
+         */
+        private long maximumSize = 10_000L;
+
+        /**
+         * 本地缓存最大字节数（按序列化后的长度估算），>0 时代替 maximumSize 限制容量，避免大对象占满堆内存
+         */
+        private long maximumWeight = 0L;
+
+        /**
+         * 跨节点失效通知的 redis pub/sub 频道
+         */
+        private String invalidationChannel = "batch-cache:invalidation";
+    }
+
+    @Data
+    public static class Pipeline {
+
+        /**
+         * 单个 pipeline 的最大命令数，超过后拆分，<=0 表示不拆分
+         */
+        private int maxSize = 500;
+
+        /**
+         * 拆分后并发执行的线程数，应小于连接池 max-active
+         */
+        private int parallelism = 4;
+
+        /**
+         * 批量读写使用的命令方式：pipeline（逐个 GET/SETEX）或 multi_key（MGET + lua 批量 SETEX），对所有缓存生效
+         */
+        private BatchCommandStrategy commandStrategy = BatchCommandStrategy.PIPELINE;
+    }
+
+    @Data
+    public static class SingleFlight {
+
+        /**
+         * 是否合并本 JVM 内对同一个 key 的并发加载
+         */
+        private boolean enabled = true;
+
+        /**
+         * 是否通过 redis 租约（SET NX PX）合并跨节点的加载
+         */
+        private boolean distributed = false;
+
+        /**
+         * 租约时长（毫秒），应大于加载方法的耗时
+         */
+        private long leaseMillis = 3000L;
+
+        /**
+         * 其他节点持有租约时，第一次读取 redis 前的等待时间（毫秒），之后每次加倍；收到租约释放通知时立即读取
+         */
+        private long pollMillis = 20L;
+
+        /**
+         * 租约释放通知的 redis pub/sub 频道
+         */
+        private String releaseChannel = "batch-cache:lease-release";
+    }
+
+    @Data
+    public static class Loader {
+
+        /**
+         * 后台调用加载方法的线程数
+         */
+        private int threads = 8;
+    }
+
+    @Data
+    public static class Dispatcher {
+
+        /**
+         * 合并窗口（毫秒），窗口内到达的单 key 请求合并成一次批量调用
+         */
+        private long windowMillis = 2L;
+
+        /**
+         * 单次合并的最大 key 数，达到后不等窗口结束立即执行
+         */
+        private int maxBatchSize = 100;
+    }
+
+    @Data
+    public static class Bloom {
+
+        /**
+         * 默认预计写入的 id 数量
+         */
+        private long expectedInsertions = 1_000_000L;
+
+        /**
+         * 默认误判率
+         */
+        private double fpp = 0.01D;
+    }
+
+    @Data
+    public static class WriteBehind {
+
+        /**
+         * 是否异步写回 redis，开启后请求线程不再等待写入
+         */
+        private boolean enabled = false;
+
+        /**
+         * 队列容量（条数）
+         */
+        private int capacity = 10_000;
+
+        /**
+         * 后台线程单次写入的最大条数
+         */
+        private int maxBatchSize = 500;
+
+        /**
+         * 队列为空时后台线程的等待间隔（毫秒）
+         */
+        private long flushMillis = 5L;
+
+        /**
+         * 队列满时的处理方式：block、drop、caller_runs
+         */
+        private WriteBehindOverflowPolicy overflowPolicy = WriteBehindOverflowPolicy.CALLER_RUNS;
+
+        /**
+         * block 策略下最多等待的时间（毫秒），超时后由调用线程同步写入
+         */
+        private long blockMillis = 50L;
+    }
+
+    @Data
+    public static class Compression {
+
+        /**
+         * 是否压缩写入的 value；关闭后已压缩的数据仍然可以读取
+         */
+        private boolean enabled = false;
+
+        /**
+         * 序列化后达到该字节数才压缩
+         */
+        private int thresholdBytes = 1024;
+    }
+
+    @Data
+    public static class Metrics {
+
+        /**
+         * 是否记录 micrometer 指标（需要 MeterRegistry，如引入 actuator）
+         */
+        private boolean enabled = true;
+    }
+
+    @Data
+    public static class CircuitBreaker {
+
+        /**
+         * 是否开启熔断，redis 不可用时直接跳过，不等待超时
+         */
+        private boolean enabled = true;
+
+        /**
+         * 连续失败（包括慢调用）多少次后打开
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * 超过该耗时（毫秒）的调用按失败计，<=0 不统计慢调用
+         */
+        private long slowCallMillis = 500L;
+
+        /**
+         * 打开后多久（毫秒）开始在后台探测
+         */
+        private long openMillis = 5000L;
+    }
+
+    @Data
+    public static class Generation {
+
+        /**
+         * 定时读取版本号的间隔（毫秒），其他节点清空缓存后本节点最多延迟该时间生效
+         */
+        private long refreshMillis = 1000L;
+
+        /**
+         * 回收旧版本时单次 UNLINK 的 key 数
+         */
+        private int sweepBatchSize = 500;
+
+        /**
+         * 回收旧版本时批次之间的暂停（毫秒），降低对 redis 的影响
+         */
+        private long sweepPauseMillis = 10L;
+    }
+
+    @Data
+    public static class HotKey {
+
+        /**
+         * 是否识别热点 key；只有 @BatchCache(hotKeyLocal = true) 的缓存在本地保留热点 key 的短期副本，其余缓存只统计
+         */
+        private boolean enabled = false;
+
+        /**
+         * 统计窗口（毫秒）
+         */
+        private long windowMillis = 1000L;
+
+        /**
+         * 窗口内访问次数达到该值视为热点
+         */
+        private int threshold = 1000;
+
+        /**
+         * 最多保留的热点 key 数
+         */
+        private int topK = 100;
+
+        /**
+         * 热点 key 本地副本的过期时间（秒）
+         */
+        private long localSeconds = 2L;
+
+        /**
+         * count-min sketch 每行的计数器个数，越大误判越少
+         */
+        private int sketchWidth = 4096;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.cache;
+
+/**
+ * 批量读写使用的 redis 命令方式
+ *
+ * @author zhuwei
+ * @Date 2020/12/7 PM3:15
+ */
+public enum BatchCommandStrategy {
+
+    /**
+     * pipeline 中每个 key 一条 GET / SETEX 命令
+     */
+    PIPELINE,
+
+    /**
+     * 读使用一条 MGET，写使用一次 lua 脚本（EVALSHA）批量 SETEX，减少 redis 解析的命令数和回复帧
+     */
+    MULTI_KEY
+}
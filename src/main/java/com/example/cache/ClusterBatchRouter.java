@@ -0,0 +1,232 @@
+package com.example.cache;
+
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.models.partitions.Partitions;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * redis cluster 批量读写路由
+ * <p>
+ * 1 按 CRC16 计算 key 的 slot，再按 slot 所属的主节点分组，每个节点使用自己的连接发送命令（lettuce 自动批量发送），各节点并发执行
+ * 2 multi_key 方式按 slot 分组后每个 slot 一条 MGET，避免 CROSSSLOT
+ * 3 结果按原 key 顺序合并
+ * 4 批量删除时 UNLINK 按 slot 分组后每个 slot 一条，hash 分桶的 HDEL 每个桶一条
+ * 5 扩容迁移中的 slot 返回 MOVED / ASK 时，这部分 key 通过集群连接重试（lettuce 自动跟随重定向并刷新拓扑）
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/22 AM10:15
+ */
+public class ClusterBatchRouter {
+
+    private final StatefulRedisClusterConnection<byte[], byte[]> connection;
+
+    public ClusterBatchRouter(StatefulRedisClusterConnection<byte[], byte[]> connection) {
+        this.connection = connection;
+    }
+
+    public StatefulRedisClusterConnection<byte[], byte[]> getConnection() {
+        return connection;
+    }
+
+    /**
+     * 批量读取
+     *
+     * @param keys     序列化后的 key
+     * @param multiKey 是否使用 MGET
+     * @return 与 keys 一一对应的原始数据，未命中的位置为 null
+     */
+    public CompletableFuture<byte[][]> get(byte[][] keys, boolean multiKey) {
+        byte[][] values = new byte[keys.length][];
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        this.groupByNode(keys).forEach((nodeId, indexes) -> futures.add(this.nodeCommands(nodeId)
+            .thenCompose(commands -> multiKey
+                ? this.mgetOnNode(commands, keys, indexes, values)
+                : this.getOnNode(commands, keys, indexes, values))));
+        return allOf(futures).thenApply(v -> values);
+    }
+
+    /**
+     * 批量写入，每个 key 一条 SETEX
+     *
+     * @param keys    序列化后的 key
+     * @param values  与 keys 一一对应的序列化后的 value
+     * @param seconds 与 keys 一一对应的过期时间（秒）
+     */
+    public CompletableFuture<Void> setex(byte[][] keys, byte[][] values, long[] seconds) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        this.groupByNode(keys).forEach((nodeId, indexes) -> futures.add(this.nodeCommands(nodeId)
+            .thenCompose(commands -> {
+                List<CompletableFuture<Void>> nodeFutures = new ArrayList<>(indexes.size());
+                for (int i : indexes) {
+                    nodeFutures.add(redirectable(commands.setex(keys[i], seconds[i], values[i]),
+                        () -> connection.async().setex(keys[i], seconds[i], values[i])).thenAccept(ok -> {
+                    }));
+                }
+                return allOf(nodeFutures);
+            })));
+        return allOf(futures);
+    }
+
+    /**
+     * 批量删除，按 slot 分组后每个 slot 一条 UNLINK
+     *
+     * @param keys 序列化后的 key
+     */
+    public CompletableFuture<Void> unlink(byte[][] keys) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        this.groupByNode(keys).forEach((nodeId, indexes) -> futures.add(this.nodeCommands(nodeId)
+            .thenCompose(commands -> {
+                List<CompletableFuture<Void>> nodeFutures = new ArrayList<>();
+                for (List<Integer> slotIndexes : groupBySlot(keys, indexes).values()) {
+                    byte[][] slotKeys = select(keys, slotIndexes);
+                    nodeFutures.add(redirectable(commands.unlink(slotKeys), () -> connection.async().unlink(slotKeys))
+                        .thenAccept(count -> {
+                        }));
+                }
+                return allOf(nodeFutures);
+            })));
+        return allOf(futures);
+    }
+
+    /**
+     * 批量删除 hash field，每个 hash 一条 HDEL
+     *
+     * @param keys   序列化后的 hash key
+     * @param fields 与 keys 一一对应的需要删除的 field
+     */
+    public CompletableFuture<Void> hdel(byte[][] keys, byte[][][] fields) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        this.groupByNode(keys).forEach((nodeId, indexes) -> futures.add(this.nodeCommands(nodeId)
+            .thenCompose(commands -> {
+                List<CompletableFuture<Void>> nodeFutures = new ArrayList<>(indexes.size());
+                for (int i : indexes) {
+                    nodeFutures.add(redirectable(commands.hdel(keys[i], fields[i]), () -> connection.async().hdel(keys[i], fields[i]))
+                        .thenAccept(count -> {
+                        }));
+                }
+                return allOf(nodeFutures);
+            })));
+        return allOf(futures);
+    }
+
+    /**
+     * 按 slot 所属的主节点分组
+     *
+     * @return nodeId -> key 下标，拓扑中找不到节点的 key 归到 null，由集群连接路由
+     */
+    private Map<String, List<Integer>> groupByNode(byte[][] keys) {
+        Partitions partitions = connection.getPartitions();
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            RedisClusterNode node = partitions.getPartitionBySlot(SlotHash.getSlot(keys[i]));
+            groups.computeIfAbsent(node == null ? null : node.getNodeId(), nodeId -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    /**
+     * 节点连接，节点不存在时使用集群连接
+     */
+    private CompletableFuture<RedisClusterAsyncCommands<byte[], byte[]>> nodeCommands(String nodeId) {
+        if (nodeId == null) {
+            return CompletableFuture.completedFuture(connection.async());
+        }
+        return connection.getConnectionAsync(nodeId)
+            .<RedisClusterAsyncCommands<byte[], byte[]>>thenApply(StatefulRedisConnection::async)
+            .exceptionally(e -> connection.async());
+    }
+
+    private CompletableFuture<Void> getOnNode(RedisClusterAsyncCommands<byte[], byte[]> commands, byte[][] keys,
+                                              List<Integer> indexes, byte[][] values) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(indexes.size());
+        for (int i : indexes) {
+            futures.add(redirectable(commands.get(keys[i]), () -> connection.async().get(keys[i]))
+                .thenAccept(value -> values[i] = value));
+        }
+        return allOf(futures);
+    }
+
+    private CompletableFuture<Void> mgetOnNode(RedisClusterAsyncCommands<byte[], byte[]> commands, byte[][] keys,
+                                               List<Integer> indexes, byte[][] values) {
+        Map<Integer, List<Integer>> slots = groupBySlot(keys, indexes);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(slots.size());
+        for (List<Integer> slotIndexes : slots.values()) {
+            byte[][] slotKeys = select(keys, slotIndexes);
+            futures.add(redirectable(commands.mget(slotKeys), () -> connection.async().mget(slotKeys))
+                .thenAccept(keyValues -> {
+                    for (int j = 0; j < keyValues.size(); j++) {
+                        KeyValue<byte[], byte[]> keyValue = keyValues.get(j);
+                        values[slotIndexes.get(j)] = keyValue.getValueOrElse(null);
+                    }
+                }));
+        }
+        return allOf(futures);
+    }
+
+    /**
+     * 同一节点上的 key 按 slot 分组，multi-key 命令不能跨 slot
+     *
+     * @return slot -> key 下标
+     */
+    private static Map<Integer, List<Integer>> groupBySlot(byte[][] keys, List<Integer> indexes) {
+        Map<Integer, List<Integer>> slots = new LinkedHashMap<>();
+        for (int i : indexes) {
+            slots.computeIfAbsent(SlotHash.getSlot(keys[i]), slot -> new ArrayList<>()).add(i);
+        }
+        return slots;
+    }
+
+    private static byte[][] select(byte[][] keys, List<Integer> indexes) {
+        byte[][] selected = new byte[indexes.size()][];
+        for (int j = 0; j < selected.length; j++) {
+            selected[j] = keys[indexes.get(j)];
+        }
+        return selected;
+    }
+
+    /**
+     * 节点返回 MOVED / ASK 时通过集群连接重试一次
+     */
+    private static <T> CompletableFuture<T> redirectable(RedisFuture<T> future, Supplier<RedisFuture<T>> retry) {
+        return future.toCompletableFuture()
+            .handle((value, e) -> {
+                if (e == null) {
+                    return CompletableFuture.completedFuture(value);
+                }
+                if (isRedirect(e)) {
+                    return retry.get().toCompletableFuture();
+                }
+                CompletableFuture<T> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            })
+            .thenCompose(f -> f);
+    }
+
+    private static boolean isRedirect(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (!(cause instanceof RedisCommandExecutionException) || cause.getMessage() == null) {
+            return false;
+        }
+        return cause.getMessage().startsWith("MOVED") || cause.getMessage().startsWith("ASK");
+    }
+
+    private static CompletableFuture<Void> allOf(List<CompletableFuture<Void>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+}
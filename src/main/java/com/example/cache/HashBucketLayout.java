@@ -0,0 +1,133 @@
+package com.example.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * hash 分桶存储布局
+ * <p>
+ * 缓存 key（prefix:id）按 id / bucketSize 分桶，同一个桶的数据存入一个 redis hash（prefix:bucket:n），field 为 id。
+ * 大量小对象时每个对象不再是一个独立的 key，省去每个 key 的元数据和过期时间开销；批量读取时每个桶一条 HMGET。
+ * </p>
+ * bucketSize 不宜超过 hash-max-ziplist-entries（redis 7 为 hash-max-listpack-entries，默认 128），
+ * 单个 value 也不宜超过 hash-max-ziplist-value（默认 64 字节），否则桶会转为 hashtable 编码，节省的内存有限
+ * <p>
+ * redis 6 不支持 field 级别的过期时间，每个 field 的 value 前 8 字节保存该 field 的过期时间（毫秒时间戳，大端）：
+ * 读取时过期的 field 按未命中处理，写入时由脚本清理过期的 field，桶的过期时间为剩余 field 中最晚的过期时间
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/23 AM10:40
+ */
+public class HashBucketLayout {
+
+    private static final String BUCKET_SEGMENT = "bucket:";
+
+    /**
+     * field value 中过期时间的字节数
+     */
+    private static final int EXPIRE_AT_LENGTH = 8;
+
+    /**
+     * 拼接好分隔符的缓存 key 前缀：prefix + ":"
+     */
+    private final String cacheKeyPrefix;
+
+    private final long bucketSize;
+
+    public HashBucketLayout(String cacheKeyPrefix, long bucketSize) {
+        if (bucketSize <= 0) {
+            throw new IllegalStateException("the bucketSize must be positive");
+        }
+        this.cacheKeyPrefix = cacheKeyPrefix;
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * 缓存 key 所在的桶
+     *
+     * @throws IllegalStateException 缓存 key 不属于该前缀，或 id 不是整数
+     */
+    public String bucketKey(String cacheKey) {
+        String id = this.field(cacheKey);
+        long bucket;
+        try {
+            bucket = Math.floorDiv(Long.parseLong(id), bucketSize);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("the hash bucket requires a numeric id: " + cacheKey, e);
+        }
+        return cacheKeyPrefix + BUCKET_SEGMENT + bucket;
+    }
+
+    /**
+     * 缓存 key 在桶中的 field，即 id
+     */
+    public String field(String cacheKey) {
+        if (!cacheKey.startsWith(cacheKeyPrefix)) {
+            throw new IllegalStateException("the cache key does not belong to " + cacheKeyPrefix + ": " + cacheKey);
+        }
+        return cacheKey.substring(cacheKeyPrefix.length());
+    }
+
+    /**
+     * 按桶分组
+     *
+     * @return 桶 -> 缓存 key 在 cacheKeyList 中的下标，按首次出现的顺序
+     */
+    public Map<String, List<Integer>> group(List<String> cacheKeyList) {
+        Map<String, List<Integer>> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < cacheKeyList.size(); i++) {
+            buckets.computeIfAbsent(this.bucketKey(cacheKeyList.get(i)), bucketKey -> new ArrayList<>()).add(i);
+        }
+        return buckets;
+    }
+
+    /**
+     * 写入桶的 field value：[过期时间 8字节][序列化后的缓存对象]
+     *
+     * @param value    序列化后的缓存对象
+     * @param expireAt 过期时间（毫秒时间戳）
+     */
+    public static byte[] encodeValue(byte[] value, long expireAt) {
+        byte[] bytes = new byte[EXPIRE_AT_LENGTH + value.length];
+        for (int i = EXPIRE_AT_LENGTH - 1; i >= 0; i--) {
+            bytes[i] = (byte) expireAt;
+            expireAt >>>= 8;
+        }
+        System.arraycopy(value, 0, bytes, EXPIRE_AT_LENGTH, value.length);
+        return bytes;
+    }
+
+    /**
+     * 读取桶的 field value
+     *
+     * @param bytes HMGET 返回的 field value
+     * @param now   当前时间（毫秒时间戳）
+     * @return 序列化后的缓存对象；不存在、已过期或格式不正确时返回 null
+     */
+    public static byte[] decodeValue(byte[] bytes, long now) {
+        if (bytes == null || bytes.length < EXPIRE_AT_LENGTH) {
+            return null;
+        }
+        long expireAt = 0L;
+        for (int i = 0; i < EXPIRE_AT_LENGTH; i++) {
+            expireAt = expireAt << 8 | (bytes[i] & 0xFFL);
+        }
+        if (expireAt <= now) {
+            return null;
+        }
+        byte[] value = new byte[bytes.length - EXPIRE_AT_LENGTH];
+        System.arraycopy(bytes, EXPIRE_AT_LENGTH, value, 0, value.length);
+        return value;
+    }
+
+    public String getCacheKeyPrefix() {
+        return cacheKeyPrefix;
+    }
+
+    public long getBucketSize() {
+        return bucketSize;
+    }
+}
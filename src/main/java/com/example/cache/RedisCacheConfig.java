@@ -1,9 +1,23 @@
 package com.example.cache;
 
 import com.example.cache.aspect.BatchCacheAspect;
+import com.example.cache.bloom.BloomFilterRegistry;
+import com.example.cache.codec.ValueCompressor;
+import com.example.cache.local.HotKeyDetector;
+import com.example.cache.local.LocalBatchCache;
+import com.example.cache.metrics.HotKeyEndpoint;
+import com.example.cache.metrics.BatchCacheMetrics;
 import com.example.cache.service.BatchCacheClient;
+import com.example.cache.support.BatchCacheExecutors;
+import com.example.cache.support.BatchCacheGenerations;
+import com.example.cache.support.BatchCacheStorageValidator;
+import com.example.cache.support.BatchCacheWriter;
+import com.example.cache.support.LeaseReleaseListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
@@ -11,9 +25,13 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
@@ -31,6 +49,7 @@ import java.util.Map;
 @EnableCaching
 @Configuration
 @ConditionalOnClass(RedisMultiCache.class)
+@EnableConfigurationProperties(BatchCacheProperties.class)
 public class RedisCacheConfig extends CachingConfigurerSupport {
 
     /**
@@ -40,6 +59,12 @@ public class RedisCacheConfig extends CachingConfigurerSupport {
 
     public static final String BATCH_CACHE = "batch_cache";
 
+    /**
+     * redisTemplate 和 RedisCacheConfiguration 共用同一个 value 序列化方式，
+     * 未指定 @BatchCache.codec 的批量缓存和单个缓存读写的数据格式一致
+     */
+    private final GenericJackson2JsonRedisSerializer valueSerializer = new GenericJackson2JsonRedisSerializer();
+
     /*@Primary
     @Bean("dataCache")
     public RedisMultiCache dataCache(RedisTemplate redisTemplate, RedisCacheManager cacheManager) {
@@ -48,11 +73,150 @@ public class RedisCacheConfig extends CachingConfigurerSupport {
     }*/
 
     @Bean("batchCache")
-    public RedisMultiCache dataListCache(RedisTemplate redisTemplate, RedisCacheManager cacheManager) {
-        return new RedisMultiCache(cacheManager.getCache(BATCH_CACHE)
+    public RedisMultiCache dataListCache(RedisTemplate redisTemplate, RedisCacheManager cacheManager, LocalBatchCache localBatchCache,
+                                         BatchCacheProperties properties, BatchCacheExecutors batchCacheExecutors,
+                                         ValueCompressor valueCompressor) {
+        RedisMultiCache redisMultiCache = new RedisMultiCache(cacheManager.getCache(BATCH_CACHE)
             , redisTemplate
             , cacheManager.getCacheConfigurations().get(BATCH_CACHE)
-            , true);
+            , false);
+        redisMultiCache.setLocalCache(localBatchCache);
+        redisMultiCache.setMaxPipelineSize(properties.getPipeline().getMaxSize());
+        redisMultiCache.setPipelineExecutor(batchCacheExecutors.getPipeline());
+        redisMultiCache.setCallbackExecutor(batchCacheExecutors.getCallback());
+        // 批量读写命令方式，全局配置，对所有缓存生效
+        redisMultiCache.setCommandStrategy(properties.getPipeline().getCommandStrategy());
+        redisMultiCache.setValueCompressor(valueCompressor);
+        // redis 不可用时熔断，定时线程只负责调度，探测（阻塞的 PING）在 probe 线程中执行
+        BatchCacheProperties.CircuitBreaker circuitBreaker = properties.getCircuitBreaker();
+        if (circuitBreaker.isEnabled()) {
+            redisMultiCache.setCircuitBreaker(new RedisCircuitBreaker(circuitBreaker.getFailureThreshold(),
+                circuitBreaker.getSlowCallMillis(), circuitBreaker.getOpenMillis(),
+                () -> "PONG".equals(redisTemplate.execute((RedisCallback<String>) RedisConnection::ping)),
+                batchCacheExecutors.getScheduler(), batchCacheExecutors.getProbe()));
+        }
+        return redisMultiCache;
+    }
+
+    /**
+     * 批量缓存 value 压缩，读取时总是识别压缩数据，写入时按 batch-cache.compression 配置压缩
+     */
+    @Bean
+    public ValueCompressor valueCompressor(BatchCacheProperties properties) {
+        BatchCacheProperties.Compression compression = properties.getCompression();
+        return new ValueCompressor(compression.isEnabled(), compression.getThresholdBytes());
+    }
+
+    /**
+     * 批量缓存使用的线程池（pipeline 并发、后台加载、定时任务）
+     */
+    @Bean
+    public BatchCacheExecutors batchCacheExecutors(BatchCacheProperties properties) {
+        return new BatchCacheExecutors(properties.getPipeline().getParallelism(), properties.getLoader().getThreads());
+    }
+
+    /**
+     * 批量缓存版本号，按前缀清空缓存时版本号加一，不再在启动时清除 redis 中已有的缓存
+     */
+    @Bean
+    public BatchCacheGenerations batchCacheGenerations(RedisMultiCache batchCache, BatchCacheExecutors batchCacheExecutors,
+                                                       BatchCacheProperties properties) {
+        BatchCacheProperties.Generation generation = properties.getGeneration();
+        return new BatchCacheGenerations(batchCache, batchCacheExecutors, generation.getRefreshMillis(),
+            generation.getSweepBatchSize(), generation.getSweepPauseMillis());
+    }
+
+    /**
+     * 热点 key 识别，batch-cache.hot-key.enabled 关闭时不统计
+     */
+    @Bean
+    public HotKeyDetector hotKeyDetector(BatchCacheProperties properties, BatchCacheExecutors batchCacheExecutors) {
+        BatchCacheProperties.HotKey hotKey = properties.getHotKey();
+        if (!hotKey.isEnabled()) {
+            return new HotKeyDetector();
+        }
+        return new HotKeyDetector(hotKey.getSketchWidth(), hotKey.getThreshold(), hotKey.getTopK(), hotKey.getWindowMillis(),
+            hotKey.getLocalSeconds(), batchCacheExecutors.getScheduler());
+    }
+
+    /**
+     * 当前热点 key，通过 actuator /actuator/hotkeys 查看
+     */
+    @Bean
+    public HotKeyEndpoint hotKeyEndpoint(HotKeyDetector hotKeyDetector) {
+        return new HotKeyEndpoint(hotKeyDetector);
+    }
+
+    /**
+     * 加载结果写回 redis，batch-cache.write-behind.enabled 开启异步写入
+     */
+    @Bean
+    public BatchCacheWriter batchCacheWriter(RedisMultiCache batchCache, BatchCacheProperties properties) {
+        BatchCacheProperties.WriteBehind config = properties.getWriteBehind();
+        if (!config.isEnabled()) {
+            return new BatchCacheWriter(batchCache);
+        }
+        return new BatchCacheWriter(batchCache, true, config.getCapacity(), config.getMaxBatchSize(),
+            config.getFlushMillis(), config.getOverflowPolicy(), config.getBlockMillis());
+    }
+
+    /**
+     * 批量缓存指标，按缓存名称前缀打标签，通过 actuator /actuator/metrics 查看；没有 MeterRegistry 或关闭时不记录
+     */
+    @Bean
+    public BatchCacheMetrics batchCacheMetrics(ObjectProvider<MeterRegistry> meterRegistry, BatchCacheProperties properties,
+                                               BatchCacheWriter batchCacheWriter, ValueCompressor valueCompressor,
+                                               RedisMultiCache batchCache, HotKeyDetector hotKeyDetector) {
+        BatchCacheMetrics metrics = new BatchCacheMetrics(properties.getMetrics().isEnabled() ? meterRegistry.getIfAvailable() : null);
+        metrics.bindWriter(batchCacheWriter);
+        metrics.bindCompression(valueCompressor.getStats());
+        if (batchCache.getCircuitBreaker() != null) {
+            metrics.bindCircuitBreaker(batchCache.getCircuitBreaker());
+        }
+        metrics.bindHotKeys(hotKeyDetector);
+        return metrics;
+    }
+
+    /**
+     * 本地一级缓存，各 @BatchCache 通过 localSeconds 单独开启
+     */
+    @Bean
+    public LocalBatchCache localBatchCache(RedisTemplate redisTemplate, BatchCacheProperties properties) {
+        BatchCacheProperties.Local local = properties.getLocal();
+        return new LocalBatchCache(local.getMaximumSize(), local.getMaximumWeight(), redisTemplate, local.getInvalidationChannel());
+    }
+
+    /**
+     * 布隆过滤器注册表，按缓存前缀注册后拦截一定不存在的 id
+     */
+    @Bean
+    public BloomFilterRegistry bloomFilterRegistry(RedisTemplate redisTemplate, BatchCacheProperties properties,
+                                                   RedisMultiCache batchCache) {
+        BatchCacheProperties.Bloom bloom = properties.getBloom();
+        return new BloomFilterRegistry(redisTemplate, bloom.getExpectedInsertions(), bloom.getFpp(), batchCache.getCircuitBreaker());
+    }
+
+    /**
+     * 订阅其他节点的本地缓存失效通知、加载租约释放通知
+     */
+    @Bean
+    public RedisMessageListenerContainer batchCacheListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                     LocalBatchCache localBatchCache,
+                                                                     LeaseReleaseListener leaseReleaseListener,
+                                                                     BatchCacheProperties properties) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(localBatchCache, new ChannelTopic(properties.getLocal().getInvalidationChannel()));
+        container.addMessageListener(leaseReleaseListener, new ChannelTopic(properties.getSingleFlight().getReleaseChannel()));
+        return container;
+    }
+
+    /**
+     * 跨节点加载租约的释放通知，等待其他节点加载的请求收到通知后立即读取 redis
+     */
+    @Bean
+    public LeaseReleaseListener leaseReleaseListener(RedisTemplate redisTemplate, BatchCacheProperties properties) {
+        return new LeaseReleaseListener(redisTemplate, properties.getSingleFlight().getReleaseChannel());
     }
 
     /******************************************     ⬇redis cache 配置⬇   ******************************************/
@@ -65,9 +229,8 @@ public class RedisCacheConfig extends CachingConfigurerSupport {
     public RedisTemplate<String, Object> redisTemplate(LettuceConnectionFactory lettuceConnectionFactory) {
         RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
         redisTemplate.setConnectionFactory(lettuceConnectionFactory);
-        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer();
         redisTemplate.setKeySerializer(StringRedisSerializer.UTF_8);
-        redisTemplate.setValueSerializer(serializer);
+        redisTemplate.setValueSerializer(valueSerializer);
         redisTemplate.afterPropertiesSet();
         return redisTemplate;
     }
@@ -107,7 +270,6 @@ public class RedisCacheConfig extends CachingConfigurerSupport {
      */
     private RedisCacheConfiguration redisCacheConfig(long seconds) {
 
-        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer();
         return RedisCacheConfiguration.defaultCacheConfig()
             // TODO 注意 这里的 key 和 value 的 serialize 务必和 redisTemplate 保持一致，否则批量操作和单个操作使用不一样的序列化工具会导致读取缓存时报错
             .serializeKeysWith(RedisSerializationContext
@@ -115,7 +277,7 @@ public class RedisCacheConfig extends CachingConfigurerSupport {
                 .fromSerializer(StringRedisSerializer.UTF_8))
             .serializeValuesWith(RedisSerializationContext
                 .SerializationPair
-                .fromSerializer(serializer))
+                .fromSerializer(valueSerializer))
             .computePrefixWith(RedisCacheConfig::computeCachePrefix)
             .entryTtl(Duration.ofSeconds(seconds));
     }
@@ -134,4 +296,12 @@ public class RedisCacheConfig extends CachingConfigurerSupport {
     public BatchCacheAspect redisLockAspect(BatchCacheClient batchCacheClient) {
         return new BatchCacheAspect(batchCacheClient);
     }
+
+    /**
+     * 启动时校验 @BatchCacheEvict / @BatchCachePut 的存储方式与同一个前缀的 @BatchCache 一致
+     */
+    @Bean
+    public static BatchCacheStorageValidator batchCacheStorageValidator() {
+        return new BatchCacheStorageValidator();
+    }
 }
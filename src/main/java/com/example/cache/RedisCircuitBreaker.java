@@ -0,0 +1,215 @@
+package com.example.cache;
+
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.RedisSystemException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * redis 熔断器
+ * <p>
+ * 1 关闭状态下连续 failureThreshold 次失败或慢调用（超过 slowCallMillis）后打开
+ * 2 打开状态下不访问 redis，读取按未命中处理、写入直接跳过，请求不再等待 lettuce 超时或连接池 max-wait
+ * 3 打开 openMillis 后探测（半开状态，业务请求仍不访问 redis），探测成功且不慢时关闭，否则继续打开；
+ * scheduler 只负责定时，探测（如阻塞的 PING）提交到 probeExecutor 执行，不占用 scheduler 线程
+ * 4 只有连接失败、超时等 redis 不可用的异常计为失败（见 {@link #isRedisFailure}），序列化、key 格式等异常不影响熔断
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/25 PM3:20
+ */
+@Slf4j
+public class RedisCircuitBreaker {
+
+    private final int failureThreshold;
+
+    private final long slowCallNanos;
+
+    private final long openMillis;
+
+    /**
+     * 半开状态下的探测，返回 true 表示 redis 可用
+     */
+    private final BooleanSupplier probe;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Executor probeExecutor;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    /**
+     * 关闭状态下连续失败（包括慢调用）的次数
+     */
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /**
+     * 打开期间被跳过的调用次数
+     */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param failureThreshold 连续失败多少次后打开
+     * @param slowCallMillis   超过该耗时的调用按失败计，<=0 不统计慢调用
+     * @param openMillis       打开后多久开始探测
+     * @param probe            探测方法，如 PING
+     * @param scheduler        探测定时器，只用于调度
+     * @param probeExecutor    执行探测的线程池
+     */
+    public RedisCircuitBreaker(int failureThreshold, long slowCallMillis, long openMillis, BooleanSupplier probe,
+                               ScheduledExecutorService scheduler, Executor probeExecutor) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.slowCallNanos = slowCallMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(slowCallMillis) : Long.MAX_VALUE;
+        this.openMillis = openMillis;
+        this.probe = probe;
+        this.scheduler = scheduler;
+        this.probeExecutor = probeExecutor;
+    }
+
+    /**
+     * 是否允许访问 redis，只有关闭状态允许
+     */
+    public boolean allowRequest() {
+        if (state.get() == State.CLOSED) {
+            return true;
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 记录一次正常返回的调用
+     *
+     * @param nanos 调用耗时
+     */
+    public void onSuccess(long nanos) {
+        if (nanos > slowCallNanos) {
+            this.onFailure();
+        } else if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    /**
+     * 记录一次 redis 调用的结果
+     *
+     * @param start   调用开始时间（System.nanoTime）
+     * @param failure 调用异常，为空表示成功；不是 redis 不可用的异常时不记录
+     */
+    public void record(long start, Throwable failure) {
+        if (failure == null) {
+            this.onSuccess(System.nanoTime() - start);
+        } else if (isRedisFailure(failure)) {
+            this.onFailure();
+        }
+    }
+
+    /**
+     * 是否为 redis 不可用（连接失败、超时）的异常
+     * <p>
+     * 计入：RedisConnectionFailureException、QueryTimeoutException、以 lettuce 异常为原因的 RedisSystemException，
+     * 以及异步命令直接返回的 lettuce 异常；redis 返回的错误（{@link RedisCommandExecutionException}）说明 redis 可用，不计入。
+     * 序列化异常、分桶 key 格式错误（IllegalStateException）等按未命中处理，不计入
+     * </p>
+     */
+    public static boolean isRedisFailure(Throwable failure) {
+        Throwable e = failure;
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof RedisConnectionFailureException || e instanceof QueryTimeoutException) {
+            return true;
+        }
+        if (e instanceof RedisSystemException) {
+            e = e.getCause();
+        }
+        return e instanceof RedisException && !(e instanceof RedisCommandExecutionException);
+    }
+
+    /**
+     * 记录一次失败的调用
+     */
+    public void onFailure() {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold && state.compareAndSet(State.CLOSED, State.OPEN)) {
+            log.warn("RedisCircuitBreaker 打开，{} 次连续失败或慢调用，{}ms 后探测", failureThreshold, openMillis);
+            this.scheduleProbe();
+        }
+    }
+
+    private void scheduleProbe() {
+        scheduler.schedule(this::submitProbe, openMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在 scheduler 线程中执行，只提交探测任务
+     */
+    private void submitProbe() {
+        try {
+            probeExecutor.execute(this::probe);
+        } catch (RejectedExecutionException e) {
+            log.warn("RedisCircuitBreaker 探测任务被拒绝，{}ms 后重试", openMillis);
+            this.scheduleProbe();
+        }
+    }
+
+    private void probe() {
+        state.set(State.HALF_OPEN);
+        boolean available;
+        long start = System.nanoTime();
+        try {
+            available = probe.getAsBoolean() && System.nanoTime() - start <= slowCallNanos;
+        } catch (Exception e) {
+            available = false;
+        }
+        if (available) {
+            consecutiveFailures.set(0);
+            state.set(State.CLOSED);
+            log.info("RedisCircuitBreaker 关闭，redis 已恢复");
+        } else {
+            state.set(State.OPEN);
+            this.scheduleProbe();
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+
+        /**
+         * 正常访问 redis
+         */
+        CLOSED,
+
+        /**
+         * 不访问 redis，等待探测
+         */
+        OPEN,
+
+        /**
+         * 正在后台探测
+         */
+        HALF_OPEN
+    }
+}
@@ -1,18 +1,57 @@
 package com.example.cache;
 
+import com.example.cache.codec.ValueCompressor;
+import com.example.cache.local.LocalBatchCache;
+import com.example.cache.support.BatchCacheKeys;
+import com.example.cache.utils.CollUtil;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cache.Cache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.util.CollectionUtils;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.ToLongFunction;
 
 /**
  * redis缓存 操作类
@@ -21,7 +60,30 @@ import java.util.concurrent.Callable;
  * @Date 2020/10/27 PM3:54
  */
 @Slf4j
-public class RedisMultiCache implements Cache {
+public class RedisMultiCache implements Cache, DisposableBean {
+
+    /**
+     * 批量 SETEX 脚本，KEYS[i] 对应 ARGV[2i-1] 过期时间、ARGV[2i] value
+     */
+    private static final RedisScript<Long> BATCH_SETEX_SCRIPT =
+        RedisScript.of(new ClassPathResource("lua/batch_setex.lua"), Long.class);
+
+    /**
+     * 释放加载租约脚本，只删除仍由自己持有的租约
+     */
+    private static final RedisScript<Long> RELEASE_LEASE_SCRIPT =
+        RedisScript.of(new ClassPathResource("lua/release_lease.lua"), Long.class);
+
+    /**
+     * 写入一个 hash 分桶的脚本：清理过期的 field 后写入，桶随最后一个 field 过期；通过 EVALSHA 执行
+     */
+    private static final RedisScript<Long> HASH_BUCKET_PUT_SCRIPT =
+        RedisScript.of(new ClassPathResource("lua/hash_bucket_put.lua"), Long.class);
+
+    /**
+     * 加载租约 key 的后缀
+     */
+    private static final String LEASE_SUFFIX = ":lease";
 
     /**
      * spring redis cache,
@@ -35,6 +97,65 @@ public class RedisMultiCache implements Cache {
 
     private RedisTemplate redisTemplate;
 
+    /**
+     * 本地一级缓存，写入或删除缓存时需要同步失效（可为空）
+     */
+    @Setter
+    private LocalBatchCache localCache;
+
+    /**
+     * 单个 pipeline 的最大命令数，<=0 表示不拆分
+     */
+    @Setter
+    private int maxPipelineSize;
+
+    /**
+     * 拆分后的 pipeline 并发执行的线程池，为空时顺序执行
+     */
+    @Setter
+    private Executor pipelineExecutor;
+
+    /**
+     * 异步命令返回后执行反序列化等回调的线程池，回调不阻塞；为空时使用 pipelineExecutor。
+     * 与 pipelineExecutor 分开，pipelineExecutor 的线程都在等待异步读取时回调仍然可以执行
+     */
+    @Setter
+    private Executor callbackExecutor;
+
+    /**
+     * 批量读写使用的命令方式，默认 pipeline 逐个 GET / SETEX；对该实例的所有缓存生效
+     */
+    @Setter
+    private BatchCommandStrategy commandStrategy = BatchCommandStrategy.PIPELINE;
+
+    /**
+     * 批量读写的 value 压缩（可为空）
+     */
+    @Setter
+    private ValueCompressor valueCompressor;
+
+    /**
+     * redis 熔断器，为空时不熔断
+     */
+    @Getter
+    @Setter
+    private RedisCircuitBreaker circuitBreaker;
+
+    /**
+     * 共享的 lettuce 异步连接，第一次使用时获取，连接关闭后重新获取
+     */
+    private volatile RedisClusterAsyncCommands<byte[], byte[]> sharedCommands;
+
+    /**
+     * 集群批量路由，基于 sharedCommands 的集群连接创建，连接不变时复用
+     */
+    private volatile ClusterBatchRouter clusterRouter;
+
+    /**
+     * 集群下持有的 RedisClusterConnection，sharedCommands 来自它的 native 连接，销毁时关闭
+     */
+    private RedisClusterConnection clusterConnection;
+
     /**
      * 默认不清除原有缓存
      */
@@ -69,9 +190,16 @@ public class RedisMultiCache implements Cache {
 
     @Override
     public ValueWrapper get(Object key) {
+        if (!this.isRedisAvailable()) {
+            return null;
+        }
+        long start = System.nanoTime();
         try {
-            return cache.get(key);
+            ValueWrapper wrapper = cache.get(key);
+            this.recordRedisCall(start, null);
+            return wrapper;
         } catch (Exception e) {
+            this.recordRedisCall(start, e);
             log.error("RedisMultiCache 异常", e);
         }
         return null;
@@ -79,9 +207,16 @@ public class RedisMultiCache implements Cache {
 
     @Override
     public <T> T get(Object key, Class<T> type) {
+        if (!this.isRedisAvailable()) {
+            return null;
+        }
+        long start = System.nanoTime();
         try {
-            return cache.get(key, type);
+            T value = cache.get(key, type);
+            this.recordRedisCall(start, null);
+            return value;
         } catch (Exception e) {
+            this.recordRedisCall(start, e);
             log.error("RedisMultiCache 异常", e);
         }
         return null;
@@ -97,6 +232,9 @@ public class RedisMultiCache implements Cache {
     public <T> T get(Object key, Callable<T> valueLoader) {
         T value;
         try {
+            if (!this.isRedisAvailable()) {
+                return valueLoader.call();
+            }
             value = cache.get(key, valueLoader);
         } catch (Exception e) {
             log.error("RedisMultiCache 异常", e);
@@ -111,18 +249,31 @@ public class RedisMultiCache implements Cache {
 
     @Override
     public void put(Object key, Object value) {
+        if (!this.isRedisAvailable()) {
+            return;
+        }
+        long start = System.nanoTime();
         try {
             cache.put(key, value);
+            this.recordRedisCall(start, null);
         } catch (Exception e) {
+            this.recordRedisCall(start, e);
             log.error("RedisMultiCache 异常", e);
         }
     }
 
     @Override
     public ValueWrapper putIfAbsent(Object key, Object value) {
+        if (!this.isRedisAvailable()) {
+            return null;
+        }
+        long start = System.nanoTime();
         try {
-            return cache.putIfAbsent(key, value);
+            ValueWrapper wrapper = cache.putIfAbsent(key, value);
+            this.recordRedisCall(start, null);
+            return wrapper;
         } catch (Exception e) {
+            this.recordRedisCall(start, e);
             log.error("RedisMultiCache 异常", e);
         }
         return null;
@@ -130,10 +281,18 @@ public class RedisMultiCache implements Cache {
 
     @Override
     public void evict(Object key) {
-        try {
-            cache.evict(key);
-        } catch (Exception e) {
-            log.error("RedisMultiCache 异常", e);
+        if (this.isRedisAvailable()) {
+            long start = System.nanoTime();
+            try {
+                cache.evict(key);
+                this.recordRedisCall(start, null);
+            } catch (Exception e) {
+                this.recordRedisCall(start, e);
+                log.error("RedisMultiCache 异常", e);
+            }
+        }
+        if (localCache != null) {
+            localCache.evict(Collections.singletonList(String.valueOf(key)));
         }
     }
 
@@ -146,79 +305,1322 @@ public class RedisMultiCache implements Cache {
         }
     }
 
+    /**
+     * 批量删除缓存，按存储布局删除
+     * <p>
+     * 每个对象一个 key 时，每 maxPipelineSize 个 key 一条 UNLINK（redis 在后台线程释放内存），全部在一个 pipeline 中发送；
+     * hash 分桶时每个桶一条 HDEL。集群下按节点和 slot 路由
+     * </p>
+     *
+     * @param keyList      缓存 key 列表
+     * @param bucketLayout hash 分桶存储布局，为空时每个对象一个 key
+     */
+    public void evictBatch(List<String> keyList, HashBucketLayout bucketLayout) {
+        if (CollectionUtils.isEmpty(keyList)) {
+            return;
+        }
+        this.unlinkBatch(keyList, bucketLayout);
+
+        // 通知本地缓存失效（包括其他节点）
+        this.invalidateLocal(keyList);
+    }
+
+    /**
+     * 批量删除 redis 中的缓存，不通知本地缓存失效
+     */
+    private void unlinkBatch(List<String> keyList, HashBucketLayout bucketLayout) {
+        Objects.requireNonNull(redisTemplate, "redisTemplate required not null");
+        if (!this.isRedisAvailable()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            ClusterBatchRouter router = this.clusterRouter();
+            if (router != null) {
+                this.evictCluster(router, keyList, bucketLayout).join();
+            } else {
+                this.pipelineEvict(keyList, bucketLayout);
+            }
+            this.recordRedisCall(start, null);
+        } catch (Exception e) {
+            this.recordRedisCall(start, e);
+            log.error("RedisMultiCache 异常", e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void pipelineEvict(List<String> keyList, HashBucketLayout bucketLayout) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            if (bucketLayout == null) {
+                for (List<String> chunk : CollUtil.partition(keyList, maxPipelineSize)) {
+                    byte[][] keys = new byte[chunk.size()][];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = this.rawKey(chunk.get(i));
+                    }
+                    connection.unlink(keys);
+                }
+            } else {
+                bucketLayout.group(keyList).forEach((bucketKey, indexes) ->
+                    connection.hDel(this.rawKey(bucketKey), this.bucketFields(keyList, indexes, bucketLayout)));
+            }
+            return null;
+        });
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private CompletableFuture<Void> evictCluster(ClusterBatchRouter router, List<String> keyList, HashBucketLayout bucketLayout) {
+        if (bucketLayout == null) {
+            byte[][] keys = new byte[keyList.size()][];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = this.rawKey(keyList.get(i));
+            }
+            return router.unlink(keys);
+        }
+        Map<String, List<Integer>> buckets = bucketLayout.group(keyList);
+        byte[][] bucketKeys = new byte[buckets.size()][];
+        byte[][][] fields = new byte[buckets.size()][][];
+        int bucket = 0;
+        for (Map.Entry<String, List<Integer>> entry : buckets.entrySet()) {
+            bucketKeys[bucket] = this.rawKey(entry.getKey());
+            fields[bucket++] = this.bucketFields(keyList, entry.getValue(), bucketLayout);
+        }
+        return router.hdel(bucketKeys, fields);
+    }
+
     /**
      * 批量读取缓存，默认 key-value 为一对一的关系
+     * <p>
+     * key数量超过 maxPipelineSize 时，拆分成多个 pipeline 并发执行，结果按 keyList 的顺序合并
+     * </p>
      *
      * @param keyList key列表
      * @param <K>     key的类型
      * @param <V>     value的类型
-     * @return
+     * @return 与 keyList 一一对应，未命中或读取失败的位置为 null
      */
     public <K, V> List<V> list(List<K> keyList) {
+        return this.list(keyList, null);
+    }
+
+    /**
+     * 批量读取缓存，使用指定的 value 序列化方式
+     *
+     * @param keyList         key列表
+     * @param valueSerializer value 反序列化方式，为空时使用 redisTemplate 的 valueSerializer
+     * @return 与 keyList 一一对应，未命中或读取失败的位置为 null
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> List<V> list(List<K> keyList, RedisSerializer<?> valueSerializer) {
         Objects.requireNonNull(redisTemplate, "redisTemplate required not null");
+        if (CollectionUtils.isEmpty(keyList)) {
+            return Collections.emptyList();
+        }
+        if (!this.isRedisAvailable()) {
+            return Collections.nCopies(keyList.size(), null);
+        }
+        ClusterBatchRouter router = this.clusterRouter();
+        if (router != null) {
+            // 在调用线程中等待并反序列化，不依赖 pipelineExecutor，调用方本身在 pipelineExecutor 中时也不会互相等待
+            RedisSerializer<Object> serializer = (RedisSerializer<Object>) this.resolveValueSerializer(valueSerializer);
+            try {
+                return (List<V>) this.deserializeAll(serializer, this.getCluster(router, keyList).join());
+            } catch (Exception e) {
+                log.error("RedisMultiCache 异常", e);
+                return Collections.nCopies(keyList.size(), null);
+            }
+        }
 
-        List<V> cacheHitList = Collections.emptyList();
-        try {
-            cacheHitList = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+        List<List<K>> chunks = CollUtil.partition(keyList, maxPipelineSize);
+        if (chunks.size() == 1 || pipelineExecutor == null) {
+            return this.listChunks(keyList, valueSerializer);
+        }
 
-                // 循环处理key
-                RedisSerializer keySerializer = redisTemplate.getKeySerializer();
-                for (K k : keyList) {
+        List<CompletableFuture<List<V>>> futures = new ArrayList<>(chunks.size());
+        for (List<K> chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(() -> this.listChunk(chunk, valueSerializer), pipelineExecutor));
+        }
+        List<V> cacheHitList = new ArrayList<>(keyList.size());
+        futures.forEach(future -> cacheHitList.addAll(future.join()));
+        return cacheHitList;
+    }
 
-                    // 序列化key
-                    byte[] key = keySerializer.serialize(k);
-                    if (key != null) {
+    /**
+     * 批量读取缓存，按存储布局读取
+     *
+     * @param keyList         缓存 key 列表
+     * @param valueSerializer value 反序列化方式，为空时使用 redisTemplate 的 valueSerializer
+     * @param bucketLayout    hash 分桶存储布局，为空时每个对象一个 key
+     * @return 与 keyList 一一对应，未命中或读取失败的位置为 null
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> list(List<?> keyList, RedisSerializer<?> valueSerializer, HashBucketLayout bucketLayout) {
+        if (bucketLayout == null) {
+            return this.list(keyList, valueSerializer);
+        }
+        Objects.requireNonNull(redisTemplate, "redisTemplate required not null");
+        if (CollectionUtils.isEmpty(keyList)) {
+            return Collections.emptyList();
+        }
+        if (!this.isRedisAvailable()) {
+            return Collections.nCopies(keyList.size(), null);
+        }
+        return this.listBuckets((List<String>) keyList, valueSerializer, bucketLayout);
+    }
 
-                        // 获取value
-                        connection.get(key);
-                    } else {
-                        log.warn("RedisMultiCache 批量操作序列化失败， key={}", k);
-                    }
-                }
+    /**
+     * 批量读取缓存，最多等待 budgetMillis
+     * <p>
+     * key 按 maxPipelineSize 分片后通过 {@link #listAsync} 并发读取，调用线程按截止时间等待，
+     * 到达时间预算时仍未返回的分片按未命中处理（由调用方加载），已返回的分片正常使用；超时的分片在后台继续执行，结果丢弃。
+     * 分片读取不在 pipelineExecutor 中阻塞等待其他任务，调用方在任何线程中调用都不会互相等待
+     * </p>
+     *
+     * @param keyList         缓存 key 列表，不分桶时可以是 {@link #rawKey} 编码后的 byte[]
+     * @param valueSerializer value 反序列化方式，为空时使用 redisTemplate 的 valueSerializer
+     * @param bucketLayout    hash 分桶存储布局，为空时每个对象一个 key
+     * @param budgetMillis    时间预算（毫秒），<=0 时不限制
+     * @return 与 keyList 一一对应，未命中、读取失败或超时的位置为 null
+     */
+    public List<Object> list(List<?> keyList, RedisSerializer<?> valueSerializer, HashBucketLayout bucketLayout,
+                             long budgetMillis) {
+        if (budgetMillis <= 0 || CollectionUtils.isEmpty(keyList) || !this.isRedisAvailable()) {
+            return this.list(keyList, valueSerializer, bucketLayout);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        List<? extends List<?>> chunks = CollUtil.partition(keyList, maxPipelineSize);
+        List<CompletableFuture<List<Object>>> futures = new ArrayList<>(chunks.size());
+        for (List<?> chunk : chunks) {
+            futures.add(this.listAsync(chunk, valueSerializer, bucketLayout));
+        }
+
+        List<Object> cacheHitList = new ArrayList<>(keyList.size());
+        int timeoutKeys = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            int chunkSize = chunks.get(i).size();
+            try {
+                cacheHitList.addAll(futures.get(i).get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                timeoutKeys += chunkSize;
+                cacheHitList.addAll(Collections.nCopies(chunkSize, null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cacheHitList.addAll(Collections.nCopies(chunkSize, null));
+            } catch (ExecutionException e) {
+                log.error("RedisMultiCache 异常", e);
+                cacheHitList.addAll(Collections.nCopies(chunkSize, null));
+            }
+        }
+        if (timeoutKeys > 0) {
+            log.warn("RedisMultiCache 批量读取超出时间预算 {}ms，{} 个 key 按未命中处理", budgetMillis, timeoutKeys);
+        }
+        return cacheHitList;
+    }
+
+    /**
+     * 按 hash 分桶读取，一个 pipeline 中每个桶一条 HMGET，已过期的 field 按未命中处理
+     *
+     * @return 读取失败时返回同等长度的 null 列表，调用方按未命中处理
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Object> listBuckets(List<String> keyList, RedisSerializer<?> valueSerializer, HashBucketLayout bucketLayout) {
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) this.resolveValueSerializer(valueSerializer);
+        Object[] cacheHits = new Object[keyList.size()];
+        long start = System.nanoTime();
+        try {
+            Map<String, List<Integer>> buckets = bucketLayout.group(keyList);
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                buckets.forEach((bucketKey, indexes) ->
+                    connection.hMGet(this.rawKey(bucketKey), this.bucketFields(keyList, indexes, bucketLayout)));
                 return null;
-            });
+            }, RedisSerializer.byteArray());
+
+            long now = System.currentTimeMillis();
+            int bucket = 0;
+            for (List<Integer> indexes : buckets.values()) {
+                List<byte[]> values = (List<byte[]>) results.get(bucket++);
+                for (int j = 0; j < indexes.size(); j++) {
+                    cacheHits[indexes.get(j)] = this.deserializeQuietly(serializer, HashBucketLayout.decodeValue(values.get(j), now));
+                }
+            }
+            this.recordRedisCall(start, null);
+        } catch (Exception e) {
+            this.recordRedisCall(start, e);
+            log.error("RedisMultiCache 异常", e);
+        }
+        return Arrays.asList(cacheHits);
+    }
+
+    /**
+     * 一个桶中需要读取的 field
+     */
+    @SuppressWarnings("unchecked")
+    private byte[][] bucketFields(List<String> keyList, List<Integer> indexes, HashBucketLayout bucketLayout) {
+        byte[][] fields = new byte[indexes.size()][];
+        for (int j = 0; j < fields.length; j++) {
+            fields[j] = this.rawKey(bucketLayout.field(keyList.get(indexes.get(j))));
+        }
+        return fields;
+    }
+
+    /**
+     * 分片依次读取
+     */
+    private <K, V> List<V> listChunks(List<K> keyList, RedisSerializer<?> valueSerializer) {
+        List<V> cacheHitList = new ArrayList<>(keyList.size());
+        for (List<K> chunk : CollUtil.partition(keyList, maxPipelineSize)) {
+            cacheHitList.addAll(this.listChunk(chunk, valueSerializer));
+        }
+        return cacheHitList;
+    }
+
+    /**
+     * 按 commandStrategy 读取一个分片
+     *
+     * @return 读取失败时返回同等长度的 null 列表，调用方按未命中处理
+     */
+    private <K, V> List<V> listChunk(List<K> keyList, RedisSerializer<?> valueSerializer) {
+        RedisSerializer<?> serializer = this.resolveValueSerializer(valueSerializer);
+        long start = System.nanoTime();
+        try {
+            List<V> cacheHitList = commandStrategy == BatchCommandStrategy.MULTI_KEY
+                ? this.mgetList(keyList, serializer)
+                : this.pipelineList(keyList, serializer);
+            this.recordRedisCall(start, null);
+            return cacheHitList;
         } catch (Exception e) {
+            this.recordRedisCall(start, e);
             log.error("RedisMultiCache 异常", e);
         }
+        return Collections.nCopies(keyList.size(), null);
+    }
+
+    /**
+     * 单个 pipeline 批量读取，每个 key 一条 GET
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <K, V> List<V> pipelineList(List<K> keyList, RedisSerializer<?> valueSerializer) {
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+
+            // 循环处理key
+            for (K k : keyList) {
+
+                // 序列化key
+                byte[] key = this.rawKey(k);
+                if (key != null) {
+
+                    // 获取value
+                    connection.get(key);
+                } else {
+                    log.warn("RedisMultiCache 批量操作序列化失败， key={}", k);
+                }
+            }
+            return null;
+        }, valueSerializer);
+    }
+
+    /**
+     * 一条 MGET 批量读取
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <K, V> List<V> mgetList(List<K> keyList, RedisSerializer<?> valueSerializer) {
+        byte[][] keys = new byte[keyList.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = this.rawKey(keyList.get(i));
+        }
+
+        List<byte[]> values = (List<byte[]>) redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(keys));
+        if (values == null) {
+            return Collections.nCopies(keyList.size(), null);
+        }
+        List<V> cacheHitList = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            cacheHitList.add(value == null ? null : (V) valueSerializer.deserialize(value));
+        }
         return cacheHitList;
     }
 
     /**
-     * 批量存入缓存
+     * 批量存入缓存，并通知本地缓存失效（包括其他节点）
+     * <p>
+     * 数据量超过 maxPipelineSize 时，拆分成多个 pipeline 并发执行，全部完成后返回；
+     * 回填加载结果使用 {@link #fillBatch}，不通知失效
+     * </p>
      *
      * @param map 需要存入的数据
      * @param <K> 数据的 key 的类型
      * @param <V> 数据的 value 的类型
      */
-    @SuppressWarnings({"unchecked", "rawtypes"})
     public <K, V> void putBatch(Map<K, V> map, Long seconds) {
+        this.putBatch(map, key -> seconds);
+    }
+
+    /**
+     * 批量存入缓存，每个 key 使用各自的过期时间（如随机打散过期时间）
+     *
+     * @param map             需要存入的数据
+     * @param secondsFunction key -> 过期时间（秒）
+     */
+    public <K, V> void putBatch(Map<K, V> map, ToLongFunction<K> secondsFunction) {
+        this.putBatch(map, secondsFunction, null);
+    }
+
+    /**
+     * 批量存入缓存，使用指定的 value 序列化方式
+     *
+     * @param map             需要存入的数据
+     * @param secondsFunction key -> 过期时间（秒）
+     * @param valueSerializer value 序列化方式，为空时使用 redisTemplate 的 valueSerializer
+     */
+    public <K, V> void putBatch(Map<K, V> map, ToLongFunction<K> secondsFunction, RedisSerializer<?> valueSerializer) {
         if (CollectionUtils.isEmpty(map)) {
             return;
         }
+        this.writeBatch(map, secondsFunction, valueSerializer);
+
+        // 通知本地缓存失效（包括其他节点）
+        this.invalidateLocal(map.keySet());
+    }
+
+    /**
+     * 批量写入 redis，不通知本地缓存失效
+     */
+    private <K, V> void writeBatch(Map<K, V> map, ToLongFunction<K> secondsFunction, RedisSerializer<?> valueSerializer) {
+        if (!this.isRedisAvailable()) {
+            return;
+        }
         Objects.requireNonNull(redisTemplate, "redisTemplate required not null");
-        try {
-            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
 
-                RedisSerializer keySerializer = redisTemplate.getKeySerializer();
-                RedisSerializer valueSerializer = redisTemplate.getValueSerializer();
+        RedisSerializer<?> serializer = this.resolveValueSerializer(valueSerializer);
+        List<List<Map.Entry<K, V>>> chunks = CollUtil.partition(new ArrayList<>(map.entrySet()), maxPipelineSize);
+        ClusterBatchRouter router = this.clusterRouter();
+        if (router != null) {
+            this.putCluster(router, map, secondsFunction, serializer).join();
+        } else if (chunks.size() == 1 || pipelineExecutor == null) {
+            chunks.forEach(chunk -> this.putChunk(chunk, secondsFunction, serializer));
+        } else {
+            CompletableFuture<?>[] futures = new CompletableFuture[chunks.size()];
+            for (int i = 0; i < chunks.size(); i++) {
+                List<Map.Entry<K, V>> chunk = chunks.get(i);
+                futures[i] = CompletableFuture.runAsync(() -> this.putChunk(chunk, secondsFunction, serializer), pipelineExecutor);
+            }
+            CompletableFuture.allOf(futures).join();
+        }
+    }
 
-                for (Map.Entry<K, V> entry : map.entrySet()) {
-                    byte[] key = keySerializer.serialize(entry.getKey());
-                    byte[] value = valueSerializer.serialize(entry.getValue());
+    /**
+     * 批量存入缓存，按存储布局写入，并通知本地缓存失效（包括其他节点）；用于数据更新后写入新值
+     *
+     * @param map             缓存 key -> 缓存对象
+     * @param secondsFunction 缓存 key -> 过期时间（秒），hash 分桶时为每个 field 各自的过期时间
+     * @param valueSerializer value 序列化方式，为空时使用 redisTemplate 的 valueSerializer
+     * @param bucketLayout    hash 分桶存储布局，为空时每个对象一个 key
+     */
+    public void putBatch(Map<String, ?> map, ToLongFunction<String> secondsFunction, RedisSerializer<?> valueSerializer,
+                         HashBucketLayout bucketLayout) {
+        if (CollectionUtils.isEmpty(map)) {
+            return;
+        }
+        this.fillBatch(map, secondsFunction, valueSerializer, bucketLayout);
 
-                    if (key != null && value != null) {
-                        connection.setEx(key, seconds, value);
-                    } else {
-                        log.warn("RedisMultiCache 批量操作序列化失败， entry={}", entry);
-                    }
-                }
-                return null;
-            });
+        // 通知本地缓存失效（包括其他节点）
+        this.invalidateLocal(map.keySet());
+    }
+
+    /**
+     * 回填缓存：写入加载方法返回的数据，按存储布局写入，不通知本地缓存失效
+     * <p>
+     * 回填的是未命中时从数据源读取的值，其他节点的本地缓存中不会有更新的数据，不需要失效；
+     * 只有 {@link #putBatch} 和 {@link #evictBatch}（数据更新或删除）通知失效
+     * </p>
+     *
+     * @param map             缓存 key -> 缓存对象
+     * @param secondsFunction 缓存 key -> 过期时间（秒），hash 分桶时为每个 field 各自的过期时间
+     * @param valueSerializer value 序列化方式，为空时使用 redisTemplate 的 valueSerializer
+     * @param bucketLayout    hash 分桶存储布局，为空时每个对象一个 key
+     */
+    public void fillBatch(Map<String, ?> map, ToLongFunction<String> secondsFunction, RedisSerializer<?> valueSerializer,
+                          HashBucketLayout bucketLayout) {
+        if (CollectionUtils.isEmpty(map)) {
+            return;
+        }
+        if (bucketLayout == null) {
+            this.writeBatch(map, secondsFunction, valueSerializer);
+            return;
+        }
+        if (!this.isRedisAvailable()) {
+            return;
+        }
+        Objects.requireNonNull(redisTemplate, "redisTemplate required not null");
+
+        long start = System.nanoTime();
+        try {
+            this.putBuckets(map, secondsFunction, this.resolveValueSerializer(valueSerializer), bucketLayout);
+            this.recordRedisCall(start, null);
         } catch (Exception e) {
+            this.recordRedisCall(start, e);
             log.error("RedisMultiCache 异常", e);
         }
     }
 
+    /**
+     * 按 hash 分桶写入，一个 pipeline 中每个桶执行一次写入脚本（EVALSHA，清理过期 field + HSET + PEXPIREAT）
+     * <p>
+     * 每个 field 的 value 带各自的过期时间，见 {@link HashBucketLayout#encodeValue}；
+     * 脚本未缓存（NOSCRIPT，如 redis 重启或 SCRIPT FLUSH）时 SCRIPT LOAD 后重新执行一次
+     * </p>
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void putBuckets(Map<String, ?> map, ToLongFunction<String> secondsFunction, RedisSerializer valueSerializer,
+                            HashBucketLayout bucketLayout) {
+        long now = System.currentTimeMillis();
+        byte[] rawNow = String.valueOf(now).getBytes(StandardCharsets.UTF_8);
+        Map<String, List<byte[]>> buckets = new LinkedHashMap<>();
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            byte[] value = valueSerializer.serialize(entry.getValue());
+            if (value == null) {
+                log.warn("RedisMultiCache 批量操作序列化失败， entry={}", entry);
+                continue;
+            }
+            String bucketKey = bucketLayout.bucketKey(entry.getKey());
+            List<byte[]> args = buckets.computeIfAbsent(bucketKey, k -> new ArrayList<>());
+            if (args.isEmpty()) {
+                // KEYS[1] 桶，ARGV[1] 当前时间
+                args.add(this.rawKey(bucketKey));
+                args.add(rawNow);
+            }
+            long expireAt = now + TimeUnit.SECONDS.toMillis(secondsFunction.applyAsLong(entry.getKey()));
+            args.add(this.rawKey(bucketLayout.field(entry.getKey())));
+            args.add(HashBucketLayout.encodeValue(value, expireAt));
+        }
+        if (buckets.isEmpty()) {
+            return;
+        }
+
+        try {
+            this.evalBucketScript(buckets.values());
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            byte[] script = HASH_BUCKET_PUT_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+            redisTemplate.execute((RedisCallback<String>) connection -> connection.scriptLoad(script));
+            this.evalBucketScript(buckets.values());
+        }
+    }
+
+    private void evalBucketScript(Collection<List<byte[]>> buckets) {
+        String sha = HASH_BUCKET_PUT_SCRIPT.getSha1();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            buckets.forEach(args -> connection.evalSha(sha, ReturnType.INTEGER, 1, args.toArray(new byte[0][])));
+            return null;
+        });
+    }
+
+    /**
+     * 异常链中是否有 NOSCRIPT 错误
+     */
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 批量读写默认的 value 序列化方式，即 redisTemplate 的 valueSerializer（不含压缩）
+     */
+    public RedisSerializer<?> getValueSerializer() {
+        return redisTemplate.getValueSerializer();
+    }
+
+    /**
+     * 批量读写实际使用的 value 序列化方式：未指定时使用 redisTemplate 的 valueSerializer，开启压缩时包装压缩
+     */
+    private RedisSerializer<?> resolveValueSerializer(RedisSerializer<?> valueSerializer) {
+        RedisSerializer<?> serializer = valueSerializer != null ? valueSerializer : redisTemplate.getValueSerializer();
+        return valueCompressor != null ? valueCompressor.wrap(serializer) : serializer;
+    }
+
+    /**
+     * 批量写入空值标记（防止缓存穿透），读取时为 {@link NullValue#INSTANCE}
+     * <p>
+     * 空值标记只在加载后回填，不通知本地缓存失效
+     * </p>
+     *
+     * @param keys    加载方法未返回数据的 redis key
+     * @param seconds 空值标记的过期时间，通常短于正常缓存
+     */
+    public void putNullBatch(Collection<String> keys, long seconds) {
+        this.putNullBatch(keys, seconds, null);
+    }
+
+    /**
+     * 批量写入空值标记，使用指定的 value 序列化方式
+     */
+    public void putNullBatch(Collection<String> keys, long seconds, RedisSerializer<?> valueSerializer) {
+        if (CollectionUtils.isEmpty(keys) || seconds <= 0) {
+            return;
+        }
+        Map<String, Object> nullMap = new HashMap<>((int) (keys.size() / 0.75f) + 1);
+        keys.forEach(key -> nullMap.put(key, NullValue.INSTANCE));
+        this.writeBatch(nullMap, key -> seconds, valueSerializer);
+    }
+
+    /**
+     * 批量写入空值标记，按存储布局写入
+     */
+    public void putNullBatch(Collection<String> keys, long seconds, RedisSerializer<?> valueSerializer,
+                             HashBucketLayout bucketLayout) {
+        if (CollectionUtils.isEmpty(keys) || seconds <= 0) {
+            return;
+        }
+        Map<String, Object> nullMap = new HashMap<>((int) (keys.size() / 0.75f) + 1);
+        keys.forEach(key -> nullMap.put(key, NullValue.INSTANCE));
+        this.fillBatch(nullMap, key -> seconds, valueSerializer, bucketLayout);
+    }
+
+    /**
+     * 按 commandStrategy 写入一个分片
+     */
+    private <K, V> void putChunk(List<Map.Entry<K, V>> entries, ToLongFunction<K> secondsFunction,
+                                 RedisSerializer<?> valueSerializer) {
+        long start = System.nanoTime();
+        try {
+            if (commandStrategy == BatchCommandStrategy.MULTI_KEY) {
+                this.scriptPut(entries, secondsFunction, valueSerializer);
+            } else {
+                this.pipelinePut(entries, secondsFunction, valueSerializer);
+            }
+            this.recordRedisCall(start, null);
+        } catch (Exception e) {
+            this.recordRedisCall(start, e);
+            log.error("RedisMultiCache 异常", e);
+        }
+    }
+
+    /**
+     * 单个 pipeline 批量写入，每个 key 一条 SETEX
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <K, V> void pipelinePut(List<Map.Entry<K, V>> entries, ToLongFunction<K> secondsFunction,
+                                    RedisSerializer valueSerializer) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+
+
+            for (Map.Entry<K, V> entry : entries) {
+                byte[] key = this.rawKey(entry.getKey());
+                byte[] value = valueSerializer.serialize(entry.getValue());
+
+                if (key != null && value != null) {
+                    connection.setEx(key, secondsFunction.applyAsLong(entry.getKey()), value);
+                } else {
+                    log.warn("RedisMultiCache 批量操作序列化失败， entry={}", entry);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 一次 lua 脚本批量写入，脚本通过 EVALSHA 执行，服务端未缓存时自动回退到 EVAL
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <K, V> void scriptPut(List<Map.Entry<K, V>> entries, ToLongFunction<K> secondsFunction,
+                                  RedisSerializer valueSerializer) {
+
+        List<K> keys = new ArrayList<>(entries.size());
+        List<byte[]> args = new ArrayList<>(entries.size() * 2);
+        for (Map.Entry<K, V> entry : entries) {
+            byte[] value = valueSerializer.serialize(entry.getValue());
+            if (entry.getKey() != null && value != null) {
+                keys.add(entry.getKey());
+                args.add(String.valueOf(secondsFunction.applyAsLong(entry.getKey())).getBytes(StandardCharsets.UTF_8));
+                args.add(value);
+            } else {
+                log.warn("RedisMultiCache 批量操作序列化失败， entry={}", entry);
+            }
+        }
+        if (!keys.isEmpty()) {
+            redisTemplate.execute(BATCH_SETEX_SCRIPT, RedisSerializer.byteArray(), null, keys, args.toArray());
+        }
+    }
+
+    /**
+     * 失效本节点的本地缓存，并通知其他节点
+     */
+    private void invalidateLocal(Collection<?> keys) {
+        if (localCache == null || keys.isEmpty()) {
+            return;
+        }
+        List<String> keyList = new ArrayList<>(keys.size());
+        keys.forEach(key -> keyList.add(String.valueOf(key)));
+        localCache.evict(keyList);
+    }
+
+    /**
+     * 异步批量读取缓存，基于 lettuce 异步命令，不占用调用线程
+     * <p>
+     * 1 pipeline 方式每个 key 一条 GET，multi_key 方式每个分片一条 MGET，命令由 lettuce 自动批量发送
+     * 2 反序列化在 pipelineExecutor 中执行，不占用 netty IO 线程
+     * 3 未共享 native 连接时（shareNativeConnection=false），退化为在 pipelineExecutor 中执行 {@link #list(List, RedisSerializer)}
+     * </p>
+     *
+     * @param keyList         key列表
+     * @param valueSerializer value 反序列化方式，为空时使用 redisTemplate 的 valueSerializer
+     * @return 与 keyList 一一对应，未命中或读取失败的位置为 null
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<Object>> listAsync(List<?> keyList, RedisSerializer<?> valueSerializer) {
+        if (CollectionUtils.isEmpty(keyList)) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        if (!this.isRedisAvailable()) {
+            return CompletableFuture.completedFuture(Collections.nCopies(keyList.size(), null));
+        }
+        ClusterBatchRouter router = this.clusterRouter();
+        if (router != null) {
+            return this.listCluster(router, keyList, valueSerializer);
+        }
+        RedisClusterAsyncCommands<byte[], byte[]> commands = this.asyncCommands();
+        if (commands == null) {
+            // 分片依次读取，不在 pipelineExecutor 中再提交并等待其他任务
+            return CompletableFuture.supplyAsync(() -> this.listChunks(keyList, valueSerializer), this.asyncExecutor());
+        }
+
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) this.resolveValueSerializer(valueSerializer);
+        List<CompletableFuture<List<byte[]>>> futures = new ArrayList<>();
+        for (List<?> chunk : CollUtil.partition(keyList, maxPipelineSize)) {
+            long start = System.nanoTime();
+            futures.add(this.getChunkAsync(commands, chunk).handle((values, e) -> {
+                this.recordRedisCall(start, e);
+                if (e != null) {
+                    log.error("RedisMultiCache 异常", e);
+                    return Collections.nCopies(chunk.size(), null);
+                }
+                return values;
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApplyAsync(v -> {
+            List<Object> cacheHitList = new ArrayList<>(keyList.size());
+            for (CompletableFuture<List<byte[]>> future : futures) {
+                for (byte[] value : future.join()) {
+                    cacheHitList.add(this.deserializeQuietly(serializer, value));
+                }
+            }
+            return cacheHitList;
+        }, this.callbackExecutor());
+    }
+
+    /**
+     * 异步批量读取缓存，按存储布局读取；hash 分桶时每个桶一条 HMGET
+     *
+     * @param bucketLayout hash 分桶存储布局，为空时每个对象一个 key
+     * @return 与 keyList 一一对应，未命中或读取失败的位置为 null
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public CompletableFuture<List<Object>> listAsync(List<?> keyList, RedisSerializer<?> valueSerializer,
+                                                     HashBucketLayout bucketLayout) {
+        if (bucketLayout == null) {
+            return this.listAsync(keyList, valueSerializer);
+        }
+        List<String> cacheKeyList = (List<String>) keyList;
+        if (CollectionUtils.isEmpty(keyList)) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        if (!this.isRedisAvailable()) {
+            return CompletableFuture.completedFuture(Collections.nCopies(keyList.size(), null));
+        }
+        RedisClusterAsyncCommands<byte[], byte[]> commands = this.asyncCommands();
+        if (commands == null) {
+            return CompletableFuture.supplyAsync(() -> this.list(keyList, valueSerializer, bucketLayout), this.asyncExecutor());
+        }
+
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) this.resolveValueSerializer(valueSerializer);
+        Object[] cacheHits = new Object[keyList.size()];
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            bucketLayout.group(cacheKeyList).forEach((bucketKey, indexes) -> futures.add(commands
+                .hmget(this.rawKey(bucketKey), this.bucketFields(cacheKeyList, indexes, bucketLayout))
+                .toCompletableFuture()
+                .thenAcceptAsync(keyValues -> {
+                    long now = System.currentTimeMillis();
+                    for (int j = 0; j < indexes.size(); j++) {
+                        byte[] value = HashBucketLayout.decodeValue(keyValues.get(j).getValueOrElse(null), now);
+                        cacheHits[indexes.get(j)] = this.deserializeQuietly(serializer, value);
+                    }
+                }, this.callbackExecutor())));
+        } catch (Exception e) {
+            log.error("RedisMultiCache 异常", e);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).handle((v, e) -> {
+            this.recordRedisCall(start, e);
+            if (e != null) {
+                log.error("RedisMultiCache 异常", e);
+            }
+            return Arrays.asList(cacheHits);
+        });
+    }
+
+    /**
+     * 异步读取一个分片的原始数据
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private CompletableFuture<List<byte[]>> getChunkAsync(RedisClusterAsyncCommands<byte[], byte[]> commands, List<?> keyList) {
+        byte[][] keys = new byte[keyList.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = this.rawKey(keyList.get(i));
+        }
+
+        if (commandStrategy == BatchCommandStrategy.MULTI_KEY) {
+            return commands.mget(keys).toCompletableFuture().thenApply(keyValues -> {
+                List<byte[]> values = new ArrayList<>(keyValues.size());
+                for (KeyValue<byte[], byte[]> keyValue : keyValues) {
+                    values.add(keyValue.getValueOrElse(null));
+                }
+                return values;
+            });
+        }
+
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(keys.length);
+        for (byte[] key : keys) {
+            futures.add(commands.get(key).toCompletableFuture());
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<byte[]> values = new ArrayList<>(futures.size());
+            futures.forEach(future -> values.add(future.join()));
+            return values;
+        });
+    }
+
+    /**
+     * 反序列化失败的数据按未命中处理
+     */
+    private Object deserializeQuietly(RedisSerializer<Object> serializer, byte[] value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return serializer.deserialize(value);
+        } catch (Exception e) {
+            log.warn("RedisMultiCache 反序列化失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 异步批量存入缓存，每个 key 一条 SETEX，写入后通知本地缓存失效（包括其他节点）；写入失败只记录日志
+     *
+     * @param map             需要存入的数据
+     * @param secondsFunction key -> 过期时间（秒）
+     * @param valueSerializer value 序列化方式，为空时使用 redisTemplate 的 valueSerializer
+     * @return 写入完成（包括通知本地缓存失效）
+     */
+    public <K, V> CompletableFuture<Void> putBatchAsync(Map<K, V> map, ToLongFunction<K> secondsFunction,
+                                                        RedisSerializer<?> valueSerializer) {
+        if (CollectionUtils.isEmpty(map)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return this.writeBatchAsync(map, secondsFunction, valueSerializer).thenRun(() -> this.invalidateLocal(map.keySet()));
+    }
+
+    /**
+     * 异步批量写入 redis，每个 key 一条 SETEX，不通知本地缓存失效
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <K, V> CompletableFuture<Void> writeBatchAsync(Map<K, V> map, ToLongFunction<K> secondsFunction,
+                                                           RedisSerializer<?> valueSerializer) {
+        if (CollectionUtils.isEmpty(map) || !this.isRedisAvailable()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        ClusterBatchRouter router = this.clusterRouter();
+        RedisClusterAsyncCommands<byte[], byte[]> commands = router == null ? this.asyncCommands() : null;
+        if (router == null && commands == null) {
+            // 分片依次写入，不在 pipelineExecutor 中再提交并等待其他任务
+            RedisSerializer<?> serializer = this.resolveValueSerializer(valueSerializer);
+            return CompletableFuture.runAsync(() -> CollUtil.partition(new ArrayList<>(map.entrySet()), maxPipelineSize)
+                .forEach(chunk -> this.putChunk(chunk, secondsFunction, serializer)), this.asyncExecutor());
+        }
+
+        RedisSerializer serializer = this.resolveValueSerializer(valueSerializer);
+        long start = System.nanoTime();
+        CompletableFuture<Void> written;
+        if (router != null) {
+            written = this.putCluster(router, map, secondsFunction, serializer);
+        } else {
+            List<CompletableFuture<String>> futures = new ArrayList<>(map.size());
+            try {
+                for (Map.Entry<K, V> entry : map.entrySet()) {
+                    byte[] key = this.rawKey(entry.getKey());
+                    byte[] value = serializer.serialize(entry.getValue());
+                    if (key != null && value != null) {
+                        futures.add(commands.setex(key, secondsFunction.applyAsLong(entry.getKey()), value).toCompletableFuture());
+                    } else {
+                        log.warn("RedisMultiCache 批量操作序列化失败， entry={}", entry);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("RedisMultiCache 异常", e);
+            }
+            written = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+        }
+
+        return written.handleAsync((v, e) -> {
+            this.recordRedisCall(start, e);
+            if (e != null) {
+                log.error("RedisMultiCache 异常", e);
+            }
+            return null;
+        }, this.callbackExecutor());
+    }
+
+    /**
+     * 异步批量存入缓存，按存储布局写入；hash 分桶时在 pipelineExecutor 中执行
+     *
+     * @param bucketLayout hash 分桶存储布局，为空时每个对象一个 key
+     */
+    public CompletableFuture<Void> putBatchAsync(Map<String, ?> map, ToLongFunction<String> secondsFunction,
+                                                 RedisSerializer<?> valueSerializer, HashBucketLayout bucketLayout) {
+        if (bucketLayout == null) {
+            return this.putBatchAsync(map, secondsFunction, valueSerializer);
+        }
+        if (CollectionUtils.isEmpty(map)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> this.putBatch(map, secondsFunction, valueSerializer, bucketLayout),
+            this.asyncExecutor());
+    }
+
+    /**
+     * 异步回填缓存，按存储布局写入，不通知本地缓存失效；hash 分桶时在 pipelineExecutor 中执行
+     *
+     * @param bucketLayout hash 分桶存储布局，为空时每个对象一个 key
+     * @see #fillBatch
+     */
+    public CompletableFuture<Void> fillBatchAsync(Map<String, ?> map, ToLongFunction<String> secondsFunction,
+                                                  RedisSerializer<?> valueSerializer, HashBucketLayout bucketLayout) {
+        if (bucketLayout == null) {
+            return this.writeBatchAsync(map, secondsFunction, valueSerializer);
+        }
+        if (CollectionUtils.isEmpty(map)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> this.fillBatch(map, secondsFunction, valueSerializer, bucketLayout),
+            this.asyncExecutor());
+    }
+
+    /**
+     * 异步批量写入空值标记，按存储布局写入，不通知本地缓存失效
+     */
+    public CompletableFuture<Void> putNullBatchAsync(Collection<String> keys, long seconds, RedisSerializer<?> valueSerializer,
+                                                     HashBucketLayout bucketLayout) {
+        if (CollectionUtils.isEmpty(keys) || seconds <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Map<String, Object> nullMap = new HashMap<>((int) (keys.size() / 0.75f) + 1);
+        keys.forEach(key -> nullMap.put(key, NullValue.INSTANCE));
+        return this.fillBatchAsync(nullMap, key -> seconds, valueSerializer, bucketLayout);
+    }
+
+    /**
+     * 异步批量写入空值标记，不通知本地缓存失效
+     */
+    public CompletableFuture<Void> putNullBatchAsync(Collection<String> keys, long seconds, RedisSerializer<?> valueSerializer) {
+        if (CollectionUtils.isEmpty(keys) || seconds <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Map<String, Object> nullMap = new HashMap<>((int) (keys.size() / 0.75f) + 1);
+        keys.forEach(key -> nullMap.put(key, NullValue.INSTANCE));
+        return this.writeBatchAsync(nullMap, key -> seconds, valueSerializer);
+    }
+
+    /**
+     * 获取共享的 lettuce 异步连接，异步命令在回调返回后才完成，只能使用不随 RedisConnection 关闭的共享连接
+     * <p>
+     * 第一次使用时获取并保存，之后直接复用；连接关闭（如 resetConnection）后重新获取；集群下使用持有的 RedisClusterConnection 的 native 连接
+     * </p>
+     *
+     * @return 非 lettuce 或未共享 native 连接时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private RedisClusterAsyncCommands<byte[], byte[]> asyncCommands() {
+        RedisClusterAsyncCommands<byte[], byte[]> commands = this.sharedCommands;
+        if (commands != null && commands.isOpen()) {
+            return commands;
+        }
+        RedisConnectionFactory factory = redisTemplate.getConnectionFactory();
+        if (!(factory instanceof LettuceConnectionFactory) || !((LettuceConnectionFactory) factory).getShareNativeConnection()) {
+            return null;
+        }
+        synchronized (this) {
+            commands = this.sharedCommands;
+            if (commands != null && commands.isOpen()) {
+                return commands;
+            }
+            if (((LettuceConnectionFactory) factory).isClusterAware()) {
+                // 集群下 LettuceClusterConnection 的 native 连接是独占连接，随 RedisConnection 关闭，这里持有一个不关闭的集群连接
+                this.closeClusterConnection();
+                this.clusterConnection = factory.getClusterConnection();
+                commands = (RedisClusterAsyncCommands<byte[], byte[]>) this.clusterConnection.getNativeConnection();
+            } else {
+                commands = (RedisClusterAsyncCommands<byte[], byte[]>) redisTemplate.execute((RedisCallback<Object>) RedisConnection::getNativeConnection);
+            }
+            this.sharedCommands = commands;
+            return commands;
+        }
+    }
+
+    /**
+     * 关闭持有的集群连接
+     */
+    @Override
+    public void destroy() {
+        synchronized (this) {
+            this.closeClusterConnection();
+            this.sharedCommands = null;
+            this.clusterRouter = null;
+        }
+    }
+
+    private void closeClusterConnection() {
+        RedisClusterConnection connection = this.clusterConnection;
+        this.clusterConnection = null;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (Exception e) {
+                log.error("RedisMultiCache 异常", e);
+            }
+        }
+    }
+
+    /**
+     * redis cluster 下按节点路由批量命令，路由随共享连接一起复用
+     *
+     * @return 非集群、非 lettuce 或未共享 native 连接时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private ClusterBatchRouter clusterRouter() {
+        RedisConnectionFactory factory = redisTemplate.getConnectionFactory();
+        if (!(factory instanceof LettuceConnectionFactory) || !((LettuceConnectionFactory) factory).isClusterAware()) {
+            return null;
+        }
+        RedisClusterAsyncCommands<byte[], byte[]> commands = this.asyncCommands();
+        if (!(commands instanceof RedisAdvancedClusterAsyncCommands)) {
+            return null;
+        }
+        StatefulRedisClusterConnection<byte[], byte[]> connection =
+            ((RedisAdvancedClusterAsyncCommands<byte[], byte[]>) commands).getStatefulConnection();
+        ClusterBatchRouter router = this.clusterRouter;
+        if (router == null || router.getConnection() != connection) {
+            router = new ClusterBatchRouter(connection);
+            this.clusterRouter = router;
+        }
+        return router;
+    }
+
+    /**
+     * 集群批量读取，各节点并发执行后按 keyList 顺序合并
+     *
+     * @return 与 keyList 一一对应，读取失败时返回同等长度的 null 列表
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<List<Object>> listCluster(ClusterBatchRouter router, List<?> keyList,
+                                                        RedisSerializer<?> valueSerializer) {
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) this.resolveValueSerializer(valueSerializer);
+        return this.getCluster(router, keyList)
+            .thenApplyAsync(values -> this.deserializeAll(serializer, values), this.callbackExecutor())
+            .exceptionally(e -> {
+                log.error("RedisMultiCache 异常", e);
+                return Collections.nCopies(keyList.size(), null);
+            });
+    }
+
+    /**
+     * 集群批量读取原始数据，记录熔断统计
+     */
+    private CompletableFuture<byte[][]> getCluster(ClusterBatchRouter router, List<?> keyList) {
+        CompletableFuture<byte[][]> future;
+        long start = System.nanoTime();
+        try {
+            byte[][] keys = new byte[keyList.size()][];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = Objects.requireNonNull(this.rawKey(keyList.get(i)), "key serialize failed");
+            }
+            future = router.get(keys, commandStrategy == BatchCommandStrategy.MULTI_KEY);
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.whenComplete((values, e) -> this.recordRedisCall(start, e));
+    }
+
+    private List<Object> deserializeAll(RedisSerializer<Object> serializer, byte[][] values) {
+        List<Object> cacheHitList = new ArrayList<>(values.length);
+        for (byte[] value : values) {
+            cacheHitList.add(this.deserializeQuietly(serializer, value));
+        }
+        return cacheHitList;
+    }
+
+    /**
+     * 集群批量写入，各节点并发执行；写入失败只记录日志
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <K, V> CompletableFuture<Void> putCluster(ClusterBatchRouter router, Map<K, V> map,
+                                                      ToLongFunction<K> secondsFunction, RedisSerializer valueSerializer) {
+        List<byte[]> keys = new ArrayList<>(map.size());
+        List<byte[]> values = new ArrayList<>(map.size());
+        long[] seconds = new long[map.size()];
+        try {
+            for (Map.Entry<K, V> entry : map.entrySet()) {
+                byte[] key = this.rawKey(entry.getKey());
+                byte[] value = valueSerializer.serialize(entry.getValue());
+                if (key != null && value != null) {
+                    seconds[keys.size()] = secondsFunction.applyAsLong(entry.getKey());
+                    keys.add(key);
+                    values.add(value);
+                } else {
+                    log.warn("RedisMultiCache 批量操作序列化失败， entry={}", entry);
+                }
+            }
+        } catch (Exception e) {
+            log.error("RedisMultiCache 异常", e);
+            return CompletableFuture.completedFuture(null);
+        }
+        long start = System.nanoTime();
+        return router.setex(keys.toArray(new byte[0][]), values.toArray(new byte[0][]), seconds)
+            .whenComplete((v, e) -> this.recordRedisCall(start, e))
+            .exceptionally(e -> {
+                log.error("RedisMultiCache 异常", e);
+                return null;
+            });
+    }
+
+    /**
+     * 熔断打开时不访问 redis：读取按未命中处理，写入和删除直接跳过
+     */
+    private boolean isRedisAvailable() {
+        return circuitBreaker == null || circuitBreaker.allowRequest();
+    }
+
+    /**
+     * 记录一次 redis 调用的结果，供熔断器统计失败和慢调用
+     *
+     * @param start   调用开始时间（System.nanoTime）
+     * @param failure 调用异常，为空表示成功；只有 redis 不可用的异常计为失败，见 {@link RedisCircuitBreaker#isRedisFailure}
+     */
+    private void recordRedisCall(long start, Throwable failure) {
+        if (circuitBreaker != null) {
+            circuitBreaker.record(start, failure);
+        }
+    }
+
+    /**
+     * key 序列化方式是否为 StringRedisSerializer.UTF_8，是时调用方可以直接传入 {@link BatchCacheKeys#rawKey} 编码后的 byte[] key
+     */
+    public boolean isRawKeySupported() {
+        return redisTemplate != null && redisTemplate.getKeySerializer() == StringRedisSerializer.UTF_8;
+    }
+
+    /**
+     * 序列化 key；key 序列化方式为 StringRedisSerializer.UTF_8 时直接编码，结果相同，省去 getBytes 的临时缓冲区；
+     * byte[] 为调用方已编码的 key，直接使用
+     */
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(Object key) {
+        if (key instanceof byte[]) {
+            return (byte[]) key;
+        }
+        RedisSerializer keySerializer = redisTemplate.getKeySerializer();
+        if (key instanceof String && keySerializer == StringRedisSerializer.UTF_8) {
+            return BatchCacheKeys.toBytes((String) key);
+        }
+        return keySerializer.serialize(key);
+    }
+
+    private Executor asyncExecutor() {
+        return pipelineExecutor != null ? pipelineExecutor : ForkJoinPool.commonPool();
+    }
+
+    private Executor callbackExecutor() {
+        return callbackExecutor != null ? callbackExecutor : this.asyncExecutor();
+    }
+
+    /**
+     * 批量获取加载租约（SET NX PX），用于跨节点合并对同一个 key 的加载
+     *
+     * @param keyList     缓存 key
+     * @param token       持有者标识
+     * @param leaseMillis 租约时长（毫秒）
+     * @return 与 keyList 一一对应，true 表示获取成功；redis 异常时全部视为获取成功，退化为各自加载
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<Boolean> tryLease(List<String> keyList, String token, long leaseMillis) {
+        Objects.requireNonNull(redisTemplate, "redisTemplate required not null");
+        if (!this.isRedisAvailable()) {
+            return Collections.nCopies(keyList.size(), Boolean.TRUE);
+        }
+        byte[] value = token.getBytes(StandardCharsets.UTF_8);
+        Expiration expiration = Expiration.milliseconds(leaseMillis);
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String key : keyList) {
+                    connection.set(this.rawKey(key + LEASE_SUFFIX), value, expiration, RedisStringCommands.SetOption.SET_IF_ABSENT);
+                }
+                return null;
+            });
+            List<Boolean> leased = new ArrayList<>(results.size());
+            results.forEach(result -> leased.add(Boolean.TRUE.equals(result)));
+            return leased;
+        } catch (Exception e) {
+            log.error("RedisMultiCache 异常", e);
+        }
+        return Collections.nCopies(keyList.size(), Boolean.TRUE);
+    }
+
+    /**
+     * 释放由 token 持有的加载租约
+     */
+    @SuppressWarnings("unchecked")
+    public void releaseLease(List<String> keyList, String token) {
+        if (CollectionUtils.isEmpty(keyList) || !this.isRedisAvailable()) {
+            return;
+        }
+        List<String> leaseKeys = new ArrayList<>(keyList.size());
+        keyList.forEach(key -> leaseKeys.add(key + LEASE_SUFFIX));
+        // 集群下脚本的 key 必须在同一个 slot，按 slot 分别执行
+        Collection<List<String>> groups = Collections.singletonList(leaseKeys);
+        RedisConnectionFactory factory = redisTemplate.getConnectionFactory();
+        if (factory instanceof LettuceConnectionFactory && ((LettuceConnectionFactory) factory).isClusterAware()) {
+            Map<Integer, List<String>> slots = new HashMap<>();
+            leaseKeys.forEach(key -> slots.computeIfAbsent(SlotHash.getSlot(key), slot -> new ArrayList<>()).add(key));
+            groups = slots.values();
+        }
+        try {
+            for (List<String> group : groups) {
+                redisTemplate.execute(RELEASE_LEASE_SCRIPT, RedisSerializer.byteArray(), null, group,
+                    token.getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (Exception e) {
+            log.error("RedisMultiCache 异常", e);
+        }
+    }
+
+    /**
+     * 批量读取计数器（INCR 写入的整数），一条 MGET
+     *
+     * @param keyList 计数器 key
+     * @return 与 keyList 一一对应，不存在时为 0；redis 不可用或异常时返回 null
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<Long> listCounters(List<String> keyList) {
+        Objects.requireNonNull(redisTemplate, "redisTemplate required not null");
+        if (CollectionUtils.isEmpty(keyList) || !this.isRedisAvailable()) {
+            return null;
+        }
+        byte[][] keys = new byte[keyList.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = this.rawKey(keyList.get(i));
+        }
+        long start = System.nanoTime();
+        try {
+            List<byte[]> values = (List<byte[]>) redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(keys));
+            this.recordRedisCall(start, null);
+            List<Long> counters = new ArrayList<>(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                byte[] value = values == null ? null : values.get(i);
+                counters.add(value == null ? 0L : Long.parseLong(new String(value, StandardCharsets.UTF_8)));
+            }
+            return counters;
+        } catch (Exception e) {
+            this.recordRedisCall(start, e);
+            log.error("RedisMultiCache 异常", e);
+        }
+        return null;
+    }
+
+    /**
+     * 计数器加一（INCR），计数器不设置过期时间（PERSIST）
+     *
+     * @return 加一后的值
+     * @throws IllegalStateException redis 不可用或执行失败
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public long incrCounter(String key) {
+        Objects.requireNonNull(redisTemplate, "redisTemplate required not null");
+        if (!this.isRedisAvailable()) {
+            throw new IllegalStateException("redis is unavailable, the counter is not incremented: " + key);
+        }
+        byte[] rawKey = this.rawKey(key);
+        long start = System.nanoTime();
+        Long value;
+        try {
+            value = (Long) redisTemplate.execute((RedisCallback<Long>) connection -> {
+                Long incremented = connection.incr(rawKey);
+                // 计数器不过期，清除外部设置的过期时间
+                connection.persist(rawKey);
+                return incremented;
+            });
+            this.recordRedisCall(start, null);
+        } catch (Exception e) {
+            this.recordRedisCall(start, e);
+            throw new IllegalStateException("failed to increment the counter: " + key, e);
+        }
+        if (value == null) {
+            throw new IllegalStateException("failed to increment the counter: " + key);
+        }
+        return value;
+    }
+
+    /**
+     * 按模式删除 key：SCAN MATCH 遍历，每 batchSize 个 key 一次 pipeline UNLINK，批次之间暂停 pauseMillis
+     * <p>
+     * 用于后台回收不再访问的缓存，不阻塞 redis，也不通知本地缓存失效（不再访问的 key 不会被读取）；
+     * redis 不可用时停止，剩余的 key 等待过期。
+     * 集群不支持跨节点 SCAN，抛出异常后同样停止
+     * </p>
+     *
+     * @return 删除的 key 数
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public long unlinkByPattern(String pattern, int batchSize, long pauseMillis) {
+        Objects.requireNonNull(redisTemplate, "redisTemplate required not null");
+        int size = Math.max(1, batchSize);
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(size).build();
+        RedisSerializer<String> keySerializer = redisTemplate.getKeySerializer();
+        Long unlinked = (Long) redisTemplate.execute((RedisCallback<Long>) connection -> {
+            long count = 0;
+            List<String> batch = new ArrayList<>(size);
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                while (cursor.hasNext() && this.isRedisAvailable()) {
+                    batch.add(keySerializer.deserialize(cursor.next()));
+                    if (batch.size() >= size) {
+                        this.unlinkBatch(batch, null);
+                        count += batch.size();
+                        batch = new ArrayList<>(size);
+                        if (pauseMillis > 0) {
+                            TimeUnit.MILLISECONDS.sleep(pauseMillis);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                log.error("RedisMultiCache 异常", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return count;
+            }
+            if (!batch.isEmpty()) {
+                this.unlinkBatch(batch, null);
+                count += batch.size();
+            }
+            return count;
+        });
+        return unlinked == null ? 0L : unlinked;
+    }
+
     /**
      * 获取不为空的缓存，如果缓存中存在为null，则使用 valueLoader 重新加载，并将结果存入缓存中
      *
@@ -0,0 +1,25 @@
+package com.example.cache;
+
+/**
+ * 异步写队列已满时的处理方式
+ *
+ * @author zhuwei
+ * @Date 2020/12/22 AM10:05
+ */
+public enum WriteBehindOverflowPolicy {
+
+    /**
+     * 调用线程等待队列空间（最多 blockMillis），超时后由调用线程同步写入
+     */
+    BLOCK,
+
+    /**
+     * 丢弃本次写入，下次访问时重新加载
+     */
+    DROP,
+
+    /**
+     * 由调用线程同步写入
+     */
+    CALLER_RUNS
+}
@@ -1,5 +1,7 @@
 package com.example.cache.annotation;
 
+import com.example.cache.codec.BatchCacheCodec;
+
 import java.lang.annotation.*;
 
 /**
@@ -32,6 +34,86 @@ public @interface BatchCache {
      */
     long seconds() default 180L;
 
+    /**
+     * 本地一级缓存过期时间（秒），<=0 表示不使用本地缓存
+     *
+     * @return
+     */
+    long localSeconds() default 0L;
+
+    /**
+     * 未开启本地缓存（localSeconds <=0）时，是否在本地保留热点 key 的短期副本（batch-cache.hot-key.local-seconds），
+     * 只有允许读到短暂过期数据的缓存才开启；需同时开启 batch-cache.hot-key.enabled
+     *
+     * @return
+     */
+    boolean hotKeyLocal() default false;
+
+    /**
+     * 空值标记过期时间（秒），加载方法未返回的 key 写入空值标记，防止缓存穿透；<=0 表示不缓存空值
+     *
+     * @return
+     */
+    long nullSeconds() default 0L;
+
+    /**
+     * 过期时间随机打散比例，实际过期时间为 seconds * (1 + [0, ttlJitter))，避免同一批写入的缓存同时过期
+     *
+     * @return
+     */
+    double ttlJitter() default 0D;
+
+    /**
+     * 是否提前刷新（refresh-ahead）：读取到即将过期的缓存时仍返回当前值，并在后台重新加载
+     *
+     * @return
+     */
+    boolean refreshAhead() default false;
+
+    /**
+     * 提前刷新系数（XFetch beta），越大越早刷新
+     *
+     * @return
+     */
+    double refreshBeta() default 1.0D;
+
+    /**
+     * 缓存对象的编解码方式，如 CborBatchCacheCodec；默认 BatchCacheCodec.class 表示沿用 redisTemplate 的 valueSerializer（JSON + @class）
+     *
+     * @return
+     */
+    Class<? extends BatchCacheCodec> codec() default BatchCacheCodec.class;
+
+    /**
+     * hash 分桶大小，>0 时按 id / bucketSize 分桶存入 redis hash（id 必须为整数），每个桶一条 HMGET 读取；
+     * 每个 field 带各自的过期时间（包括空值标记），过期后按未命中处理，桶随最后一个 field 过期。<=0 表示每个对象一个 key
+     *
+     * @return
+     */
+    long bucketSize() default 0L;
+
+    /**
+     * 读取 redis 的时间预算（毫秒），超过时已读取到的数据正常返回，其余 key 按未命中通过原方法加载；<=0 表示不限制。
+     * 只作用于同步方法
+     *
+     * @return
+     */
+    long budgetMillis() default 0L;
+
+    /**
+     * 单次调用原方法的最大 key 数，未命中的 key 超过时拆分成多次调用，每次调用完成后立即写回缓存；<=0 表示不拆分
+     *
+     * @return
+     */
+    int loaderBatchSize() default 0;
+
+    /**
+     * 拆分后同时调用原方法的最大次数，>1 时除调用线程外在后台加载线程池（batch-cache.loader.threads）中并发调用
+     *
+     * @return
+     */
+    int loaderParallelism() default 1;
+
     /**
      * 缓存后缀 映射字段 (类型为Collection）
      *
@@ -0,0 +1,44 @@
+package com.example.cache.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 批量删除redis缓存注解，方法正常返回后删除 key 参数对应的缓存
+ * <p>
+ * 所有 key 在一个 pipeline 中通过 UNLINK 删除（hash 分桶时为 HDEL），本地缓存同时失效并通知其他节点
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/25 AM10:30
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface BatchCacheEvict {
+
+    /**
+     * 缓存名称前缀，与读取时的 @BatchCache.value 一致
+     *
+     * @return
+     */
+    String value() default "";
+
+    /**
+     * key值（参数名，类型为Collection）
+     */
+    String key() default "id";
+
+    /**
+     * hash 分桶大小，与读取时的 @BatchCache.bucketSize 一致，不一致时启动失败
+     *
+     * @return
+     */
+    long bucketSize() default 0L;
+
+    /**
+     * 存在事务时是否在事务提交后删除，事务回滚时不删除；没有事务时在方法返回后立即删除
+     *
+     * @return
+     */
+    boolean afterCommit() default false;
+}
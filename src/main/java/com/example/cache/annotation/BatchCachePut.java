@@ -0,0 +1,63 @@
+package com.example.cache.annotation;
+
+import com.example.cache.codec.BatchCacheCodec;
+
+import java.lang.annotation.*;
+
+/**
+ * 批量写入redis缓存注解，方法返回的 Map（id -> 缓存对象）整体写入缓存
+ * <p>
+ * 写入方式与 @BatchCache 加载后写回相同（pipeline 或 write-behind），本地缓存同时失效并通知其他节点；
+ * 方法返回值只能是 Map
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/25 AM10:30
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface BatchCachePut {
+
+    /**
+     * 缓存名称前缀，与读取时的 @BatchCache.value 一致
+     *
+     * @return
+     */
+    String value() default "";
+
+    /**
+     * 缓存过期时间
+     *
+     * @return
+     */
+    long seconds() default 180L;
+
+    /**
+     * 过期时间随机打散比例，实际过期时间为 seconds * (1 + [0, ttlJitter))
+     *
+     * @return
+     */
+    double ttlJitter() default 0D;
+
+    /**
+     * 缓存对象的编解码方式，与读取时的 @BatchCache.codec 一致，不一致时启动失败
+     *
+     * @return
+     */
+    Class<? extends BatchCacheCodec> codec() default BatchCacheCodec.class;
+
+    /**
+     * hash 分桶大小，与读取时的 @BatchCache.bucketSize 一致，不一致时启动失败
+     *
+     * @return
+     */
+    long bucketSize() default 0L;
+
+    /**
+     * 存在事务时是否在事务提交后写入，事务回滚时不写入；没有事务时在方法返回后立即写入
+     *
+     * @return
+     */
+    boolean afterCommit() default false;
+}
@@ -1,95 +1,208 @@
 package com.example.cache.aspect;
 
 import com.example.cache.annotation.BatchCache;
+import com.example.cache.annotation.BatchCacheEvict;
+import com.example.cache.annotation.BatchCachePut;
 import com.example.cache.service.BatchCacheClient;
-import lombok.AllArgsConstructor;
+import com.example.cache.support.AsyncBatchCacheLoader;
+import com.example.cache.support.BatchCacheLoadException;
+import com.example.cache.support.BatchCacheLoader;
+import com.example.cache.support.BatchCacheOperation;
+import lombok.RequiredArgsConstructor;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.Signature;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.core.annotation.Order;
-import org.springframework.util.StringUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import reactor.core.publisher.Mono;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 
 /**
  * 切面
+ * <p>
+ * 处理 @BatchCache（批量读取）、@BatchCacheEvict（批量删除）、@BatchCachePut（批量写入）
+ * </p>
  *
  * @author zhuwei
  * @Date 2020/10/27 PM5:11
  */
 @Aspect
 @Order(2)
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class BatchCacheAspect {
 
     private final BatchCacheClient batchCacheClient;
 
+    /**
+     * 方法元数据缓存，每个方法只解析一次
+     */
+    private final Map<Method, BatchCacheOperation> operationCache = new ConcurrentHashMap<>(64);
+
+    /**
+     * BatchCacheEvict 方法元数据缓存，同一个方法可以同时标注多个注解，分开缓存
+     */
+    private final Map<Method, BatchCacheOperation> evictOperationCache = new ConcurrentHashMap<>(16);
+
+    /**
+     * BatchCachePut 方法元数据缓存
+     */
+    private final Map<Method, BatchCacheOperation> putOperationCache = new ConcurrentHashMap<>(16);
+
     @Around("@annotation(batchCache)")
-    public Object around(ProceedingJoinPoint joinPoint, BatchCache batchCache) {
+    public Object around(ProceedingJoinPoint joinPoint, BatchCache batchCache) throws Throwable {
         Object[] args = joinPoint.getArgs();
-        Signature signature = joinPoint.getSignature();
 
-        String key = batchCache.key();
-        String keyMapper = batchCache.keyMapper();
-        String keyPrefix = batchCache.value();
-        Long seconds = batchCache.seconds();
+        // 1 获取方法元数据（首次调用时解析并校验）
+        BatchCacheOperation operation = this.getOperation(joinPoint, operationCache,
+            (method, parameterNames) -> BatchCacheOperation.of(method, parameterNames, batchCache));
 
-        // 1 校验（注解只能应用于方法）
-        if (!(signature instanceof MethodSignature)) {
-            throw new IllegalStateException("@BatchCache can only apply to method");
-        }
+        // 2 从redis获取，未命中的key通过原方法加载
+        Object parameter = args[operation.getKeyArgIndex()];
+        List<Object> keyList = parameter instanceof List ? (List<Object>) parameter : new ArrayList<>((Collection<Object>) parameter);
 
-        // 1 校验（key的参数类型只能是Collection）
-        MethodSignature methodSignature = (MethodSignature) signature;
-        Object parameter = this.getParamsByKeyName(methodSignature.getParameterNames(), key, args);
-        if (!Collection.class.isAssignableFrom(parameter.getClass())) {
-            throw new IllegalStateException("the Parameter type of the key  must be Collection");
+        // 异步方法：返回 CompletableFuture / Mono，不阻塞调用线程
+        if (operation.getResultType() == BatchCacheOperation.ResultType.FUTURE) {
+            return batchCacheClient.loadCacheAsync(operation, keyList, this.createAsyncLoader(joinPoint, operation, args));
+        }
+        if (operation.getResultType() == BatchCacheOperation.ResultType.MONO) {
+            return Mono.defer(() -> Mono.fromFuture(
+                batchCacheClient.loadCacheAsync(operation, keyList, this.createAsyncLoader(joinPoint, operation, args))));
         }
 
-        // 1 校验（方法返回值只能是Map）
-        if (!Map.class.isAssignableFrom(methodSignature.getReturnType())) {
-            throw new IllegalStateException("the returnType of the method must be Map");
+        try {
+            return batchCacheClient.loadCache(operation, keyList, this.createLoader(joinPoint, operation, args));
+        } catch (BatchCacheLoadException e) {
+            throw e.getCause();
         }
+    }
 
+    /**
+     * 方法正常返回后批量删除 key 参数对应的缓存，方法抛出异常时不删除
+     */
+    @Around("@annotation(batchCacheEvict)")
+    public Object aroundEvict(ProceedingJoinPoint joinPoint, BatchCacheEvict batchCacheEvict) throws Throwable {
+        BatchCacheOperation operation = this.getOperation(joinPoint, evictOperationCache,
+            (method, parameterNames) -> BatchCacheOperation.of(method, parameterNames, batchCacheEvict));
+        Object parameter = joinPoint.getArgs()[operation.getKeyArgIndex()];
+        Object result = joinPoint.proceed();
 
-        // 2 从redis获取
-        Class clazz = joinPoint.getTarget().getClass();
-        Map map = batchCacheClient.loadCache(keyPrefix, (List<Object>) parameter, methodSignature, clazz, keyMapper, seconds);
-        return map;
+        if (parameter != null) {
+            List<Object> keyList = new ArrayList<>((Collection<Object>) parameter);
+            this.afterCommitOrNow(batchCacheEvict.afterCommit(), () -> batchCacheClient.evictCache(operation, keyList));
+        }
+        return result;
     }
 
     /**
-     * 根据注解BatchCache中的key获取目标方法参数值
-     *
-     * @param parameterNames 目标方法的所有参数名称
-     * @param key            key后缀适配字段
-     * @param parameters     目标方法的所有参数值
-     * @return
+     * 方法正常返回后把返回的 Map 批量写入缓存
      */
-    private Object getParamsByKeyName(String[] parameterNames, String key, Object[] parameters) {
+    @Around("@annotation(batchCachePut)")
+    public Object aroundPut(ProceedingJoinPoint joinPoint, BatchCachePut batchCachePut) throws Throwable {
+        BatchCacheOperation operation = this.getOperation(joinPoint, putOperationCache,
+            (method, parameterNames) -> BatchCacheOperation.of(method, batchCachePut));
+        Object result = joinPoint.proceed();
 
-        // 1 校验参数
-        if (parameterNames == null || parameterNames.length == 0) {
-            throw new IllegalStateException("the parameterNames is null");
-        }
-        if (parameters == null || parameters.length == 0) {
-            throw new IllegalStateException("the parameters is null");
+        if (result != null && !((Map<?, ?>) result).isEmpty()) {
+            // 事务提交前调用方可能修改返回的 Map，先复制
+            Map<Object, Object> valueMap = new LinkedHashMap<>((Map<?, ?>) result);
+            this.afterCommitOrNow(batchCachePut.afterCommit(), () -> batchCacheClient.putCache(operation, valueMap));
         }
-        // 如果未指定key值，则默认取方法的第一个参数
-        if (StringUtils.isEmpty(key) || parameterNames.length == 1) {
-            return parameters[0];
+        return result;
+    }
+
+    /**
+     * 存在事务且要求提交后执行时，注册到事务提交后执行，否则立即执行
+     */
+    private void afterCommitOrNow(boolean afterCommit, Runnable action) {
+        if (!afterCommit || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * 创建未命中数据的加载器：替换key参数后，沿代理链调用真实的目标对象
+     */
+    private BatchCacheLoader createLoader(ProceedingJoinPoint joinPoint, BatchCacheOperation operation, Object[] args) {
+        return missKeyList -> {
+            Object[] loaderArgs = args.clone();
+            loaderArgs[operation.getKeyArgIndex()] = operation.adaptKeyArg(missKeyList);
+            try {
+                return (Map<Object, Object>) joinPoint.proceed(loaderArgs);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new BatchCacheLoadException(e);
+            }
+        };
+    }
 
-        // 2 查询key后缀的参数值
-        for (int i = 0; i < parameterNames.length; i++) {
-            if (key.equals(parameterNames[i])) {
-                return parameters[i];
+    /**
+     * 创建异步加载器：原方法返回的 CompletableFuture / Mono 统一转换成 CompletableFuture
+     */
+    private AsyncBatchCacheLoader createAsyncLoader(ProceedingJoinPoint joinPoint, BatchCacheOperation operation, Object[] args) {
+        return missKeyList -> {
+            Object[] loaderArgs = args.clone();
+            loaderArgs[operation.getKeyArgIndex()] = operation.adaptKeyArg(missKeyList);
+            Object result;
+            try {
+                result = joinPoint.proceed(loaderArgs);
+            } catch (Throwable e) {
+                CompletableFuture<Map<Object, Object>> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            if (result == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (result instanceof CompletionStage) {
+                return ((CompletionStage<Map<Object, Object>>) result).toCompletableFuture();
             }
+            return ((Mono<Map<Object, Object>>) result).toFuture();
+        };
+    }
+
+    /**
+     * 获取方法元数据，首次调用时解析并校验
+     *
+     * @param operationCache 该注解的方法元数据缓存
+     * @param parser         (方法, 参数名) -> 方法元数据
+     */
+    private BatchCacheOperation getOperation(ProceedingJoinPoint joinPoint, Map<Method, BatchCacheOperation> operationCache,
+                                             BiFunction<Method, String[], BatchCacheOperation> parser) {
+        Signature signature = joinPoint.getSignature();
+
+        // 校验（注解只能应用于方法）
+        if (!(signature instanceof MethodSignature)) {
+            throw new IllegalStateException("@BatchCache can only apply to method");
+        }
+
+        MethodSignature methodSignature = (MethodSignature) signature;
+        Method method = methodSignature.getMethod();
+        BatchCacheOperation operation = operationCache.get(method);
+        if (operation == null) {
+            operation = operationCache.computeIfAbsent(method,
+                key -> parser.apply(method, methodSignature.getParameterNames()));
         }
-        throw new IllegalStateException("the Parameter of the keyMapper  not exist");
+        return operation;
     }
 }
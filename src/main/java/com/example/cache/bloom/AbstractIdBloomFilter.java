@@ -0,0 +1,59 @@
+package com.example.cache.bloom;
+
+import com.example.cache.utils.HashUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 布隆过滤器的位数组大小、hash 个数和 hash 位置计算
+ * <p>
+ * 位置计算使用 MurmurHash64A 的双重 hash：index(i) = (h1 + i * h2) mod bitSize
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/21 AM10:55
+ */
+public abstract class AbstractIdBloomFilter implements IdBloomFilter {
+
+    private static final int SEED = 0x9747b28c;
+
+    /**
+     * 位数组大小
+     */
+    protected final long bitSize;
+
+    /**
+     * hash 函数个数
+     */
+    protected final int hashCount;
+
+    /**
+     * @param expectedInsertions 预计写入的 id 数量
+     * @param fpp                期望的误判率（0, 1）
+     * @param maxBitSize         位数组大小上限
+     */
+    protected AbstractIdBloomFilter(long expectedInsertions, double fpp, long maxBitSize) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("expectedInsertions must be positive and fpp must be in (0, 1)");
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.bitSize = Math.max(64L, Math.min(bits, maxBitSize));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * 计算 id 在位数组中的位置
+     */
+    protected long[] bitIndexes(Object id) {
+        byte[] data = String.valueOf(id).getBytes(StandardCharsets.UTF_8);
+        long h1 = HashUtil.murmur64(data, SEED);
+        long h2 = HashUtil.murmur64(data, (int) h1);
+        long[] indexes = new long[hashCount];
+        long combined = h1;
+        for (int i = 0; i < hashCount; i++) {
+            indexes[i] = (combined & Long.MAX_VALUE) % bitSize;
+            combined += h2;
+        }
+        return indexes;
+    }
+}
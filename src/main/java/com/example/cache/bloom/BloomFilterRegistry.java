@@ -0,0 +1,98 @@
+package com.example.cache.bloom;
+
+import com.example.cache.RedisCircuitBreaker;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按缓存前缀（@BatchCache.value）注册布隆过滤器
+ * <p>
+ * 注册后，该前缀的批量缓存在访问 redis 之前先用过滤器拦截一定不存在的 id；未注册的前缀不受影响
+ * </p>
+ * <p>
+ * 过滤器必须与数据源保持一致：注册后需要先写入数据源中全部已存在的 id，之后新增数据时同步写入，
+ * 不经过批量缓存的写入（如直接写库）需要调用方自己 putAll，否则这些 id 会被一直拦截。
+ * 批量缓存自身会把原方法加载到的 id 和 @BatchCachePut 写入的 id 同步写入过滤器；删除的 id 无法从过滤器中移除，只会继续访问缓存
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/21 PM3:00
+ */
+public class BloomFilterRegistry {
+
+    private static final String REDIS_KEY_PREFIX = "batch-cache:bloom:";
+
+    private final Map<String, IdBloomFilter> filters = new ConcurrentHashMap<>();
+
+    private final RedisTemplate redisTemplate;
+
+    /**
+     * 默认预计写入的 id 数量
+     */
+    private final long expectedInsertions;
+
+    /**
+     * 默认误判率
+     */
+    private final double fpp;
+
+    /**
+     * redis 布隆过滤器使用的熔断器，为空时不熔断
+     */
+    private final RedisCircuitBreaker circuitBreaker;
+
+    public BloomFilterRegistry(RedisTemplate redisTemplate, long expectedInsertions, double fpp) {
+        this(redisTemplate, expectedInsertions, fpp, null);
+    }
+
+    public BloomFilterRegistry(RedisTemplate redisTemplate, long expectedInsertions, double fpp,
+                               RedisCircuitBreaker circuitBreaker) {
+        this.redisTemplate = redisTemplate;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * 按默认容量和误判率创建并注册进程内布隆过滤器
+     */
+    public IdBloomFilter registerLocal(String keyPrefix) {
+        return this.registerLocal(keyPrefix, expectedInsertions, fpp);
+    }
+
+    /**
+     * 按默认容量和误判率创建并注册 redis bitmap 布隆过滤器
+     */
+    public IdBloomFilter registerRedis(String keyPrefix) {
+        return this.registerRedis(keyPrefix, expectedInsertions, fpp);
+    }
+
+    /**
+     * 创建并注册进程内布隆过滤器
+     */
+    public IdBloomFilter registerLocal(String keyPrefix, long expectedInsertions, double fpp) {
+        return this.register(keyPrefix, new LocalIdBloomFilter(expectedInsertions, fpp));
+    }
+
+    /**
+     * 创建并注册 redis bitmap 布隆过滤器，key 为 batch-cache:bloom:{keyPrefix}，与批量缓存共用熔断器
+     */
+    public IdBloomFilter registerRedis(String keyPrefix, long expectedInsertions, double fpp) {
+        return this.register(keyPrefix, new RedisIdBloomFilter(redisTemplate, REDIS_KEY_PREFIX + keyPrefix, expectedInsertions, fpp,
+            circuitBreaker));
+    }
+
+    public IdBloomFilter register(String keyPrefix, IdBloomFilter filter) {
+        filters.put(keyPrefix, filter);
+        return filter;
+    }
+
+    /**
+     * @return 未注册时返回 null
+     */
+    public IdBloomFilter get(String keyPrefix) {
+        return filters.get(keyPrefix);
+    }
+}
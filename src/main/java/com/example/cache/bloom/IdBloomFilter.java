@@ -0,0 +1,29 @@
+package com.example.cache.bloom;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * id 布隆过滤器，用于拦截一定不存在的 id（防止缓存穿透）
+ * <p>
+ * 过滤器中保存的是存在的 id：返回 false 的 id 一定不存在，返回 true 的 id 可能存在。
+ * 使用方需要在启动时写入全部已存在的 id，并在新增数据时同步写入
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/21 AM10:40
+ */
+public interface IdBloomFilter {
+
+    /**
+     * 写入存在的 id
+     */
+    void putAll(Collection<?> ids);
+
+    /**
+     * 批量判断 id 是否可能存在
+     *
+     * @return 与 ids 一一对应，false 表示一定不存在
+     */
+    List<Boolean> mightContainAll(List<?> ids);
+}
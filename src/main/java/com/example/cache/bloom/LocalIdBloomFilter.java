@@ -0,0 +1,61 @@
+package com.example.cache.bloom;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 进程内布隆过滤器，每个节点各自维护一份
+ *
+ * @author zhuwei
+ * @Date 2020/12/21 AM11:20
+ */
+public class LocalIdBloomFilter extends AbstractIdBloomFilter {
+
+    /**
+     * 本地位数组上限 2^31 * 64 位（AtomicLongArray 长度上限）
+     */
+    private static final long MAX_BIT_SIZE = (long) Integer.MAX_VALUE << 6;
+
+    private final AtomicLongArray words;
+
+    public LocalIdBloomFilter(long expectedInsertions, double fpp) {
+        super(expectedInsertions, fpp, MAX_BIT_SIZE);
+        this.words = new AtomicLongArray((int) ((bitSize + 63) >>> 6));
+    }
+
+    @Override
+    public void putAll(Collection<?> ids) {
+        for (Object id : ids) {
+            for (long index : bitIndexes(id)) {
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long current;
+                while (((current = words.get(word)) & mask) == 0) {
+                    if (words.compareAndSet(word, current, current | mask)) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<Boolean> mightContainAll(List<?> ids) {
+        List<Boolean> result = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            result.add(this.mightContain(id));
+        }
+        return result;
+    }
+
+    private boolean mightContain(Object id) {
+        for (long index : bitIndexes(id)) {
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
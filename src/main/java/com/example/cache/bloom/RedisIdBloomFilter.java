@@ -0,0 +1,131 @@
+package com.example.cache.bloom;
+
+import com.example.cache.RedisCircuitBreaker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.CollectionUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于 redis bitmap 的布隆过滤器，所有节点共享
+ * <p>
+ * 每个 id 一条 BITFIELD 命令（包含该 id 全部 hash 位置），批量操作在一个 pipeline 中执行。
+ * 与批量缓存共用熔断器：熔断打开时不访问 redis，判断时视为全部可能存在，写入跳过（需要恢复后重新写入）
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/21 PM2:10
+ */
+@Slf4j
+public class RedisIdBloomFilter extends AbstractIdBloomFilter {
+
+    /**
+     * redis 字符串最大 512MB，即 2^32 位
+     */
+    private static final long MAX_BIT_SIZE = 1L << 32;
+
+    private static final BitFieldSubCommands.BitFieldType BIT = BitFieldSubCommands.BitFieldType.unsigned(1);
+
+    private final RedisTemplate redisTemplate;
+
+    private final byte[] key;
+
+    /**
+     * redis 熔断器，为空时不熔断
+     */
+    private final RedisCircuitBreaker circuitBreaker;
+
+    public RedisIdBloomFilter(RedisTemplate redisTemplate, String key, long expectedInsertions, double fpp) {
+        this(redisTemplate, key, expectedInsertions, fpp, null);
+    }
+
+    public RedisIdBloomFilter(RedisTemplate redisTemplate, String key, long expectedInsertions, double fpp,
+                              RedisCircuitBreaker circuitBreaker) {
+        super(expectedInsertions, fpp, MAX_BIT_SIZE);
+        this.redisTemplate = redisTemplate;
+        this.key = key.getBytes(StandardCharsets.UTF_8);
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * 熔断打开或 redis 异常时只记录日志，这些 id 需要在 redis 恢复后重新写入
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void putAll(Collection<?> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return;
+        }
+        if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            log.warn("RedisIdBloomFilter 熔断打开，跳过写入 {} 个 id", ids.size());
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Object id : ids) {
+                    BitFieldSubCommands commands = BitFieldSubCommands.create();
+                    for (long index : bitIndexes(id)) {
+                        commands = commands.set(BIT).valueAt(index).to(1);
+                    }
+                    connection.bitField(key, commands);
+                }
+                return null;
+            });
+            this.record(start, null);
+        } catch (Exception e) {
+            this.record(start, e);
+            log.error("RedisIdBloomFilter 异常", e);
+        }
+    }
+
+    /**
+     * 熔断打开或 redis 异常时视为全部可能存在，不拦截
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Boolean> mightContainAll(List<?> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return Collections.emptyList();
+        }
+        if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            return Collections.nCopies(ids.size(), Boolean.TRUE);
+        }
+        long start = System.nanoTime();
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Object id : ids) {
+                    BitFieldSubCommands commands = BitFieldSubCommands.create();
+                    for (long index : bitIndexes(id)) {
+                        commands = commands.get(BIT).valueAt(index);
+                    }
+                    connection.bitField(key, commands);
+                }
+                return null;
+            });
+            List<Boolean> mightContain = new ArrayList<>(results.size());
+            for (Object result : results) {
+                mightContain.add(result instanceof List && !((List<Long>) result).contains(0L));
+            }
+            this.record(start, null);
+            return mightContain;
+        } catch (Exception e) {
+            this.record(start, e);
+            log.error("RedisIdBloomFilter 异常", e);
+        }
+        return Collections.nCopies(ids.size(), Boolean.TRUE);
+    }
+
+    private void record(long start, Throwable failure) {
+        if (circuitBreaker != null) {
+            circuitBreaker.record(start, failure);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.cache.codec;
+
+/**
+ * 批量缓存对象的编解码方式，通过 @BatchCache.codec 为每个缓存单独指定
+ * <p>
+ * 编码结果不包含类名，解码时直接按方法返回值 Map 的 value 类型构造对象；
+ * 实现类需要有无参构造器，且线程安全
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/24 AM10:10
+ */
+public interface BatchCacheCodec {
+
+    /**
+     * 编码
+     *
+     * @param value 缓存对象，不为 null
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码
+     *
+     * @param bytes  数据
+     * @param offset 起始位置
+     * @param length 长度
+     * @param type   缓存对象类型
+     */
+    Object decode(byte[] bytes, int offset, int length, Class<?> type);
+}
@@ -0,0 +1,24 @@
+package com.example.cache.codec;
+
+import org.springframework.beans.BeanUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 编解码实例，每个实现类只创建一次
+ *
+ * @author zhuwei
+ * @Date 2020/12/24 AM11:00
+ */
+public final class BatchCacheCodecs {
+
+    private static final Map<Class<? extends BatchCacheCodec>, BatchCacheCodec> CODECS = new ConcurrentHashMap<>();
+
+    private BatchCacheCodecs() {
+    }
+
+    public static BatchCacheCodec get(Class<? extends BatchCacheCodec> codecClass) {
+        return CODECS.computeIfAbsent(codecClass, BeanUtils::instantiateClass);
+    }
+}
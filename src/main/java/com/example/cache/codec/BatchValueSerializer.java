@@ -0,0 +1,101 @@
+package com.example.cache.codec;
+
+import com.example.cache.support.CacheEnvelope;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 按 @BatchCache 指定的编解码读写缓存对象
+ * <p>
+ * 第一个字节标识数据类型：
+ * 0 缓存对象：[0][编码]
+ * 1 空值标记：[1]
+ * 2 提前刷新的缓存对象：[2][expireAt 8字节][delta 8字节][编码]
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/24 AM11:20
+ */
+public class BatchValueSerializer implements RedisSerializer<Object> {
+
+    private static final byte TAG_VALUE = 0;
+
+    private static final byte TAG_NULL = 1;
+
+    private static final byte TAG_ENVELOPE = 2;
+
+    private static final int ENVELOPE_HEADER_LENGTH = 1 + 8 + 8;
+
+    private static final byte[] NULL_BYTES = {TAG_NULL};
+
+    private final BatchCacheCodec codec;
+
+    private final Class<?> valueType;
+
+    /**
+     * @param codec     编解码
+     * @param valueType 缓存对象类型
+     */
+    public BatchValueSerializer(BatchCacheCodec codec, Class<?> valueType) {
+        this.codec = codec;
+        this.valueType = valueType;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof NullValue) {
+            return NULL_BYTES;
+        }
+        try {
+            if (value instanceof CacheEnvelope) {
+                CacheEnvelope envelope = (CacheEnvelope) value;
+                byte[] encoded = codec.encode(envelope.getValue());
+                return ByteBuffer.allocate(ENVELOPE_HEADER_LENGTH + encoded.length)
+                    .put(TAG_ENVELOPE)
+                    .putLong(envelope.getExpireAt())
+                    .putLong(envelope.getDelta())
+                    .put(encoded)
+                    .array();
+            }
+            byte[] encoded = codec.encode(value);
+            byte[] bytes = new byte[encoded.length + 1];
+            bytes[0] = TAG_VALUE;
+            System.arraycopy(encoded, 0, bytes, 1, encoded.length);
+            return bytes;
+        } catch (RuntimeException e) {
+            throw new SerializationException("Could not write " + value.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            switch (bytes[0]) {
+                case TAG_VALUE:
+                    return codec.decode(bytes, 1, bytes.length - 1, valueType);
+                case TAG_NULL:
+                    return NullValue.INSTANCE;
+                case TAG_ENVELOPE:
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, ENVELOPE_HEADER_LENGTH - 1);
+                    long expireAt = buffer.getLong();
+                    long delta = buffer.getLong();
+                    Object value = codec.decode(bytes, ENVELOPE_HEADER_LENGTH, bytes.length - ENVELOPE_HEADER_LENGTH, valueType);
+                    return new CacheEnvelope(value, expireAt, delta);
+                default:
+                    throw new SerializationException("unknown batch cache value tag: " + bytes[0]);
+            }
+        } catch (RuntimeException e) {
+            throw e instanceof SerializationException ? e
+                : new SerializationException("Could not read " + valueType.getName(), e);
+        }
+    }
+}
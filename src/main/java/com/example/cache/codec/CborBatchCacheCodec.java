@@ -0,0 +1,17 @@
+package com.example.cache.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * CBOR 二进制编解码（不含类名），数字和字符串长度按二进制存储，体积和解码开销都小于 JSON
+ *
+ * @author zhuwei
+ * @Date 2020/12/24 AM10:45
+ */
+public class CborBatchCacheCodec extends JacksonBatchCacheCodec {
+
+    public CborBatchCacheCodec() {
+        super(new ObjectMapper(new CBORFactory()));
+    }
+}
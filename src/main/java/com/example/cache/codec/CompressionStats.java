@@ -0,0 +1,94 @@
+package com.example.cache.codec;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压缩统计：压缩率（压缩前后字节数）和 CPU 耗时（纳秒）
+ *
+ * @author zhuwei
+ * @Date 2020/12/25 AM10:40
+ */
+public class CompressionStats {
+
+    /**
+     * 压缩写入的条数
+     */
+    private final LongAdder compressedCount = new LongAdder();
+
+    /**
+     * 达到阈值但压缩后没有变小、按原数据写入的条数
+     */
+    private final LongAdder incompressibleCount = new LongAdder();
+
+    /**
+     * 压缩前字节数
+     */
+    private final LongAdder originalBytes = new LongAdder();
+
+    /**
+     * 压缩后字节数
+     */
+    private final LongAdder compressedBytes = new LongAdder();
+
+    private final LongAdder compressNanos = new LongAdder();
+
+    /**
+     * 解压的条数
+     */
+    private final LongAdder decompressedCount = new LongAdder();
+
+    private final LongAdder decompressNanos = new LongAdder();
+
+    void recordCompress(int originalLength, int compressedLength, long nanos) {
+        compressedCount.increment();
+        originalBytes.add(originalLength);
+        compressedBytes.add(compressedLength);
+        compressNanos.add(nanos);
+    }
+
+    void recordIncompressible(long nanos) {
+        incompressibleCount.increment();
+        compressNanos.add(nanos);
+    }
+
+    void recordDecompress(long nanos) {
+        decompressedCount.increment();
+        decompressNanos.add(nanos);
+    }
+
+    public long getCompressedCount() {
+        return compressedCount.sum();
+    }
+
+    public long getIncompressibleCount() {
+        return incompressibleCount.sum();
+    }
+
+    public long getOriginalBytes() {
+        return originalBytes.sum();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    public long getCompressNanos() {
+        return compressNanos.sum();
+    }
+
+    public long getDecompressedCount() {
+        return decompressedCount.sum();
+    }
+
+    public long getDecompressNanos() {
+        return decompressNanos.sum();
+    }
+
+    /**
+     * 压缩率：压缩后字节数 / 压缩前字节数，没有压缩过时为 1
+     */
+    public double getCompressionRatio() {
+        long original = originalBytes.sum();
+        return original == 0 ? 1D : (double) compressedBytes.sum() / original;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.cache.codec;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+
+/**
+ * 基于 jackson 的编解码，不写入类型信息（@class），null 字段不输出
+ *
+ * @author zhuwei
+ * @Date 2020/12/24 AM10:25
+ */
+public abstract class JacksonBatchCacheCodec implements BatchCacheCodec {
+
+    private final ObjectMapper objectMapper;
+
+    protected JacksonBatchCacheCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper
+            .findAndRegisterModules()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to encode " + value.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object decode(byte[] bytes, int offset, int length, Class<?> type) {
+        try {
+            return objectMapper.readValue(bytes, offset, length, type);
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to decode " + type.getName(), e);
+        }
+    }
+}
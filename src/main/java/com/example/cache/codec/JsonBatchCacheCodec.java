@@ -0,0 +1,16 @@
+package com.example.cache.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JSON 编解码（不含类名），便于在 redis-cli 中直接查看
+ *
+ * @author zhuwei
+ * @Date 2020/12/24 AM10:40
+ */
+public class JsonBatchCacheCodec extends JacksonBatchCacheCodec {
+
+    public JsonBatchCacheCodec() {
+        super(new ObjectMapper());
+    }
+}
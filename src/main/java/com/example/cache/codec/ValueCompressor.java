@@ -0,0 +1,155 @@
+package com.example.cache.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 批量缓存 value 压缩（LZ4）
+ * <p>
+ * 1 序列化后超过 thresholdBytes 的 value 压缩后写入，压缩后没有变小的按原数据写入
+ * 2 压缩数据格式：[0xFF][算法][原长度 4字节][压缩数据]。0xFF 不会出现在 UTF-8 JSON 和
+ * {@link BatchValueSerializer} 的首字节，读取时按首字节区分，压缩和未压缩的数据可以共存
+ * 3 读取总是识别压缩数据，关闭压缩（enabled=false）后已写入的压缩数据仍然可以读取
+ * 4 读取时校验原长度（不能为负、不能超过压缩数据长度的 {@value #MAX_RATIO} 倍），并按压缩数据的实际长度解压，
+ * 损坏或截断的数据抛出 {@link SerializationException}，不会按错误的原长度分配内存
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/25 AM10:10
+ */
+public class ValueCompressor {
+
+    private static final byte MAGIC = (byte) 0xFF;
+
+    private static final byte ALGORITHM_LZ4 = 1;
+
+    private static final int HEADER_LENGTH = 1 + 1 + 4;
+
+    /**
+     * LZ4 的最大压缩比约为 255:1，原长度超过压缩数据长度的这个倍数时一定是损坏的数据
+     */
+    private static final int MAX_RATIO = 255;
+
+    private final boolean enabled;
+
+    private final int thresholdBytes;
+
+    private final LZ4Compressor compressor;
+
+    private final LZ4SafeDecompressor decompressor;
+
+    private final CompressionStats stats = new CompressionStats();
+
+    /**
+     * 包装后的序列化方式，每个原序列化方式只包装一次；调用方传入的是每个缓存固定的实例，大小与缓存数相同
+     */
+    private final Map<RedisSerializer<?>, RedisSerializer<Object>> serializers = new ConcurrentHashMap<>();
+
+    /**
+     * @param enabled        是否压缩写入的数据
+     * @param thresholdBytes 序列化后达到该字节数才压缩
+     */
+    public ValueCompressor(boolean enabled, int thresholdBytes) {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.enabled = enabled;
+        this.thresholdBytes = Math.max(1, thresholdBytes);
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.safeDecompressor();
+    }
+
+    /**
+     * 包装序列化方式：写入时按阈值压缩，读取时识别并解压；已经包装过的直接返回
+     */
+    @SuppressWarnings("unchecked")
+    public RedisSerializer<Object> wrap(RedisSerializer<?> serializer) {
+        if (serializer instanceof CompressingSerializer) {
+            return (RedisSerializer<Object>) serializer;
+        }
+        return serializers.computeIfAbsent(serializer, target -> new CompressingSerializer((RedisSerializer<Object>) target));
+    }
+
+    public CompressionStats getStats() {
+        return stats;
+    }
+
+    private byte[] compress(byte[] bytes) {
+        if (!enabled || bytes == null || bytes.length < thresholdBytes) {
+            return bytes;
+        }
+        long start = System.nanoTime();
+        int maxLength = HEADER_LENGTH + compressor.maxCompressedLength(bytes.length);
+        byte[] compressed = new byte[maxLength];
+        int length = HEADER_LENGTH + compressor.compress(bytes, 0, bytes.length, compressed, HEADER_LENGTH, maxLength - HEADER_LENGTH);
+        if (length >= bytes.length) {
+            stats.recordIncompressible(System.nanoTime() - start);
+            return bytes;
+        }
+        compressed[0] = MAGIC;
+        compressed[1] = ALGORITHM_LZ4;
+        compressed[2] = (byte) (bytes.length >>> 24);
+        compressed[3] = (byte) (bytes.length >>> 16);
+        compressed[4] = (byte) (bytes.length >>> 8);
+        compressed[5] = (byte) bytes.length;
+        byte[] result = new byte[length];
+        System.arraycopy(compressed, 0, result, 0, length);
+        stats.recordCompress(bytes.length, length, System.nanoTime() - start);
+        return result;
+    }
+
+    private byte[] decompress(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_LENGTH || bytes[0] != MAGIC) {
+            return bytes;
+        }
+        if (bytes[1] != ALGORITHM_LZ4) {
+            throw new SerializationException("unknown compression algorithm: " + bytes[1]);
+        }
+        long start = System.nanoTime();
+        int originalLength = (bytes[2] & 0xFF) << 24 | (bytes[3] & 0xFF) << 16 | (bytes[4] & 0xFF) << 8 | (bytes[5] & 0xFF);
+        int compressedLength = bytes.length - HEADER_LENGTH;
+        if (originalLength < 0 || (long) originalLength > (long) compressedLength * MAX_RATIO) {
+            throw new SerializationException("invalid original length " + originalLength + " for " + compressedLength
+                + " compressed bytes");
+        }
+        byte[] original = new byte[originalLength];
+        int length;
+        try {
+            length = decompressor.decompress(bytes, HEADER_LENGTH, compressedLength, original, 0);
+        } catch (LZ4Exception | ArrayIndexOutOfBoundsException e) {
+            throw new SerializationException("Could not decompress value", e);
+        }
+        if (length != originalLength) {
+            throw new SerializationException("decompressed " + length + " bytes, expected " + originalLength);
+        }
+        stats.recordDecompress(System.nanoTime() - start);
+        return original;
+    }
+
+    /**
+     * 压缩/解压包装
+     */
+    private class CompressingSerializer implements RedisSerializer<Object> {
+
+        private final RedisSerializer<Object> target;
+
+        CompressingSerializer(RedisSerializer<Object> target) {
+            this.target = target;
+        }
+
+        @Override
+        public byte[] serialize(Object value) throws SerializationException {
+            return compress(target.serialize(value));
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) throws SerializationException {
+            return target.deserialize(decompress(bytes));
+        }
+    }
+}
@@ -1,13 +1,15 @@
 package com.example.cache.controller;
 
 import com.example.cache.entity.User;
+import com.example.cache.service.BatchCacheClient;
 import com.example.cache.service.ICacheTestService;
+import com.example.cache.support.BatchLoaderDispatcher;
 import com.example.cache.utils.CollUtil;
-import lombok.AllArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 描述
@@ -16,19 +18,59 @@ import java.util.Map;
  * @Date 2020/10/27 PM8:05
  */
 @RestController
-@AllArgsConstructor
 @RequestMapping(value = "/cache")
 public class CacheTestController {
 
     private final ICacheTestService cacheTestService;
 
+    private final BatchCacheClient batchCacheClient;
+
+    /**
+     * 单个用户查询合并成批量查询，走 listByIds 的 @BatchCache 缓存
+     */
+    private final BatchLoaderDispatcher<Long, User> userDispatcher;
+
+    public CacheTestController(ICacheTestService cacheTestService, BatchCacheClient batchCacheClient) {
+        this.cacheTestService = cacheTestService;
+        this.batchCacheClient = batchCacheClient;
+        this.userDispatcher = batchCacheClient.newDispatcher(cacheTestService::listByIds);
+    }
+
     @PostMapping(value = "/get")
     public User get() {
         return cacheTestService.getById(1L);
     }
 
+    @PostMapping(value = "/get/{userId}")
+    public User get(@PathVariable Long userId) {
+        return userDispatcher.get(userId);
+    }
+
     @PostMapping(value = "/list")
     public Map<Long, User> list(@RequestBody List<Long> userIdList) {
         return cacheTestService.listByIds(userIdList);
     }
+
+    @PostMapping(value = "/list/async")
+    public CompletableFuture<Map<Long, User>> listAsync(@RequestBody List<Long> userIdList) {
+        return cacheTestService.listByIdsAsync(userIdList);
+    }
+
+    @PostMapping(value = "/update")
+    public Map<Long, User> update(@RequestBody List<User> userList) {
+        return cacheTestService.updateUsers(userList);
+    }
+
+    @PostMapping(value = "/delete")
+    public void delete(@RequestBody List<Long> userIdList) {
+        cacheTestService.deleteByIds(userIdList);
+    }
+
+    /**
+     * 清空一个缓存名称前缀下的批量缓存（版本号加一），如 /cache/flush/cache:user:batch
+     */
+    @PostMapping(value = "/flush/{keyPrefix}")
+    public long flush(@PathVariable String keyPrefix) {
+        return batchCacheClient.invalidateAll(keyPrefix);
+    }
 }
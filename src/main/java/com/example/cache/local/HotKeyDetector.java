@@ -0,0 +1,248 @@
+package com.example.cache.local;
+
+import com.example.cache.utils.HashUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 热点 key 识别，识别出的热点 key 在本地缓存中保留一份短期副本，不再访问 redis（只用于 @BatchCache(hotKeyLocal = true) 的缓存）
+ * <p>
+ * 1 count-min sketch 统计每个 redis key 在当前窗口内的访问次数（DEPTH 行计数器，取各行的最小值，只会高估不会低估），
+ * 每行使用不同种子的 64 位 MurmurHash（对 key 的 UTF-8 字节），hashCode 相同的 key 不会在所有行上冲突
+ * 2 窗口内估计次数达到 threshold 的 key 视为热点，最多保留 topK 个，已满时替换次数最少的
+ * 3 每个窗口结束时重新判断：本窗口次数仍达到 threshold 的保留，其余移出；然后计数清零
+ * </p>
+ * 只保存 topK 个热点 key，不保存其他 key，内存占用固定（DEPTH * width 个 int）
+ *
+ * @author zhuwei
+ * @Date 2020/12/29 AM11:00
+ */
+@Slf4j
+public class HotKeyDetector implements DisposableBean {
+
+    private static final int DEPTH = 4;
+
+    /**
+     * 每行的 hash 种子
+     */
+    private static final int[] ROW_SEEDS = {0x5bd1e995, 0x1b873593, 0x85ebca6b, 0xc2b2ae35};
+
+    private final boolean enabled;
+
+    /**
+     * 每行计数器个数 - 1，个数为 2 的幂
+     */
+    private final int mask;
+
+    private final AtomicIntegerArray counters;
+
+    /**
+     * 窗口内访问次数达到该值视为热点
+     */
+    private final int threshold;
+
+    private final int topK;
+
+    /**
+     * 热点 key 本地副本的过期时间（秒）
+     */
+    private final long localSeconds;
+
+    /**
+     * 热点 key -> 成为热点（或上一个窗口）时的估计访问次数
+     */
+    private final Map<String, Integer> hotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 热点已满时的最小估计次数，新 key 超过该值才替换，避免每次访问都遍历热点集合
+     */
+    private volatile int floor;
+
+    private final ScheduledFuture<?> windowTask;
+
+    /**
+     * 不识别热点 key
+     */
+    public HotKeyDetector() {
+        this.enabled = false;
+        this.mask = 0;
+        this.counters = null;
+        this.threshold = Integer.MAX_VALUE;
+        this.topK = 0;
+        this.localSeconds = 0L;
+        this.windowTask = null;
+    }
+
+    /**
+     * @param width        每行计数器个数，向上取 2 的幂
+     * @param threshold    窗口内访问次数达到该值视为热点
+     * @param topK         最多保留的热点 key 数
+     * @param windowMillis 统计窗口（毫秒）
+     * @param localSeconds 热点 key 本地副本的过期时间（秒）
+     * @param scheduler    窗口结束时执行重新判断和清零
+     */
+    public HotKeyDetector(int width, int threshold, int topK, long windowMillis, long localSeconds,
+                          ScheduledExecutorService scheduler) {
+        int size = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+        this.enabled = true;
+        this.mask = size - 1;
+        this.counters = new AtomicIntegerArray(DEPTH * size);
+        this.threshold = Math.max(1, threshold);
+        this.topK = Math.max(1, topK);
+        this.localSeconds = localSeconds;
+        this.windowTask = scheduler.scheduleWithFixedDelay(this::rotate, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getLocalSeconds() {
+        return localSeconds;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key redis key
+     * @return 是否为热点 key
+     */
+    public boolean record(String key) {
+        if (!enabled) {
+            return false;
+        }
+        byte[] data = key.getBytes(StandardCharsets.UTF_8);
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int count = counters.incrementAndGet(this.index(row, data));
+            estimate = Math.min(estimate, count);
+        }
+        if (hotKeys.containsKey(key)) {
+            return true;
+        }
+        if (estimate < threshold || (hotKeys.size() >= topK && estimate <= floor)) {
+            return false;
+        }
+        return this.promote(key, estimate);
+    }
+
+    /**
+     * 是否为热点 key，不记录访问
+     */
+    public boolean isHot(String key) {
+        return enabled && hotKeys.containsKey(key);
+    }
+
+    public int getHotKeyCount() {
+        return hotKeys.size();
+    }
+
+    /**
+     * 当前热点 key，按估计访问次数从高到低
+     */
+    public Map<String, Integer> getHotKeys() {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(hotKeys.entrySet());
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        Map<String, Integer> sorted = new LinkedHashMap<>();
+        entries.forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return sorted;
+    }
+
+    /**
+     * 加入热点集合，已满时替换次数最少的
+     */
+    private synchronized boolean promote(String key, int estimate) {
+        if (hotKeys.containsKey(key)) {
+            return true;
+        }
+        if (hotKeys.size() >= topK) {
+            String coldest = null;
+            int coldestCount = Integer.MAX_VALUE;
+            for (Map.Entry<String, Integer> entry : hotKeys.entrySet()) {
+                if (entry.getValue() < coldestCount) {
+                    coldest = entry.getKey();
+                    coldestCount = entry.getValue();
+                }
+            }
+            if (coldest == null || estimate <= coldestCount) {
+                floor = coldestCount;
+                return false;
+            }
+            hotKeys.remove(coldest);
+        }
+        hotKeys.put(key, estimate);
+        this.updateFloor();
+        log.debug("HotKeyDetector 热点 key {}，窗口内约 {} 次访问", key, estimate);
+        return true;
+    }
+
+    /**
+     * 窗口结束：本窗口次数未达到 threshold 的热点移出，计数清零
+     */
+    synchronized void rotate() {
+        try {
+            hotKeys.replaceAll((key, count) -> this.estimate(key));
+            hotKeys.values().removeIf(count -> count < threshold);
+            this.updateFloor();
+            for (int i = 0; i < counters.length(); i++) {
+                counters.lazySet(i, 0);
+            }
+        } catch (Exception e) {
+            // 定时任务抛出异常后不再执行
+            log.error("HotKeyDetector 异常", e);
+        }
+    }
+
+    private void updateFloor() {
+        int min = 0;
+        if (hotKeys.size() >= topK) {
+            min = Integer.MAX_VALUE;
+            for (int count : hotKeys.values()) {
+                min = Math.min(min, count);
+            }
+        }
+        floor = min;
+    }
+
+    /**
+     * 当前窗口的估计次数，不记录访问
+     */
+    private int estimate(String key) {
+        byte[] data = key.getBytes(StandardCharsets.UTF_8);
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(this.index(row, data)));
+        }
+        return estimate;
+    }
+
+    /**
+     * 第 row 行的计数器下标，按该行的种子计算 hash，高低 32 位异或后取低位
+     */
+    private int index(int row, byte[] data) {
+        long hash = HashUtil.murmur64(data, ROW_SEEDS[row]);
+        return row * (mask + 1) + ((int) (hash ^ (hash >>> 32)) & mask);
+    }
+
+    @Override
+    public void destroy() {
+        if (windowTask != null) {
+            windowTask.cancel(false);
+        }
+    }
+}
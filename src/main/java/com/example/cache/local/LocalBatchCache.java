@@ -0,0 +1,211 @@
+package com.example.cache.local;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.CollectionUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内一级缓存（L1），位于 redis 批量缓存之前
+ * <p>
+ * 1 基于 caffeine，按条目数（maximumSize）或按估算的字节数（maximumWeight）限制容量，按 W-TinyLFU 淘汰；
+ * caffeine 不能同时使用两种限制，maximumWeight > 0 时按字节数限制
+ * 2 每个条目的过期时间由 @BatchCache.localSeconds 指定
+ * 3 本节点更新或删除缓存（putBatch / evictBatch）时，通过 redis pub/sub 通知其他节点失效对应的 key；加载后回填不通知
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/3 PM2:30
+ */
+@Slf4j
+public class LocalBatchCache implements MessageListener {
+
+    /**
+     * 消息格式：nodeId \n key1 \n key2 ...
+     */
+    private static final String SEPARATOR = "\n";
+
+    /**
+     * 当前节点标识，忽略自己发出的失效通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Cache<String, LocalEntry> cache;
+
+    private final RedisTemplate redisTemplate;
+
+    private final byte[] channel;
+
+    /**
+     * 是否按字节数限制容量，是时写入前估算条目大小
+     */
+    private final boolean weighted;
+
+    public LocalBatchCache(long maximumSize, RedisTemplate redisTemplate, String channel) {
+        this(maximumSize, 0L, redisTemplate, channel);
+    }
+
+    /**
+     * @param maximumSize   最大条目数，maximumWeight <=0 时生效
+     * @param maximumWeight 最大字节数（按 redisTemplate 的 valueSerializer 序列化后的长度估算），<=0 不按字节数限制
+     * @param redisTemplate 发布失效通知，估算条目大小
+     * @param channel       失效通知频道
+     */
+    public LocalBatchCache(long maximumSize, long maximumWeight, RedisTemplate redisTemplate, String channel) {
+        this(maximumSize, maximumWeight, redisTemplate, channel, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    LocalBatchCache(long maximumSize, long maximumWeight, RedisTemplate redisTemplate, String channel, Ticker ticker,
+                    Executor executor) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().ticker(ticker).executor(executor);
+        if (maximumWeight > 0) {
+            builder.maximumWeight(maximumWeight).weigher((String key, LocalEntry entry) -> entry.weight);
+        } else {
+            builder.maximumSize(maximumSize);
+        }
+        this.cache = builder.expireAfter(new LocalEntryExpiry()).build();
+        this.weighted = maximumWeight > 0;
+        this.redisTemplate = redisTemplate;
+        this.channel = channel.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取本地缓存
+     *
+     * @param key redis key
+     * @return 不存在或已过期返回 null
+     */
+    public Object get(String key) {
+        LocalEntry entry = cache.getIfPresent(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * 写入本地缓存
+     *
+     * @param seconds 本地过期时间，<=0 不写入
+     */
+    public void put(String key, Object value, long seconds) {
+        if (value == null || seconds <= 0) {
+            return;
+        }
+        int weight = weighted ? this.weigh(key, value) : 1;
+        cache.put(key, new LocalEntry(value, TimeUnit.SECONDS.toNanos(seconds), weight));
+    }
+
+    /**
+     * 估算条目大小：key 的字符数 + value 按 redisTemplate 的 valueSerializer 序列化后的字节数
+     */
+    @SuppressWarnings("unchecked")
+    private int weigh(String key, Object value) {
+        int valueWeight = 0;
+        try {
+            byte[] bytes = redisTemplate.getValueSerializer().serialize(value);
+            valueWeight = bytes == null ? 0 : bytes.length;
+        } catch (Exception e) {
+            log.warn("LocalBatchCache 估算条目大小失败，按 key 的大小计算， key={}", key);
+        }
+        return key.length() + valueWeight;
+    }
+
+    /**
+     * 执行 caffeine 的过期和淘汰
+     */
+    void cleanUp() {
+        cache.cleanUp();
+    }
+
+    long estimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * 失效本节点的 key，并通知其他节点
+     */
+    public void evict(Collection<String> keys) {
+        if (CollectionUtils.isEmpty(keys)) {
+            return;
+        }
+        cache.invalidateAll(keys);
+        publish(keys);
+    }
+
+    /**
+     * 发布失效通知，失败只记录日志，不影响主流程
+     */
+    @SuppressWarnings("unchecked")
+    private void publish(Collection<String> keys) {
+        byte[] message = (nodeId + SEPARATOR + String.join(SEPARATOR, keys)).getBytes(StandardCharsets.UTF_8);
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, message));
+        } catch (Exception e) {
+            log.error("LocalBatchCache 发布失效通知异常", e);
+        }
+    }
+
+    /**
+     * 接收其他节点的失效通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        List<String> parts = Arrays.asList(new String(message.getBody(), StandardCharsets.UTF_8).split(SEPARATOR));
+        if (parts.size() < 2 || nodeId.equals(parts.get(0))) {
+            return;
+        }
+        cache.invalidateAll(parts.subList(1, parts.size()));
+    }
+
+    /**
+     * 本地缓存条目，携带各自的过期时间
+     */
+    private static class LocalEntry {
+
+        private final Object value;
+
+        private final long ttlNanos;
+
+        private final int weight;
+
+        LocalEntry(Object value, long ttlNanos, int weight) {
+            this.value = value;
+            this.ttlNanos = ttlNanos;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 按条目自身的 ttl 过期，读操作不延长有效期
+     */
+    private static class LocalEntryExpiry implements Expiry<String, LocalEntry> {
+
+        @Override
+        public long expireAfterCreate(String key, LocalEntry value, long currentTime) {
+            return value.ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, LocalEntry value, long currentTime, long currentDuration) {
+            return value.ttlNanos;
+        }
+
+        @Override
+        public long expireAfterRead(String key, LocalEntry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.cache.metrics;
+
+import com.example.cache.RedisCircuitBreaker;
+import com.example.cache.codec.CompressionStats;
+import com.example.cache.local.HotKeyDetector;
+import com.example.cache.support.BatchCacheWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量缓存的 micrometer 指标，按缓存名称前缀（@BatchCache.value）打 cache 标签
+ * <p>
+ * 1 batch.cache.requests / batch.cache.keys：调用次数和请求的 key 数，batch.cache.batch.size：每次调用的 key 数分布
+ * 2 batch.cache.gets（result=hit|miss）：未调用加载方法即得到结果的 key（本地缓存、redis、空值标记、布隆过滤器）记为 hit
+ * 3 batch.cache.redis（operation=list|put）：批量读写 redis 的耗时
+ * 4 batch.cache.loader（outcome=success|failure）：加载方法耗时，count 即加载方法调用次数
+ * 5 batch.cache.serialization（operation=serialize|deserialize）：value 编解码耗时（不含压缩）
+ * 6 batch.cache.circuit.state / batch.cache.circuit.rejected：redis 熔断器状态和跳过的调用次数
+ * 7 batch.cache.hotkeys：当前热点 key 数，热点 key 明细通过 /actuator/hotkeys 查看
+ * </p>
+ * 未启用时（没有 MeterRegistry）所有记录方法直接返回
+ *
+ * @author zhuwei
+ * @Date 2020/12/23 PM3:10
+ */
+public class BatchCacheMetrics {
+
+    private static final String PREFIX = "batch.cache.";
+
+    private static final String CACHE_TAG = "cache";
+
+    private final MeterRegistry registry;
+
+    /**
+     * 缓存名称前缀 -> 该缓存的指标，每个缓存只注册一次
+     */
+    private final ConcurrentMap<String, CacheMeters> meters = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存名称前缀 -> 原序列化方式 -> 记录耗时的序列化方式
+     * <p>
+     * 同一个缓存可能使用多个序列化方式（@BatchCache 和 @BatchCachePut 指定不同的编解码），每个组合只包装一次，
+     * 返回的实例不变，下游按实例缓存的包装（如压缩）不会随调用次数增长
+     * </p>
+     */
+    private final ConcurrentMap<String, ConcurrentMap<RedisSerializer<?>, TimedSerializer>> serializers = new ConcurrentHashMap<>();
+
+    /**
+     * @param registry 为 null 时不记录指标
+     */
+    public BatchCacheMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public boolean isEnabled() {
+        return registry != null;
+    }
+
+    /**
+     * 记录一次批量调用
+     *
+     * @param keys 请求的 key 数
+     */
+    public void recordRequest(String cache, int keys) {
+        if (registry == null) {
+            return;
+        }
+        CacheMeters cacheMeters = this.meters(cache);
+        cacheMeters.requests.increment();
+        cacheMeters.keys.increment(keys);
+        cacheMeters.batchSize.record(keys);
+    }
+
+    /**
+     * 记录命中情况
+     *
+     * @param hits   不需要调用加载方法的 key 数
+     * @param misses 需要调用加载方法的 key 数
+     */
+    public void recordLookup(String cache, int hits, int misses) {
+        if (registry == null) {
+            return;
+        }
+        CacheMeters cacheMeters = this.meters(cache);
+        cacheMeters.hits.increment(hits);
+        cacheMeters.misses.increment(misses);
+    }
+
+    /**
+     * 记录一次批量读取 redis 的耗时
+     */
+    public void recordList(String cache, long nanos) {
+        if (registry != null) {
+            this.meters(cache).list.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 记录一次批量写入 redis 的耗时（write-behind 时为入队耗时）
+     */
+    public void recordPut(String cache, long nanos) {
+        if (registry != null) {
+            this.meters(cache).put.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 记录一次加载方法调用
+     *
+     * @param success 加载方法是否正常返回
+     */
+    public void recordLoad(String cache, long nanos, boolean success) {
+        if (registry == null) {
+            return;
+        }
+        CacheMeters cacheMeters = this.meters(cache);
+        (success ? cacheMeters.loadSuccess : cacheMeters.loadFailure).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 包装序列化方式，记录编解码耗时；同一个缓存的同一个序列化方式只包装一次，批量写入时仍可按序列化方式分组
+     */
+    public RedisSerializer<?> timed(String cache, RedisSerializer<?> serializer) {
+        if (registry == null) {
+            return serializer;
+        }
+        return serializers.computeIfAbsent(cache, name -> new ConcurrentHashMap<>())
+            .computeIfAbsent(serializer, delegate -> new TimedSerializer(delegate, this.meters(cache)));
+    }
+
+    /**
+     * 注册 write-behind 队列的指标
+     */
+    public void bindWriter(BatchCacheWriter writer) {
+        if (registry == null) {
+            return;
+        }
+        Gauge.builder(PREFIX + "write.behind.pending", writer, BatchCacheWriter::getPendingCount)
+            .description("write-behind 队列中等待写入的条数")
+            .register(registry);
+        FunctionCounter.builder(PREFIX + "write.behind.dropped", writer, BatchCacheWriter::getDroppedCount)
+            .description("write-behind 队列满时丢弃的条数")
+            .register(registry);
+    }
+
+    /**
+     * 注册 value 压缩的指标
+     */
+    public void bindCompression(CompressionStats stats) {
+        if (registry == null) {
+            return;
+        }
+        FunctionCounter.builder(PREFIX + "compression.original", stats, CompressionStats::getOriginalBytes)
+            .baseUnit("bytes")
+            .description("压缩前的字节数")
+            .register(registry);
+        FunctionCounter.builder(PREFIX + "compression.compressed", stats, CompressionStats::getCompressedBytes)
+            .baseUnit("bytes")
+            .description("压缩后的字节数")
+            .register(registry);
+        Gauge.builder(PREFIX + "compression.ratio", stats, CompressionStats::getCompressionRatio)
+            .description("压缩后 / 压缩前")
+            .register(registry);
+    }
+
+    /**
+     * 注册 redis 熔断器的指标
+     */
+    public void bindCircuitBreaker(RedisCircuitBreaker circuitBreaker) {
+        if (registry == null) {
+            return;
+        }
+        Gauge.builder(PREFIX + "circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+            .description("熔断器状态：0 关闭，1 打开，2 半开")
+            .register(registry);
+        FunctionCounter.builder(PREFIX + "circuit.rejected", circuitBreaker, RedisCircuitBreaker::getRejectedCount)
+            .description("熔断打开期间跳过的 redis 调用次数")
+            .register(registry);
+    }
+
+    /**
+     * 注册热点 key 数的指标
+     */
+    public void bindHotKeys(HotKeyDetector hotKeyDetector) {
+        if (registry == null || !hotKeyDetector.isEnabled()) {
+            return;
+        }
+        Gauge.builder(PREFIX + "hotkeys", hotKeyDetector, HotKeyDetector::getHotKeyCount)
+            .description("当前热点 key 数，热点 key 在本地保留短期副本")
+            .register(registry);
+    }
+
+    private CacheMeters meters(String cache) {
+        return meters.computeIfAbsent(cache, name -> new CacheMeters(registry, name));
+    }
+
+    /**
+     * 一个缓存的全部指标
+     */
+    private static class CacheMeters {
+
+        private final Counter requests;
+
+        private final Counter keys;
+
+        private final Counter hits;
+
+        private final Counter misses;
+
+        private final DistributionSummary batchSize;
+
+        private final Timer list;
+
+        private final Timer put;
+
+        private final Timer loadSuccess;
+
+        private final Timer loadFailure;
+
+        private final Timer serialize;
+
+        private final Timer deserialize;
+
+        CacheMeters(MeterRegistry registry, String cache) {
+            this.requests = Counter.builder(PREFIX + "requests").tag(CACHE_TAG, cache)
+                .description("批量调用次数").register(registry);
+            this.keys = Counter.builder(PREFIX + "keys").tag(CACHE_TAG, cache)
+                .description("请求的 key 数").register(registry);
+            this.hits = Counter.builder(PREFIX + "gets").tags(CACHE_TAG, cache, "result", "hit")
+                .description("不需要调用加载方法的 key 数").register(registry);
+            this.misses = Counter.builder(PREFIX + "gets").tags(CACHE_TAG, cache, "result", "miss")
+                .description("需要调用加载方法的 key 数").register(registry);
+            this.batchSize = DistributionSummary.builder(PREFIX + "batch.size").tag(CACHE_TAG, cache)
+                .baseUnit("keys").description("每次调用的 key 数").publishPercentileHistogram().register(registry);
+            this.list = Timer.builder(PREFIX + "redis").tags(CACHE_TAG, cache, "operation", "list")
+                .description("批量读取 redis 耗时").publishPercentileHistogram().register(registry);
+            this.put = Timer.builder(PREFIX + "redis").tags(CACHE_TAG, cache, "operation", "put")
+                .description("批量写入 redis 耗时").publishPercentileHistogram().register(registry);
+            this.loadSuccess = Timer.builder(PREFIX + "loader").tags(CACHE_TAG, cache, "outcome", "success")
+                .description("加载方法耗时").publishPercentileHistogram().register(registry);
+            this.loadFailure = Timer.builder(PREFIX + "loader").tags(CACHE_TAG, cache, "outcome", "failure")
+                .description("加载方法耗时").publishPercentileHistogram().register(registry);
+            this.serialize = Timer.builder(PREFIX + "serialization").tags(CACHE_TAG, cache, "operation", "serialize")
+                .description("value 编码耗时").register(registry);
+            this.deserialize = Timer.builder(PREFIX + "serialization").tags(CACHE_TAG, cache, "operation", "deserialize")
+                .description("value 解码耗时").register(registry);
+        }
+    }
+
+    /**
+     * 记录编解码耗时的序列化方式
+     */
+    private static class TimedSerializer implements RedisSerializer<Object> {
+
+        private final RedisSerializer<Object> delegate;
+
+        private final CacheMeters meters;
+
+        @SuppressWarnings("unchecked")
+        TimedSerializer(RedisSerializer<?> delegate, CacheMeters meters) {
+            this.delegate = (RedisSerializer<Object>) delegate;
+            this.meters = meters;
+        }
+
+        @Override
+        public byte[] serialize(Object value) throws SerializationException {
+            long start = System.nanoTime();
+            try {
+                return delegate.serialize(value);
+            } finally {
+                meters.serialize.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) throws SerializationException {
+            long start = System.nanoTime();
+            try {
+                return delegate.deserialize(bytes);
+            } finally {
+                meters.deserialize.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.cache.metrics;
+
+import com.example.cache.local.HotKeyDetector;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * actuator 端点 /actuator/hotkeys：当前热点 key（redis key）及其在统计窗口内的估计访问次数，按次数从高到低
+ *
+ * @author zhuwei
+ * @Date 2020/12/29 PM2:10
+ */
+@Endpoint(id = "hotkeys")
+public class HotKeyEndpoint {
+
+    private final HotKeyDetector hotKeyDetector;
+
+    public HotKeyEndpoint(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    @ReadOperation
+    public Map<String, Object> hotKeys() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", hotKeyDetector.isEnabled());
+        result.put("threshold", hotKeyDetector.getThreshold());
+        result.put("localSeconds", hotKeyDetector.getLocalSeconds());
+        result.put("keys", hotKeyDetector.getHotKeys());
+        return result;
+    }
+}
@@ -1,9 +1,15 @@
 package com.example.cache.service;
 
-import org.aspectj.lang.reflect.MethodSignature;
+import com.example.cache.support.AsyncBatchCacheLoader;
+import com.example.cache.support.BatchCacheLoader;
+import com.example.cache.support.BatchCacheOperation;
+import com.example.cache.support.BatchLoaderDispatcher;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * 批量缓存客户端接口
@@ -16,17 +22,66 @@ public interface BatchCacheClient {
     /**
      * 从redis中加载缓存
      * <p>
+     * 0 开启本地缓存时，优先取本地缓存
      * 1 缓存中存在的数据，取缓存
      * 2 不存在，访问方法获取
      * </p>
      *
-     * @param keyPrefix       key前缀
-     * @param keyList         key列表
-     * @param methodSignature 方法上下文
-     * @param voClass         返回数据的类型
-     * @param keyMapper
+     * @param operation 方法元数据（key前缀、过期时间、key提取器等）
+     * @param keyList   key列表
+     * @param loader    加载未命中缓存的数据，异常直接向上抛出
      * @return
      */
-    Map<Object, Object> loadCache(String keyPrefix, List<Object> keyList, MethodSignature methodSignature
-        , Class voClass, String keyMapper, Long seconds);
+    Map<Object, Object> loadCache(BatchCacheOperation operation, List<Object> keyList, BatchCacheLoader loader);
+
+    /**
+     * 异步从redis中加载缓存，流程同 {@link #loadCache}，redis 读写基于 lettuce 异步命令，不占用调用线程
+     *
+     * @param operation 方法元数据
+     * @param keyList   key列表
+     * @param loader    异步加载未命中缓存的数据，异常通过返回的 future 传递
+     * @return 加载结果
+     */
+    CompletableFuture<Map<Object, Object>> loadCacheAsync(BatchCacheOperation operation, List<Object> keyList,
+                                                          AsyncBatchCacheLoader loader);
+
+    /**
+     * 批量删除缓存（redis 和本地缓存），一个 pipeline 中通过 UNLINK 删除
+     *
+     * @param operation 方法元数据（key前缀、存储布局）
+     * @param keys      key列表
+     */
+    void evictCache(BatchCacheOperation operation, Collection<?> keys);
+
+    /**
+     * 批量写入缓存（数据更新后），过期时间与加载后写回相同；直接写入 redis（不经过 write-behind 队列），各节点的本地缓存同时失效
+     *
+     * @param operation 方法元数据（key前缀、过期时间、序列化方式、存储布局）
+     * @param valueMap  key -> 缓存对象
+     */
+    void putCache(BatchCacheOperation operation, Map<?, ?> valueMap);
+
+    /**
+     * 清空一个缓存名称前缀下的全部批量缓存：版本号加一，之后生成的 key 带新版本号，不阻塞 redis
+     * <p>
+     * 本节点立即生效，其他节点在下一次读取版本号（batch-cache.generation.refresh-millis）后生效；旧版本的 key 在后台回收或等待过期
+     * </p>
+     *
+     * @param keyPrefix 缓存名称前缀 @BatchCache.value
+     * @return 新的版本号
+     */
+    long invalidateAll(String keyPrefix);
+
+    /**
+     * 创建单 key 请求合并器：窗口内的单 key 请求合并成一次 batchFunction 调用
+     * <p>
+     * batchFunction 一般为被 @BatchCache 标注的方法（需通过 spring 代理调用），合并器应创建一次后复用
+     * </p>
+     *
+     * @param batchFunction 批量查询方法
+     * @param <K>           key 类型
+     * @param <V>           value 类型
+     * @return 合并器
+     */
+    <K, V> BatchLoaderDispatcher<K, V> newDispatcher(Function<List<K>, Map<K, V>> batchFunction);
 }
@@ -1,20 +1,43 @@
 package com.example.cache.service;
 
-import com.alibaba.fastjson.JSONArray;
-import com.alibaba.fastjson.JSONObject;
+import com.example.cache.BatchCacheProperties;
 import com.example.cache.RedisMultiCache;
+import com.example.cache.bloom.BloomFilterRegistry;
+import com.example.cache.bloom.IdBloomFilter;
+import com.example.cache.local.HotKeyDetector;
+import com.example.cache.local.LocalBatchCache;
+import com.example.cache.metrics.BatchCacheMetrics;
+import com.example.cache.support.AsyncBatchCacheLoader;
+import com.example.cache.support.BatchCacheExecutors;
+import com.example.cache.support.BatchCacheGenerations;
+import com.example.cache.support.BatchCacheKeys;
+import com.example.cache.support.BatchCacheLoadException;
+import com.example.cache.support.BatchCacheLoader;
+import com.example.cache.support.BatchCacheOperation;
+import com.example.cache.support.BatchCacheWriter;
+import com.example.cache.support.BatchLoaderDispatcher;
+import com.example.cache.support.CacheEnvelope;
+import com.example.cache.support.LeaseReleaseListener;
+import com.example.cache.support.SingleFlight;
+import com.example.cache.utils.CollUtil;
 import lombok.AllArgsConstructor;
-import org.aspectj.lang.reflect.MethodSignature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.ObjectUtils;
 
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
  * 描述
@@ -22,106 +45,834 @@ import java.util.stream.Collectors;
  * @author zhuwei
  * @Date 2020/11/26 PM8:05
  */
+@Slf4j
 @Service
 @AllArgsConstructor
 public class BatchCacheClientImpl implements BatchCacheClient {
 
     private final RedisMultiCache redisMultiCache;
 
+    private final LocalBatchCache localBatchCache;
+
+    private final BatchCacheProperties properties;
+
+    private final BatchCacheExecutors executors;
+
+    private final BloomFilterRegistry bloomFilterRegistry;
+
+    /**
+     * 加载结果写回 redis（同步或异步）
+     */
+    private final BatchCacheWriter cacheWriter;
+
+    private final BatchCacheMetrics metrics;
+
+    /**
+     * 按缓存名称前缀维护的版本号，每次请求开始时切换到当前版本
+     */
+    private final BatchCacheGenerations generations;
+
+    /**
+     * 热点 key 识别，热点 key 在本地保留短期副本
+     */
+    private final HotKeyDetector hotKeyDetector;
+
+    /**
+     * 跨节点加载租约的释放通知
+     */
+    private final LeaseReleaseListener leaseReleaseListener;
+
+    /**
+     * 本 JVM 内合并对同一个 key 的并发加载
+     */
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 跨节点加载租约的持有者标识
+     */
+    private final String leaseToken = UUID.randomUUID().toString();
+
+    /**
+     * 正在后台提前刷新的 redis key，避免重复刷新
+     */
+    private final Set<String> refreshingKeys = ConcurrentHashMap.newKeySet();
+
     @Override
-    public Map<Object, Object> loadCache(String keyPrefix, List<Object> keyList, MethodSignature methodSignature,
-                                         Class voClass, String keyMapper, Long seconds) {
+    public Map<Object, Object> loadCache(BatchCacheOperation baseOperation, List<Object> keyList, BatchCacheLoader loader) {
+        BatchCacheOperation operation = generations.resolve(baseOperation);
+        metrics.recordRequest(operation.getKeyPrefix(), keyList.size());
+        LoadContext context = this.lookupLocal(operation, keyList);
+        if (context == null) {
+            metrics.recordLookup(operation.getKeyPrefix(), keyList.size(), 0);
+            return new HashMap<>();
+        }
+
         // 1 从redis中获取缓存
-        List<String> cacheKeyList = keyList.stream().map(key -> this.generatetKey(keyPrefix, key)).collect(Collectors.toList());
-        List<Object> cacheHitList = redisMultiCache.list(cacheKeyList);
+        List<Object> cacheHitList = Collections.emptyList();
+        if (!context.redisKeyList.isEmpty()) {
+            long start = System.nanoTime();
+            cacheHitList = redisMultiCache.list(context.redisKeyList, this.valueSerializer(operation), operation.getBucketLayout(),
+                operation.getBudgetMillis());
+            metrics.recordList(operation.getKeyPrefix(), System.nanoTime() - start);
+        }
 
         // 2 过滤出缓存不存在的keys
+        this.collectRemoteHits(operation, context, cacheHitList);
+        metrics.recordLookup(operation.getKeyPrefix(), keyList.size() - context.missKeyList.size(), context.missKeyList.size());
+
+        // 3 重新查询不存在缓存的keys，重新放回redis
+        if (!context.missKeyList.isEmpty()) {
+            if (properties.getSingleFlight().isEnabled()) {
+                context.cacheValueList.addAll(this.loadSingleFlight(operation, context.missKeyList, context.missCacheKeyList, loader));
+            } else {
+                context.cacheValueList.addAll(this.loadAndCache(operation, context.missKeyList, loader).values());
+            }
+        }
+
+        if (!context.refreshKeyList.isEmpty()) {
+            this.refreshAsync(operation, context.refreshKeyList, context.refreshCacheKeyList, loader);
+        }
+
+        // 4 List转Map
+        return this.convertListToMap(operation, context.cacheValueList);
+    }
+
+    @Override
+    public CompletableFuture<Map<Object, Object>> loadCacheAsync(BatchCacheOperation baseOperation, List<Object> keyList,
+                                                                 AsyncBatchCacheLoader loader) {
+        BatchCacheOperation operation = generations.resolve(baseOperation);
+        metrics.recordRequest(operation.getKeyPrefix(), keyList.size());
+        LoadContext context = this.lookupLocal(operation, keyList);
+        if (context == null) {
+            metrics.recordLookup(operation.getKeyPrefix(), keyList.size(), 0);
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+
+        // 1 从redis中获取缓存，2 过滤出缓存不存在的keys，3 加载并写回，4 List转Map
+        long start = System.nanoTime();
+        return redisMultiCache.listAsync(context.redisKeyList, this.valueSerializer(operation), operation.getBucketLayout())
+            .thenCompose(cacheHitList -> {
+                metrics.recordList(operation.getKeyPrefix(), System.nanoTime() - start);
+                this.collectRemoteHits(operation, context, cacheHitList);
+                metrics.recordLookup(operation.getKeyPrefix(), keyList.size() - context.missKeyList.size(), context.missKeyList.size());
+                if (context.missKeyList.isEmpty()) {
+                    return CompletableFuture.completedFuture(Collections.emptyList());
+                }
+                return properties.getSingleFlight().isEnabled()
+                    ? this.loadSingleFlightAsync(operation, context.missKeyList, context.missCacheKeyList, loader)
+                    : this.loadAndCacheAsync(operation, context.missKeyList, loader).thenApply(Map::values);
+            })
+            .thenApply(loadedValues -> {
+                context.cacheValueList.addAll(loadedValues);
+                if (!context.refreshKeyList.isEmpty()) {
+                    BatchCacheLoader refreshLoader = missKeyList -> this.loadValueForMissKeysAsync(loader, missKeyList).join();
+                    this.refreshAsync(operation, context.refreshKeyList, context.refreshCacheKeyList, refreshLoader);
+                }
+                return this.convertListToMap(operation, context.cacheValueList);
+            });
+    }
+
+    /**
+     * 布隆过滤器过滤，并从本地缓存获取
+     *
+     * @return 需要访问redis的key；布隆过滤器过滤后没有key时返回 null
+     */
+    private LoadContext lookupLocal(BatchCacheOperation operation, List<Object> keyList) {
+        // 布隆过滤器判断一定不存在的key，不访问缓存和原方法
+        IdBloomFilter bloomFilter = bloomFilterRegistry.get(operation.getKeyPrefix());
+        if (bloomFilter != null) {
+            keyList = this.filterAbsentKeys(bloomFilter, keyList);
+            if (keyList.isEmpty()) {
+                return null;
+            }
+        }
+
         int size = keyList.size();
-        List<Object> missKeyList = new ArrayList<>(size);
-        List<Object> cacheValueList = new ArrayList<>(size);
+        LoadContext context = new LoadContext(size);
+        boolean useLocal = operation.isLocalCacheEnabled();
+
+        // 只访问 redis 时由预先编码的前缀和 id 直接生成 byte[] key，不生成 String key，未命中的 key 再生成
+        if (!useLocal && !hotKeyDetector.isEnabled() && operation.getBucketLayout() == null && redisMultiCache.isRawKeySupported()) {
+            byte[][] rawKeys = new byte[size][];
+            for (int i = 0; i < size; i++) {
+                rawKeys[i] = BatchCacheKeys.rawKey(operation.getCacheKeyPrefixBytes(),
+                    Objects.requireNonNull(keyList.get(i), "generatetKey Parameters required not null"));
+            }
+            context.remoteKeyList = keyList;
+            context.redisKeyList = Arrays.asList(rawKeys);
+            return context;
+        }
+
+        List<String> cacheKeyList = new ArrayList<>(size);
+        for (Object key : keyList) {
+            cacheKeyList.add(this.generatetKey(operation, key));
+        }
+
+        // 0 优先从本地缓存获取，剩余的key再访问redis；未开启本地缓存时只有 hotKeyLocal 的缓存读热点 key 的本地副本
+        boolean hotKeyLocal = !useLocal && operation.isHotKeyLocal();
+        if (!useLocal && !hotKeyDetector.isEnabled()) {
+            context.remoteKeyList = keyList;
+            context.cacheKeyList = cacheKeyList;
+            context.redisKeyList = cacheKeyList;
+            return context;
+        }
+        context.remoteKeyList = new ArrayList<>(size);
+        context.cacheKeyList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            boolean hot = hotKeyDetector.record(cacheKeyList.get(i));
+            Object localValue = useLocal || (hotKeyLocal && hot) ? localBatchCache.get(cacheKeyList.get(i)) : null;
+            if (localValue instanceof NullValue) {
+                continue;
+            }
+            if (localValue != null) {
+                context.cacheValueList.add(localValue);
+            } else {
+                context.remoteKeyList.add(keyList.get(i));
+                context.cacheKeyList.add(cacheKeyList.get(i));
+            }
+        }
+        context.redisKeyList = context.cacheKeyList;
+        return context;
+    }
+
+    /**
+     * 处理redis的读取结果：命中的缓存对象写入本地缓存，未命中的key等待加载，即将过期的key等待提前刷新
+     * <p>
+     * 使用 byte[] key 读取时（cacheKeyList 为 null）不使用本地缓存，只为未命中和需要提前刷新的 key 生成 String key
+     * </p>
+     */
+    private void collectRemoteHits(BatchCacheOperation operation, LoadContext context, List<Object> cacheHitList) {
+        List<Object> remoteKeyList = context.remoteKeyList;
+        List<String> cacheKeyList = context.cacheKeyList;
 
         if (CollectionUtils.isEmpty(cacheHitList)) {
-            missKeyList.addAll(keyList);
+            context.missKeyList.addAll(remoteKeyList);
+            for (int i = 0; i < remoteKeyList.size(); i++) {
+                context.missCacheKeyList.add(this.cacheKey(operation, context, i));
+            }
+            return;
+        }
+        int cacheHitSize = cacheHitList.size();
+        for (int i = 0; i < cacheHitSize; i++) {
+            Object o = cacheHitList.get(i);
+
+            // 如果查询的缓存为空，则添加key到missKeyList中
+            if (ObjectUtils.isEmpty(o)) {
+                context.missKeyList.add(remoteKeyList.get(i));
+                context.missCacheKeyList.add(this.cacheKey(operation, context, i));
+            } else if (o instanceof NullValue) {
+                if (cacheKeyList == null) {
+                    continue;
+                }
+                // 空值标记：数据不存在，不再调用原方法
+                long localSeconds = this.localSeconds(operation, cacheKeyList.get(i));
+                if (localSeconds > 0) {
+                    localBatchCache.put(cacheKeyList.get(i), o, Math.min(localSeconds, operation.getNullSeconds()));
+                }
+            } else {
+                // 提前刷新：即将过期的缓存仍然返回，在后台重新加载
+                if (o instanceof CacheEnvelope) {
+                    CacheEnvelope envelope = (CacheEnvelope) o;
+                    if (operation.isRefreshAhead() && envelope.shouldRefresh(operation.getRefreshBeta(), System.currentTimeMillis())) {
+                        context.refreshKeyList.add(remoteKeyList.get(i));
+                        context.refreshCacheKeyList.add(this.cacheKey(operation, context, i));
+                    }
+                    o = envelope.getValue();
+                }
+
+                // 缓存对象已由 valueSerializer 按声明类型解码
+                context.cacheValueList.add(o);
+                if (cacheKeyList != null) {
+                    localBatchCache.put(cacheKeyList.get(i), o, this.localSeconds(operation, cacheKeyList.get(i)));
+                }
+            }
+        }
+    }
+
+    /**
+     * 第 i 个访问 redis 的 key 的 String key，使用 byte[] key 读取时按需生成
+     */
+    private String cacheKey(BatchCacheOperation operation, LoadContext context, int i) {
+        return context.cacheKeyList != null
+            ? context.cacheKeyList.get(i)
+            : this.generatetKey(operation, context.remoteKeyList.get(i));
+    }
+
+    /**
+     * 写入本地缓存的过期时间：开启本地缓存时为 localSeconds，否则 hotKeyLocal 的缓存中热点 key 为 hot-key.local-seconds，
+     * 其余为 0（不写入）
+     */
+    private long localSeconds(BatchCacheOperation operation, String cacheKey) {
+        if (operation.isLocalCacheEnabled()) {
+            return operation.getLocalSeconds();
+        }
+        return operation.isHotKeyLocal() && hotKeyDetector.isHot(cacheKey) ? hotKeyDetector.getLocalSeconds() : 0L;
+    }
+
+    @Override
+    public void evictCache(BatchCacheOperation operation, Collection<?> keys) {
+        if (CollectionUtils.isEmpty(keys)) {
+            return;
+        }
+        BatchCacheOperation versioned = generations.resolve(operation);
+        List<String> cacheKeyList = new ArrayList<>(keys.size());
+        keys.forEach(key -> cacheKeyList.add(this.generatetKey(versioned, key)));
+        // 先移除 write-behind 队列中的回填，否则删除之后旧数据会被写回
+        cacheWriter.discard(cacheKeyList);
+        redisMultiCache.evictBatch(cacheKeyList, versioned.getBucketLayout());
+    }
+
+    @Override
+    public void putCache(BatchCacheOperation operation, Map<?, ?> valueMap) {
+        if (CollectionUtils.isEmpty(valueMap)) {
+            return;
+        }
+        BatchCacheOperation versioned = generations.resolve(operation);
+        Map<String, Object> cacheMap = new HashMap<>((int) (valueMap.size() / 0.75f) + 1);
+        List<Object> idList = new ArrayList<>(valueMap.size());
+        valueMap.forEach((key, value) -> {
+            if (value != null) {
+                cacheMap.put(this.generatetKey(versioned, key), value);
+                idList.add(key);
+            }
+        });
+        if (cacheMap.isEmpty()) {
+            return;
+        }
+        // 新增的 id 先写入布隆过滤器，否则之后的读取会被过滤器拦截
+        this.putBloom(operation, idList);
+
+        // 数据更新：不经过 write-behind 队列，直接写入 redis 并通知各节点的本地缓存失效；队列中的旧回填先移除，避免覆盖新值
+        cacheWriter.discard(cacheMap.keySet());
+        long start = System.nanoTime();
+        Map<String, Long> secondsMap = new HashMap<>((int) (cacheMap.size() / 0.75f) + 1);
+        Map<String, Object> writeMap = this.prepareWrite(versioned, cacheMap, 0L, secondsMap);
+        redisMultiCache.putBatch(writeMap, secondsMap::get, this.valueSerializer(versioned), versioned.getBucketLayout());
+        metrics.recordPut(versioned.getKeyPrefix(), System.nanoTime() - start);
+    }
+
+    @Override
+    public long invalidateAll(String keyPrefix) {
+        return generations.advance(keyPrefix);
+    }
+
+    @Override
+    public <K, V> BatchLoaderDispatcher<K, V> newDispatcher(Function<List<K>, Map<K, V>> batchFunction) {
+        BatchCacheProperties.Dispatcher config = properties.getDispatcher();
+        return new BatchLoaderDispatcher<>(batchFunction, config.getWindowMillis(), config.getMaxBatchSize(),
+            executors.getScheduler(), executors.getOffload());
+    }
+
+    /**
+     * 合并并发加载：正在被其他线程加载的key等待其结果，其余key自己加载
+     *
+     * @return 加载到的缓存对象
+     */
+    private Collection<Object> loadSingleFlight(BatchCacheOperation operation, List<Object> missKeyList,
+                                                List<String> missCacheKeyList, BatchCacheLoader loader) {
+        List<Object> values = new ArrayList<>(missKeyList.size());
+        SingleFlight.Flight flight = singleFlight.begin(missCacheKeyList);
+        try {
+            List<Integer> ownedIndexes = flight.getOwnedIndexes();
+            if (!ownedIndexes.isEmpty()) {
+                List<Object> ownedKeyList = new ArrayList<>(ownedIndexes.size());
+                ownedIndexes.forEach(i -> ownedKeyList.add(missKeyList.get(i)));
+                Map<String, Object> loadedMap = properties.getSingleFlight().isDistributed()
+                    ? this.loadWithLease(operation, ownedKeyList, loader)
+                    : this.loadAndCache(operation, ownedKeyList, loader);
+                flight.complete(loadedMap);
+                values.addAll(loadedMap.values());
+            }
+        } finally {
+            flight.finish();
+        }
+
+        // 等待其他线程的加载结果，其他线程加载失败的key自己重新加载
+        List<Object> retryKeyList = new ArrayList<>(0);
+        List<CompletableFuture<Object>> waitingFutures = flight.getWaitingFutures();
+        for (int i = 0; i < waitingFutures.size(); i++) {
+            try {
+                Object value = waitingFutures.get(i).join();
+                if (value != null) {
+                    values.add(value);
+                }
+            } catch (CompletionException | CancellationException e) {
+                retryKeyList.add(missKeyList.get(flight.getWaitingIndexes().get(i)));
+            }
+        }
+        if (!retryKeyList.isEmpty()) {
+            values.addAll(this.loadAndCache(operation, retryKeyList, loader).values());
+        }
+        return values;
+    }
+
+    /**
+     * 通过 redis 租约合并跨节点的加载：拿到租约的key自己加载，加载完成后发布租约释放通知；
+     * 其他节点正在加载的key等待释放通知后读取redis，未收到通知时按加倍的间隔读取，
+     * 超过租约时长（设置了 budgetMillis 时取两者较小值）仍未写入的，自己加载
+     *
+     * @return redis key -> 缓存对象
+     */
+    private Map<String, Object> loadWithLease(BatchCacheOperation operation, List<Object> missKeyList, BatchCacheLoader loader) {
+        BatchCacheProperties.SingleFlight config = properties.getSingleFlight();
+        List<String> missCacheKeyList = new ArrayList<>(missKeyList.size());
+        missKeyList.forEach(key -> missCacheKeyList.add(this.generatetKey(operation, key)));
+        List<Boolean> leased = redisMultiCache.tryLease(missCacheKeyList, leaseToken, config.getLeaseMillis());
+
+        List<Object> leasedKeyList = new ArrayList<>(missKeyList.size());
+        List<String> leasedCacheKeyList = new ArrayList<>(missKeyList.size());
+        List<Object> contendedKeyList = new ArrayList<>(0);
+        List<String> contendedCacheKeyList = new ArrayList<>(0);
+        for (int i = 0; i < missKeyList.size(); i++) {
+            if (leased.get(i)) {
+                leasedKeyList.add(missKeyList.get(i));
+                leasedCacheKeyList.add(missCacheKeyList.get(i));
+            } else {
+                contendedKeyList.add(missKeyList.get(i));
+                contendedCacheKeyList.add(missCacheKeyList.get(i));
+            }
+        }
+
+        Map<String, Object> loadedMap = new HashMap<>((int) (missKeyList.size() / 0.75f) + 1);
+        if (!leasedKeyList.isEmpty()) {
+            try {
+                loadedMap.putAll(this.loadAndCache(operation, leasedKeyList, loader));
+            } finally {
+                redisMultiCache.releaseLease(leasedCacheKeyList, leaseToken);
+                leaseReleaseListener.publish(leasedCacheKeyList);
+            }
+        }
+
+        // 其他节点正在加载，等待租约释放通知或退避间隔后读取 redis，直到写入或超过等待上限
+        long waitMillis = config.getLeaseMillis();
+        if (operation.getBudgetMillis() > 0) {
+            waitMillis = Math.min(waitMillis, operation.getBudgetMillis());
+        }
+        long deadline = System.currentTimeMillis() + waitMillis;
+        long backoffMillis = Math.max(1L, config.getPollMillis());
+        while (!contendedKeyList.isEmpty()) {
+            long remainingMillis = deadline - System.currentTimeMillis();
+            if (remainingMillis <= 0) {
+                break;
+            }
+            try (LeaseReleaseListener.Waiter waiter = leaseReleaseListener.register(contendedCacheKeyList)) {
+                waiter.await(Math.min(backoffMillis, remainingMillis));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            backoffMillis <<= 1;
+            List<Object> cacheHitList = redisMultiCache.list(contendedCacheKeyList, this.valueSerializer(operation), operation.getBucketLayout());
+            List<Object> pendingKeyList = new ArrayList<>(contendedKeyList.size());
+            List<String> pendingCacheKeyList = new ArrayList<>(contendedKeyList.size());
+            for (int i = 0; i < contendedCacheKeyList.size(); i++) {
+                Object value = i < cacheHitList.size() ? cacheHitList.get(i) : null;
+                if (value instanceof CacheEnvelope) {
+                    value = ((CacheEnvelope) value).getValue();
+                }
+                if (ObjectUtils.isEmpty(value)) {
+                    pendingKeyList.add(contendedKeyList.get(i));
+                    pendingCacheKeyList.add(contendedCacheKeyList.get(i));
+                } else if (!(value instanceof NullValue)) {
+                    loadedMap.put(contendedCacheKeyList.get(i), value);
+                    if (operation.isLocalCacheEnabled()) {
+                        localBatchCache.put(contendedCacheKeyList.get(i), value, operation.getLocalSeconds());
+                    }
+                }
+            }
+            contendedKeyList = pendingKeyList;
+            contendedCacheKeyList = pendingCacheKeyList;
+        }
+        if (!contendedKeyList.isEmpty()) {
+            loadedMap.putAll(this.loadAndCache(operation, contendedKeyList, loader));
+        }
+        return loadedMap;
+    }
+
+    /**
+     * 调用原方法加载，并写回 redis 和本地缓存
+     * <p>
+     * 未命中的 key 超过 loaderBatchSize 时拆分成多个分区，调用线程和后台加载线程共同领取分区，
+     * 最多 loaderParallelism 个分区同时加载，每个分区加载完成后立即写回；任一分区失败时不再领取新的分区，异常抛给调用方
+     * </p>
+     *
+     * @return redis key -> 缓存对象
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> loadAndCache(BatchCacheOperation operation, List<Object> missKeyList, BatchCacheLoader loader) {
+        List<List<Object>> partitions = CollUtil.partition(missKeyList, operation.getLoaderBatchSize());
+        if (partitions.size() == 1) {
+            return this.loadAndCachePartition(operation, missKeyList, loader);
+        }
+
+        int size = partitions.size();
+        Map<String, Object>[] results = new Map[size];
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(size);
+        Runnable worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < size) {
+                try {
+                    if (failure.get() == null) {
+                        results[i] = this.loadAndCachePartition(operation, partitions.get(i), loader);
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        // 后台线程未及时执行时由调用线程加载全部分区，只等待已被领取的分区，加载线程池满载时不会互相等待
+        for (int i = 1; i < Math.min(operation.getLoaderParallelism(), size); i++) {
+            executors.getLoader().execute(worker);
+        }
+        worker.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BatchCacheLoadException(e);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        Map<String, Object> loadedMap = new HashMap<>((int) (missKeyList.size() / 0.75f) + 1);
+        for (Map<String, Object> result : results) {
+            loadedMap.putAll(result);
+        }
+        return loadedMap;
+    }
+
+    /**
+     * 调用一次原方法加载一个分区，并写回 redis 和本地缓存
+     *
+     * @return redis key -> 缓存对象
+     */
+    private Map<String, Object> loadAndCachePartition(BatchCacheOperation operation, List<Object> missKeyList,
+                                                      BatchCacheLoader loader) {
+        long start = System.nanoTime();
+        Map<Object, Object> missValueMap;
+        try {
+            missValueMap = this.loadValueForMissKeys(loader, missKeyList);
+        } catch (RuntimeException e) {
+            metrics.recordLoad(operation.getKeyPrefix(), System.nanoTime() - start, false);
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        metrics.recordLoad(operation.getKeyPrefix(), elapsed, true);
+        this.putBloom(operation, missValueMap.keySet());
+        long delta = TimeUnit.NANOSECONDS.toMillis(elapsed);
+        Map<String, Object> missCacheMap = this.convertKeyForResult(operation, missValueMap);
+        this.writeCache(operation, missCacheMap, delta);
+        this.putLocal(operation, missCacheMap);
+
+        // 原方法未返回的key写入空值标记
+        List<String> absentCacheKeyList = this.absentCacheKeys(operation, missKeyList, missCacheMap);
+        if (!absentCacheKeyList.isEmpty()) {
+            cacheWriter.writeNull(absentCacheKeyList, operation.getNullSeconds(), this.valueSerializer(operation),
+                operation.getBucketLayout());
+            this.putLocalNull(operation, absentCacheKeyList);
+        }
+        return missCacheMap;
+    }
+
+    /**
+     * 异步调用原方法加载，通过 lettuce 异步命令写回 redis（不经过 write-behind 队列），写入完成后写入本地缓存
+     * <p>
+     * 未命中的 key 超过 loaderBatchSize 时拆分成多个分区，分成 loaderParallelism 条链，链内的分区依次加载，各链并发
+     * </p>
+     *
+     * @return redis key -> 缓存对象
+     */
+    private CompletableFuture<Map<String, Object>> loadAndCacheAsync(BatchCacheOperation operation, List<Object> missKeyList,
+                                                                     AsyncBatchCacheLoader loader) {
+        List<List<Object>> partitions = CollUtil.partition(missKeyList, operation.getLoaderBatchSize());
+        if (partitions.size() == 1) {
+            return this.loadAndCachePartitionAsync(operation, missKeyList, loader);
+        }
+
+        Map<String, Object> loadedMap = new HashMap<>((int) (missKeyList.size() / 0.75f) + 1);
+        int parallelism = Math.min(operation.getLoaderParallelism(), partitions.size());
+        CompletableFuture<?>[] chains = new CompletableFuture[parallelism];
+        for (int lane = 0; lane < parallelism; lane++) {
+            CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+            for (int i = lane; i < partitions.size(); i += parallelism) {
+                List<Object> partition = partitions.get(i);
+                chain = chain.thenCompose(v -> this.loadAndCachePartitionAsync(operation, partition, loader))
+                    .thenAccept(result -> {
+                        synchronized (loadedMap) {
+                            loadedMap.putAll(result);
+                        }
+                    });
+            }
+            chains[lane] = chain;
+        }
+        return CompletableFuture.allOf(chains).thenApply(v -> loadedMap);
+    }
+
+    /**
+     * 异步调用一次原方法加载一个分区，写回 redis 后写入本地缓存
+     *
+     * @return redis key -> 缓存对象
+     */
+    private CompletableFuture<Map<String, Object>> loadAndCachePartitionAsync(BatchCacheOperation operation,
+                                                                              List<Object> missKeyList,
+                                                                              AsyncBatchCacheLoader loader) {
+        long start = System.nanoTime();
+        return this.loadValueForMissKeysAsync(loader, missKeyList).whenComplete((missValueMap, e) ->
+            metrics.recordLoad(operation.getKeyPrefix(), System.nanoTime() - start, e == null)
+        ).thenCompose(missValueMap -> {
+            this.putBloom(operation, missValueMap.keySet());
+            long delta = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Map<String, Object> missCacheMap = this.convertKeyForResult(operation, missValueMap);
+            Map<String, Long> secondsMap = new HashMap<>((int) (missCacheMap.size() / 0.75f) + 1);
+            Map<String, Object> writeMap = this.prepareWrite(operation, missCacheMap, delta, secondsMap);
+            long writeStart = System.nanoTime();
+            CompletableFuture<Void> write = redisMultiCache.fillBatchAsync(writeMap, secondsMap::get, this.valueSerializer(operation),
+                operation.getBucketLayout())
+                .whenComplete((v, e) -> metrics.recordPut(operation.getKeyPrefix(), System.nanoTime() - writeStart));
+
+            // 原方法未返回的key写入空值标记
+            List<String> absentCacheKeyList = this.absentCacheKeys(operation, missKeyList, missCacheMap);
+            if (!absentCacheKeyList.isEmpty()) {
+                write = CompletableFuture.allOf(write,
+                    redisMultiCache.putNullBatchAsync(absentCacheKeyList, operation.getNullSeconds(), this.valueSerializer(operation),
+                        operation.getBucketLayout()));
+            }
+            return write.thenApply(v -> {
+                this.putLocal(operation, missCacheMap);
+                this.putLocalNull(operation, absentCacheKeyList);
+                return missCacheMap;
+            });
+        });
+    }
+
+    /**
+     * 异步合并并发加载：正在被其他线程加载的key等待其结果，其余key自己加载；不支持跨节点租约
+     *
+     * @return 加载到的缓存对象
+     */
+    private CompletableFuture<Collection<Object>> loadSingleFlightAsync(BatchCacheOperation operation, List<Object> missKeyList,
+                                                                        List<String> missCacheKeyList, AsyncBatchCacheLoader loader) {
+        SingleFlight.Flight flight = singleFlight.begin(missCacheKeyList);
+        List<Integer> ownedIndexes = flight.getOwnedIndexes();
+        CompletableFuture<Map<String, Object>> owned;
+        if (ownedIndexes.isEmpty()) {
+            flight.finish();
+            owned = CompletableFuture.completedFuture(Collections.emptyMap());
         } else {
-            int cacheHitSize = cacheHitList.size();
-            for (int i = 0; i < cacheHitSize; i++) {
-                Object o = cacheHitList.get(i);
-
-                // 如果查询的缓存为空，则添加key到missKeyList中
-                if (ObjectUtils.isEmpty(o)) {
-                    missKeyList.add(keyList.get(i));
-                } else {
-                    // 处理redis中存储对象 JsonObject 或 JsonArray
-                    if (o instanceof JSONArray) {
-                        cacheValueList.addAll(((JSONArray) o).toJavaList(voClass));
-                    } else if (o instanceof JSONObject) {
-                        cacheValueList.add(JSONObject.toJavaObject((JSONObject) o, voClass));
-                    } else {
-                        cacheValueList.add(o);
+            List<Object> ownedKeyList = new ArrayList<>(ownedIndexes.size());
+            ownedIndexes.forEach(i -> ownedKeyList.add(missKeyList.get(i)));
+            owned = this.loadAndCacheAsync(operation, ownedKeyList, loader).whenComplete((loadedMap, e) -> {
+                if (loadedMap != null) {
+                    flight.complete(loadedMap);
+                }
+                flight.finish();
+            });
+        }
+
+        // 等待其他线程的加载结果，其他线程加载失败的key自己重新加载
+        List<CompletableFuture<Object>> waitingFutures = flight.getWaitingFutures();
+        CompletableFuture<List<Object>> waited = CompletableFuture
+            .allOf(waitingFutures.stream().map(future -> future.handle((v, e) -> null)).toArray(CompletableFuture[]::new))
+            .thenCompose(v -> {
+                List<Object> values = new ArrayList<>(waitingFutures.size());
+                List<Object> retryKeyList = new ArrayList<>(0);
+                for (int i = 0; i < waitingFutures.size(); i++) {
+                    CompletableFuture<Object> future = waitingFutures.get(i);
+                    if (future.isCompletedExceptionally()) {
+                        retryKeyList.add(missKeyList.get(flight.getWaitingIndexes().get(i)));
+                    } else if (future.join() != null) {
+                        values.add(future.join());
                     }
                 }
+                if (retryKeyList.isEmpty()) {
+                    return CompletableFuture.completedFuture(values);
+                }
+                return this.loadAndCacheAsync(operation, retryKeyList, loader).thenApply(retryMap -> {
+                    values.addAll(retryMap.values());
+                    return values;
+                });
+            });
+
+        return owned.thenCombine(waited, (ownedMap, waitedValues) -> {
+            List<Object> values = new ArrayList<>(ownedMap.size() + waitedValues.size());
+            values.addAll(ownedMap.values());
+            values.addAll(waitedValues);
+            return values;
+        });
+    }
+
+    /**
+     * 加载结果回填 redis：按 ttlJitter 打散每个 key 的过期时间，开启提前刷新时附带过期时间和加载耗时
+     *
+     * @param delta 本次加载耗时（毫秒）
+     */
+    private void writeCache(BatchCacheOperation operation, Map<String, Object> cacheMap, long delta) {
+        long start = System.nanoTime();
+        if (operation.getTtlJitter() <= 0 && !operation.isRefreshAhead()) {
+            cacheWriter.write(cacheMap, key -> operation.getSeconds(), this.valueSerializer(operation), operation.getBucketLayout());
+        } else {
+            Map<String, Long> secondsMap = new HashMap<>((int) (cacheMap.size() / 0.75f) + 1);
+            Map<String, Object> writeMap = this.prepareWrite(operation, cacheMap, delta, secondsMap);
+            cacheWriter.write(writeMap, secondsMap::get, this.valueSerializer(operation), operation.getBucketLayout());
+        }
+        metrics.recordPut(operation.getKeyPrefix(), System.nanoTime() - start);
+    }
+
+    /**
+     * 读写 redis 使用的 value 序列化方式，开启指标时包装成记录编解码耗时的序列化方式
+     */
+    private RedisSerializer<?> valueSerializer(BatchCacheOperation operation) {
+        if (!metrics.isEnabled()) {
+            return operation.getValueSerializer();
+        }
+        RedisSerializer<?> serializer = operation.getValueSerializer();
+        return metrics.timed(operation.getKeyPrefix(), serializer != null ? serializer : redisMultiCache.getValueSerializer());
+    }
+
+    /**
+     * 生成每个 key 的过期时间，开启提前刷新时包装成 CacheEnvelope
+     *
+     * @param secondsMap 输出：redis key -> 过期时间（秒）
+     * @return 实际写入 redis 的数据
+     */
+    private Map<String, Object> prepareWrite(BatchCacheOperation operation, Map<String, Object> cacheMap, long delta,
+                                             Map<String, Long> secondsMap) {
+        Map<String, Object> writeMap = operation.isRefreshAhead() ? new HashMap<>((int) (cacheMap.size() / 0.75f) + 1) : cacheMap;
+        long now = System.currentTimeMillis();
+        cacheMap.forEach((key, value) -> {
+            long seconds = operation.nextSeconds();
+            secondsMap.put(key, seconds);
+            if (operation.isRefreshAhead()) {
+                writeMap.put(key, new CacheEnvelope(value, now + seconds * 1000, delta));
+            }
+        });
+        return writeMap;
+    }
+
+    /**
+     * 原方法未返回、需要写入空值标记的key
+     */
+    private List<String> absentCacheKeys(BatchCacheOperation operation, List<Object> missKeyList, Map<String, Object> missCacheMap) {
+        if (!operation.isNullCacheEnabled() || missCacheMap.size() >= missKeyList.size()) {
+            return Collections.emptyList();
+        }
+        List<String> absentCacheKeyList = new ArrayList<>(missKeyList.size() - missCacheMap.size());
+        for (Object key : missKeyList) {
+            String cacheKey = this.generatetKey(operation, key);
+            if (!missCacheMap.containsKey(cacheKey)) {
+                absentCacheKeyList.add(cacheKey);
             }
         }
+        return absentCacheKeyList;
+    }
 
-        // 3 重新查询不存在缓存的keys，重新放回redis
-        if (!CollectionUtils.isEmpty(missKeyList)) {
-            Map missValueMap = this.loadValueForMissKeys(voClass, methodSignature, missKeyList);
-            redisMultiCache.putBatch(this.convertKeyForResult(keyPrefix, missValueMap), seconds);
-            cacheValueList.addAll(missValueMap.values());
+    private void putLocal(BatchCacheOperation operation, Map<String, Object> cacheMap) {
+        if (operation.isLocalCacheEnabled()) {
+            cacheMap.forEach((key, value) -> localBatchCache.put(key, value, operation.getLocalSeconds()));
         }
+    }
 
-        // 4 List转Map
-        return this.convertListToMap(keyMapper, cacheValueList);
+    private void putLocalNull(BatchCacheOperation operation, List<String> absentCacheKeyList) {
+        if (operation.isLocalCacheEnabled() && !absentCacheKeyList.isEmpty()) {
+            long nullLocalSeconds = Math.min(operation.getLocalSeconds(), operation.getNullSeconds());
+            absentCacheKeyList.forEach(key -> localBatchCache.put(key, NullValue.INSTANCE, nullLocalSeconds));
+        }
+    }
+
+    /**
+     * 在后台重新加载即将过期的key，当前请求不等待；已经在刷新的key跳过
+     */
+    private void refreshAsync(BatchCacheOperation operation, List<Object> keyList, List<String> cacheKeyList, BatchCacheLoader loader) {
+        List<Object> refreshKeyList = new ArrayList<>(keyList.size());
+        List<String> refreshCacheKeyList = new ArrayList<>(keyList.size());
+        for (int i = 0; i < keyList.size(); i++) {
+            if (refreshingKeys.add(cacheKeyList.get(i))) {
+                refreshKeyList.add(keyList.get(i));
+                refreshCacheKeyList.add(cacheKeyList.get(i));
+            }
+        }
+        if (refreshKeyList.isEmpty()) {
+            return;
+        }
+        executors.getLoader().execute(() -> {
+            try {
+                this.loadAndCache(operation, refreshKeyList, loader);
+            } catch (Exception e) {
+                log.error("BatchCacheClient 提前刷新异常", e);
+            } finally {
+                refreshingKeys.removeAll(refreshCacheKeyList);
+            }
+        });
+    }
+
+    /**
+     * 过滤掉布隆过滤器判断一定不存在的key
+     *
+     * @return 可能存在的key
+     */
+    private List<Object> filterAbsentKeys(IdBloomFilter bloomFilter, List<Object> keyList) {
+        List<Boolean> mightContain = bloomFilter.mightContainAll(keyList);
+        List<Object> presentKeyList = new ArrayList<>(keyList.size());
+        for (int i = 0; i < keyList.size(); i++) {
+            if (mightContain.get(i)) {
+                presentKeyList.add(keyList.get(i));
+            }
+        }
+        return presentKeyList;
+    }
+
+    /**
+     * 原方法加载到的、@BatchCachePut 写入的 id 同步写入该前缀的布隆过滤器，保持过滤器与数据源一致
+     */
+    private void putBloom(BatchCacheOperation operation, Collection<?> ids) {
+        IdBloomFilter bloomFilter = bloomFilterRegistry.get(operation.getKeyPrefix());
+        if (bloomFilter != null && !ids.isEmpty()) {
+            bloomFilter.putAll(ids);
+        }
     }
 
     /**
      * 转换缓存成Map形式
      *
-     * @param keyMapper
+     * @param operation
      * @param cacheValueList
      * @return
      */
-    private Map<Object, Object> convertListToMap(String keyMapper, List<Object> cacheValueList) {
+    Map<Object, Object> convertListToMap(BatchCacheOperation operation, List<Object> cacheValueList) {
         if (cacheValueList == null || cacheValueList.size() == 0) {
             return new HashMap<>();
         }
 
-        Class targetClass = cacheValueList.get(0).getClass();
-        return cacheValueList
-            .stream()
-            .collect(Collectors.toMap(new Function<Object, Object>() {
-                @Override
-                public Object apply(Object v) {
-                    try {
-                        Field[] fields = targetClass.getDeclaredFields();
-                        for (Field field : fields) {
-                            if (field.getName().equals(keyMapper)) {
-
-                                PropertyDescriptor pd = new PropertyDescriptor(field.getName(), targetClass);
-                                Method getMethod = pd.getReadMethod();
-                                return getMethod.invoke(v);
-                            }
-                        }
-                    } catch (Exception e) {
-
-                    }
-                    return null;
-                }
-            }, Function.identity()));
-
+        Map<Object, Object> resultMap = new HashMap<>((int) (cacheValueList.size() / 0.75f) + 1);
+        Class<?> targetClass = null;
+        Function<Object, Object> keyExtractor = null;
+        for (Object value : cacheValueList) {
+            // key提取器按类型缓存，同类型的元素只取一次
+            if (value.getClass() != targetClass) {
+                targetClass = value.getClass();
+                keyExtractor = operation.keyExtractorFor(targetClass);
+            }
+            resultMap.put(keyExtractor.apply(value), value);
+        }
+        return resultMap;
     }
 
     /**
      * 转换map的key，成rediskey
      *
-     * @param keyPrefix
+     * @param operation
      * @param resultMap
      * @return
      */
-    private Map<String, Object> convertKeyForResult(String keyPrefix, Map<Object, Object> resultMap) {
-        Map<String, Object> newResultMap = new HashMap<>();
+    private Map<String, Object> convertKeyForResult(BatchCacheOperation operation, Map<Object, Object> resultMap) {
+        Map<String, Object> newResultMap = new HashMap<>((int) (resultMap.size() / 0.75f) + 1);
         resultMap.forEach((key, value) -> {
-            newResultMap.put(this.generatetKey(keyPrefix, key), value);
+            newResultMap.put(this.generatetKey(operation, key), value);
         });
         return newResultMap;
     }
@@ -129,34 +880,86 @@ public class BatchCacheClientImpl implements BatchCacheClient {
     /**
      * 生成key
      *
-     * @param keyPrefix key前缀
+     * @param operation 方法元数据，提供拼接好分隔符的key前缀
      * @param param
      * @return
      */
-    private String generatetKey(String keyPrefix, Object param) {
+    String generatetKey(BatchCacheOperation operation, Object param) {
         Objects.requireNonNull(param, "generatetKey Parameters required not null");
-        return keyPrefix + ":" + param.toString();
+        return BatchCacheKeys.key(operation.getCacheKeyPrefix(), param);
     }
 
     /**
      * 调用原方法加载没有缓存的keyList
      *
-     * @param tartgetClass
+     * @param loader
      * @param missKeyList
-     * @return
+     * @return 原方法返回 null 时返回空Map
+     */
+    private Map<Object, Object> loadValueForMissKeys(BatchCacheLoader loader, List<Object> missKeyList) {
+        Map<Object, Object> missValueMap = loader.load(missKeyList);
+        return missValueMap == null ? Collections.emptyMap() : missValueMap;
+    }
+
+    /**
+     * 异步调用原方法加载没有缓存的keyList
+     *
+     * @return 原方法返回 null 时为空Map，原方法抛出的异常通过 future 传递
      */
-    private Map<Object, Object> loadValueForMissKeys(Class tartgetClass, MethodSignature methodSignature, List<Object> missKeyList) {
+    private CompletableFuture<Map<Object, Object>> loadValueForMissKeysAsync(AsyncBatchCacheLoader loader, List<Object> missKeyList) {
+        CompletableFuture<Map<Object, Object>> future;
         try {
-            Method abstructMethod = methodSignature.getMethod();
-            Method targetMethod = tartgetClass.getMethod(abstructMethod.getName(), abstructMethod.getParameterTypes());
-            Object object = targetMethod.invoke(tartgetClass.newInstance(), missKeyList);
-            if (ObjectUtils.isEmpty(object)) {
-                // TODO: 2020-10-28
-            }
-            return (Map<Object, Object>) object;
-        } catch (Throwable throwable) {
-            throwable.printStackTrace();
+            future = loader.load(missKeyList);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        if (future == null) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+        return future.thenApply(missValueMap -> missValueMap == null ? Collections.emptyMap() : missValueMap);
+    }
+
+    /**
+     * 一次加载过程中的中间结果
+     */
+    private static class LoadContext {
+
+        /**
+         * 已获取到的缓存对象（本地缓存、redis、加载结果）
+         */
+        private final List<Object> cacheValueList;
+
+        /**
+         * 需要访问redis的key和对应的redis key；只访问 redis 时 cacheKeyList 为 null，redisKeyList 为编码后的 byte[] key
+         */
+        private List<Object> remoteKeyList;
+
+        private List<String> cacheKeyList;
+
+        /**
+         * 传给 RedisMultiCache 读取的 key，与 remoteKeyList 一一对应
+         */
+        private List<?> redisKeyList;
+
+        /**
+         * redis未命中、需要加载的key
+         */
+        private final List<Object> missKeyList;
+
+        private final List<String> missCacheKeyList;
+
+        /**
+         * 需要提前刷新的key
+         */
+        private final List<Object> refreshKeyList = new ArrayList<>(0);
+
+        private final List<String> refreshCacheKeyList = new ArrayList<>(0);
+
+        LoadContext(int size) {
+            this.cacheValueList = new ArrayList<>(size);
+            this.missKeyList = new ArrayList<>(size);
+            this.missCacheKeyList = new ArrayList<>(size);
         }
-        return null;
     }
 }
@@ -1,13 +1,21 @@
 package com.example.cache.service;
 
 import com.example.cache.annotation.BatchCache;
+import com.example.cache.annotation.BatchCacheEvict;
+import com.example.cache.annotation.BatchCachePut;
+import com.example.cache.bloom.BloomFilterRegistry;
+import com.example.cache.codec.CborBatchCacheCodec;
 import com.example.cache.entity.User;
+import lombok.AllArgsConstructor;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 描述
@@ -16,8 +24,19 @@ import java.util.Map;
  * @Date 2020/10/27 PM8:04
  */
 @Service
+@AllArgsConstructor
 public class CacheTestServiceImpl implements ICacheTestService {
 
+    private final BloomFilterRegistry bloomFilterRegistry;
+
+    /**
+     * 演示：启动时把已存在的用户id写入布隆过滤器，不存在的id不再访问redis和数据库；updateUsers 写入的id由批量缓存同步写入过滤器
+     */
+    @PostConstruct
+    public void initBloomFilter() {
+        bloomFilterRegistry.registerLocal("cache:user:batch").putAll(Arrays.asList(1L, 2L, 3L));
+    }
+
     @Cacheable(value = "cache:user", key = "#userId")
     @Override
     public User getById(Long userId) {
@@ -26,7 +45,8 @@ public class CacheTestServiceImpl implements ICacheTestService {
     }
 
     //    @Cacheable(value = "cache:user", key = "#userIdList")
-    @BatchCache(value = "cache:user:batch", seconds = 1000)
+    @BatchCache(value = "cache:user:batch", seconds = 1000, nullSeconds = 60, ttlJitter = 0.1, refreshAhead = true,
+        codec = CborBatchCacheCodec.class)
     @Override
     public Map<Long, User> listByIds(List<Long> userIdList) {
         Map<Long, User> userMap = new HashMap<>();
@@ -45,4 +65,38 @@ public class CacheTestServiceImpl implements ICacheTestService {
         }
         return userMap;
     }
+
+    /**
+     * 演示：异步批量缓存，与 listByIds 共用同一个缓存
+     */
+    @BatchCache(value = "cache:user:batch", seconds = 1000, nullSeconds = 60, ttlJitter = 0.1, refreshAhead = true,
+        codec = CborBatchCacheCodec.class)
+    @Override
+    public CompletableFuture<Map<Long, User>> listByIdsAsync(List<Long> userIdList) {
+        return CompletableFuture.supplyAsync(() -> this.listByIds(userIdList));
+    }
+
+    /**
+     * 演示：批量更新后把返回的用户整体写入缓存（事务提交后写入）
+     */
+    @BatchCachePut(value = "cache:user:batch", seconds = 1000, ttlJitter = 0.1, codec = CborBatchCacheCodec.class,
+        afterCommit = true)
+    @Override
+    public Map<Long, User> updateUsers(List<User> userList) {
+        Map<Long, User> userMap = new HashMap<>();
+        for (User user : userList) {
+            System.out.println("模拟更新....id=" + user.getId());
+            userMap.put(user.getId(), user);
+        }
+        return userMap;
+    }
+
+    /**
+     * 演示：批量删除后删除对应的缓存
+     */
+    @BatchCacheEvict(value = "cache:user:batch", key = "userIdList")
+    @Override
+    public void deleteByIds(List<Long> userIdList) {
+        System.out.println("模拟删除....ids=" + userIdList);
+    }
 }
@@ -4,6 +4,7 @@ import com.example.cache.entity.User;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 描述
@@ -16,4 +17,10 @@ public interface ICacheTestService {
     User getById(Long userId);
 
     Map<Long, User> listByIds(List<Long> uesrIdList);
+
+    CompletableFuture<Map<Long, User>> listByIdsAsync(List<Long> userIdList);
+
+    Map<Long, User> updateUsers(List<User> userList);
+
+    void deleteByIds(List<Long> userIdList);
 }
@@ -0,0 +1,27 @@
+package com.example.cache.support;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步加载未命中缓存的数据
+ * <p>
+ * 用于返回值为 CompletableFuture / Mono 的 @BatchCache 方法，由切面基于 ProceedingJoinPoint 创建，
+ * 加载异常通过返回的 future 传递
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/28 AM10:20
+ */
+@FunctionalInterface
+public interface AsyncBatchCacheLoader {
+
+    /**
+     * 加载数据
+     *
+     * @param missKeyList 未命中缓存的key
+     * @return key -> value，不存在的key不包含在结果中
+     */
+    CompletableFuture<Map<Object, Object>> load(List<Object> missKeyList);
+}
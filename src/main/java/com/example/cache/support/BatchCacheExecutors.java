@@ -0,0 +1,115 @@
+package com.example.cache.support;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量缓存使用的线程池
+ * <p>
+ * 1 pipeline：拆分后的 redis pipeline 并发执行
+ * 1.1 callback：lettuce 异步命令返回后的反序列化等回调，不执行阻塞操作，pipeline 线程都在等待时回调仍然可以执行
+ * 2 loader：在后台调用加载方法
+ * 2.1 offload：从 scheduler 线程转交出去的任务（合并窗口到期后的批量调用、定时读取版本号），队列满时拒绝，不会回到 scheduler 线程执行
+ * 3 scheduler：定时任务，只做调度，不执行耗时操作
+ * 4 sweeper：单线程，后台回收旧版本缓存（SCAN + UNLINK）
+ * 5 probe：单线程，执行熔断器的 redis 探测（阻塞的 PING），队列满时拒绝，不会回到 scheduler 线程执行
+ * </p>
+ * redis 操作和加载方法使用不同的线程池，避免加载方法中再访问 redis 时互相等待
+ *
+ * @author zhuwei
+ * @Date 2020/12/18 AM11:30
+ */
+public class BatchCacheExecutors implements DisposableBean {
+
+    private final ExecutorService pipeline;
+
+    private final ExecutorService callback;
+
+    private final ExecutorService loader;
+
+    private final ExecutorService offload;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService sweeper;
+
+    private final ExecutorService probe;
+
+    public BatchCacheExecutors(int pipelineThreads, int loaderThreads) {
+        this.pipeline = newPool(pipelineThreads, "batch-cache-pipeline-");
+        this.callback = newPool(pipelineThreads, "batch-cache-callback-");
+        this.loader = newPool(loaderThreads, "batch-cache-loader-");
+        int offloadThreads = Math.max(1, loaderThreads);
+        this.offload = new ThreadPoolExecutor(offloadThreads, offloadThreads, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(1024),
+            new CustomizableThreadFactory("batch-cache-offload-"),
+            new ThreadPoolExecutor.AbortPolicy());
+        CustomizableThreadFactory schedulerThreadFactory = new CustomizableThreadFactory("batch-cache-scheduler-");
+        schedulerThreadFactory.setDaemon(true);
+        ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(1, schedulerThreadFactory);
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduledExecutor;
+        this.sweeper = newPool(1, "batch-cache-sweeper-");
+        this.probe = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(1),
+            new CustomizableThreadFactory("batch-cache-probe-"),
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 固定大小线程池，队列满时由调用线程执行
+     */
+    private static ExecutorService newPool(int threads, String threadNamePrefix) {
+        int size = Math.max(1, threads);
+        return new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(1024),
+            new CustomizableThreadFactory(threadNamePrefix),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public ExecutorService getPipeline() {
+        return pipeline;
+    }
+
+    public ExecutorService getCallback() {
+        return callback;
+    }
+
+    public ExecutorService getLoader() {
+        return loader;
+    }
+
+    public ExecutorService getOffload() {
+        return offload;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    public ExecutorService getSweeper() {
+        return sweeper;
+    }
+
+    public ExecutorService getProbe() {
+        return probe;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+        sweeper.shutdownNow();
+        probe.shutdownNow();
+        loader.shutdown();
+        offload.shutdown();
+        pipeline.shutdown();
+        callback.shutdown();
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.cache.support;
+
+import com.example.cache.RedisMultiCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按缓存名称前缀（@BatchCache.value）维护缓存版本号，用于 O(1) 清空一个前缀下的全部批量缓存
+ * <p>
+ * 1 版本号保存在 redis 计数器 batch-cache:generation:{prefix}，各节点定时批量读取（一条 MGET），本地读取不访问 redis
+ * 2 版本号大于 0 时 redis key 为 prefix:g{generation}:id（版本 0 与原来的 prefix:id 一致），版本号加一后旧 key 不再被访问
+ * 3 旧版本的 key 等待过期，或由后台线程 SCAN + UNLINK 回收；版本 0 的 key 可能与其他前缀重叠，只等待过期
+ * 4 redis 中的版本号是唯一依据，读取到的版本号与本地不同（包括变小，如计数器被删除或 redis 重建）都切换到该版本
+ * </p>
+ * 其他节点在下一次定时读取（refreshMillis）后切换到新版本。
+ * <p>
+ * 版本号计数器不设置过期时间，且不能被 redis 淘汰：计数器丢失后所有节点回到版本 0，会重新读到版本 0 的旧数据。
+ * redis 的 maxmemory-policy 应使用 volatile-*（只淘汰设置了过期时间的 key，批量缓存都有过期时间）或 noeviction，
+ * 不能使用 allkeys-*；如果必须使用 allkeys-*，计数器应放在单独的 redis 中
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/28 AM10:30
+ */
+@Slf4j
+public class BatchCacheGenerations implements DisposableBean {
+
+    public static final String REDIS_KEY_PREFIX = "batch-cache:generation:";
+
+    private final RedisMultiCache redisMultiCache;
+
+    private final ExecutorService sweeper;
+
+    /**
+     * 执行定时读取，scheduler 只负责调度
+     */
+    private final ExecutorService refresher;
+
+    /**
+     * 定时读取是否正在执行，上一次未完成时跳过
+     */
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    /**
+     * 回收旧版本时单次 UNLINK 的 key 数
+     */
+    private final int sweepBatchSize;
+
+    /**
+     * 回收旧版本时批次之间的暂停（毫秒）
+     */
+    private final long sweepPauseMillis;
+
+    /**
+     * 缓存名称前缀 -> 当前版本号
+     */
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+
+    /**
+     * 原始元数据（按实例比较，弱引用）-> 切换到当前版本后的元数据，版本号不变时复用
+     */
+    private final Cache<BatchCacheOperation, BatchCacheOperation> versionedOperations = Caffeine.newBuilder().weakKeys().build();
+
+    private final ScheduledFuture<?> refreshTask;
+
+    /**
+     * @param redisMultiCache  读写版本号和回收旧版本
+     * @param executors        定时调度、读取版本号（offload，队列满时拒绝，不在 scheduler 线程读取）和后台回收（sweeper）使用的线程池
+     * @param refreshMillis    定时读取版本号的间隔（毫秒），<=0 不定时读取
+     * @param sweepBatchSize   回收旧版本时单次 UNLINK 的 key 数
+     * @param sweepPauseMillis 回收旧版本时批次之间的暂停（毫秒）
+     */
+    public BatchCacheGenerations(RedisMultiCache redisMultiCache, BatchCacheExecutors executors, long refreshMillis,
+                                 int sweepBatchSize, long sweepPauseMillis) {
+        this.redisMultiCache = redisMultiCache;
+        this.sweeper = executors.getSweeper();
+        this.refresher = executors.getOffload();
+        this.sweepBatchSize = sweepBatchSize;
+        this.sweepPauseMillis = sweepPauseMillis;
+        this.refreshTask = refreshMillis > 0
+            ? executors.getScheduler().scheduleWithFixedDelay(this::submitRefresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS)
+            : null;
+    }
+
+    /**
+     * 切换到该前缀的当前版本，一次请求内只切换一次，保证生成的 key 属于同一个版本
+     */
+    public BatchCacheOperation resolve(BatchCacheOperation operation) {
+        long generation = this.current(operation.getKeyPrefix());
+        if (generation == operation.getGeneration()) {
+            return operation;
+        }
+        BatchCacheOperation versioned = versionedOperations.getIfPresent(operation);
+        if (versioned == null || versioned.getGeneration() != generation) {
+            versioned = operation.withGeneration(generation);
+            versionedOperations.put(operation, versioned);
+        }
+        return versioned;
+    }
+
+    /**
+     * 当前版本号，第一次访问该前缀时从 redis 读取，redis 不可用时按 0 处理，之后由定时任务更新
+     */
+    public long current(String keyPrefix) {
+        Long generation = generations.get(keyPrefix);
+        if (generation != null) {
+            return generation;
+        }
+        List<Long> counters = redisMultiCache.listCounters(Collections.singletonList(REDIS_KEY_PREFIX + keyPrefix));
+        long loaded = counters == null ? 0L : counters.get(0);
+        Long previous = generations.putIfAbsent(keyPrefix, loaded);
+        return previous != null ? previous : loaded;
+    }
+
+    /**
+     * 清空该前缀下的全部批量缓存：版本号加一，不删除数据；上一个版本的 key 在后台回收
+     *
+     * @return 新的版本号
+     * @throws IllegalStateException redis 不可用
+     */
+    public synchronized long advance(String keyPrefix) {
+        long generation = redisMultiCache.incrCounter(REDIS_KEY_PREFIX + keyPrefix);
+        // 以 redis 返回的版本号为准；本节点的 advance 串行执行，不会被更早的结果覆盖
+        generations.put(keyPrefix, generation);
+        log.info("BatchCacheGenerations {} 切换到版本 {}", keyPrefix, generation);
+        if (generation > 1) {
+            this.sweepAsync(keyPrefix, generation - 1);
+        }
+        return generation;
+    }
+
+    /**
+     * 在 scheduler 线程中执行，只提交读取任务
+     */
+    private void submitRefresh() {
+        if (generations.isEmpty() || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    this.refresh();
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.set(false);
+            // 定时任务抛出异常后不再执行
+            log.error("BatchCacheGenerations 异常", e);
+        }
+    }
+
+    /**
+     * 读取已访问过的前缀的版本号，一条 MGET；redis 不可用时保持原版本号
+     * <p>
+     * 读取到的版本号与读取前本地的版本号不同时切换（变大或变小）；读取期间本节点 advance 写入了新版本号时，
+     * 本次读取的结果已经过期，不覆盖本节点写入的版本号
+     * </p>
+     */
+    void refresh() {
+        Map<String, Long> snapshot = new HashMap<>(generations);
+        if (snapshot.isEmpty()) {
+            return;
+        }
+        List<String> keyPrefixes = new ArrayList<>(snapshot.keySet());
+        List<String> counterKeys = new ArrayList<>(keyPrefixes.size());
+        keyPrefixes.forEach(keyPrefix -> counterKeys.add(REDIS_KEY_PREFIX + keyPrefix));
+        try {
+            List<Long> counters = redisMultiCache.listCounters(counterKeys);
+            if (counters == null) {
+                return;
+            }
+            for (int i = 0; i < keyPrefixes.size(); i++) {
+                String keyPrefix = keyPrefixes.get(i);
+                Long previous = snapshot.get(keyPrefix);
+                long generation = counters.get(i);
+                if (generation != previous && generations.replace(keyPrefix, previous, generation)) {
+                    if (generation < previous) {
+                        log.warn("BatchCacheGenerations {} 版本号从 {} 变为 {}，计数器可能被删除或淘汰", keyPrefix, previous, generation);
+                    } else {
+                        log.info("BatchCacheGenerations {} 切换到版本 {}", keyPrefix, generation);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("BatchCacheGenerations 异常", e);
+        }
+    }
+
+    /**
+     * 在后台回收指定版本的全部 key（包括 hash 分桶）
+     */
+    private void sweepAsync(String keyPrefix, long generation) {
+        String pattern = BatchCacheOperation.cacheKeyPrefix(keyPrefix, generation) + "*";
+        sweeper.execute(() -> {
+            try {
+                long unlinked = redisMultiCache.unlinkByPattern(pattern, sweepBatchSize, sweepPauseMillis);
+                log.info("BatchCacheGenerations 回收 {}，删除 {} 个 key", pattern, unlinked);
+            } catch (Exception e) {
+                log.warn("BatchCacheGenerations 回收 {} 失败，剩余的 key 等待过期", pattern, e);
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+        }
+    }
+}
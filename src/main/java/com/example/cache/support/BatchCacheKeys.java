@@ -0,0 +1,120 @@
+package com.example.cache.support;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 批量缓存 redis key 的生成和编码
+ * <p>
+ * 1 String key 为 cacheKeyPrefix.concat(id)，只在需要 String key 时生成（本地缓存、未命中的 key 等）
+ * 2 key 编码为 byte[] 时，纯 ASCII 的 key 按长度一次分配、逐字符写入；
+ * String.getBytes(UTF_8) 会先分配 3 倍长度的缓冲区再裁剪（JDK 8），批量读写时每个 key 多一次分配
+ * 3 只访问 redis 的批量读取直接由预先编码的前缀和 id 生成 byte[] key（{@link #rawKey}），每个 key 只分配一个 byte[]，
+ * 不生成 String；byte[] 由 lettuce 命令持有到返回结果，不能复用同一个缓冲区
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/30 AM10:20
+ */
+public final class BatchCacheKeys {
+
+    private BatchCacheKeys() {
+    }
+
+    /**
+     * 生成 redis key：cacheKeyPrefix + id
+     *
+     * @param cacheKeyPrefix 拼接好分隔符的 key 前缀
+     * @param id             不能为 null
+     */
+    public static String key(String cacheKeyPrefix, Object id) {
+        if (id instanceof String) {
+            return cacheKeyPrefix.concat((String) id);
+        }
+        return cacheKeyPrefix.concat(id.toString());
+    }
+
+    /**
+     * 生成编码后的 redis key，与 toBytes(key(cacheKeyPrefix, id)) 的结果一致
+     *
+     * @param cacheKeyPrefixBytes 拼接好分隔符的 key 前缀的 UTF-8 编码
+     * @param id                  不能为 null
+     */
+    public static byte[] rawKey(byte[] cacheKeyPrefixBytes, Object id) {
+        if (id instanceof Long || id instanceof Integer) {
+            long value = ((Number) id).longValue();
+            if (value != Long.MIN_VALUE) {
+                return appendDigits(cacheKeyPrefixBytes, value);
+            }
+        }
+        String text = id instanceof String ? (String) id : id.toString();
+        int prefixLength = cacheKeyPrefixBytes.length;
+        int length = text.length();
+        byte[] bytes = new byte[prefixLength + length];
+        System.arraycopy(cacheKeyPrefixBytes, 0, bytes, 0, prefixLength);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+                byte[] key = Arrays.copyOf(cacheKeyPrefixBytes, prefixLength + encoded.length);
+                System.arraycopy(encoded, 0, key, prefixLength, encoded.length);
+                return key;
+            }
+            bytes[prefixLength + i] = (byte) c;
+        }
+        return bytes;
+    }
+
+    /**
+     * 前缀 + 十进制数字，按位数一次分配，从后往前写入
+     */
+    private static byte[] appendDigits(byte[] prefix, long value) {
+        byte[] bytes = new byte[prefix.length + stringSize(value)];
+        System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+        long abs = value < 0 ? -value : value;
+        int index = bytes.length;
+        do {
+            bytes[--index] = (byte) ('0' + abs % 10);
+            abs /= 10;
+        } while (abs > 0);
+        if (value < 0) {
+            bytes[prefix.length] = '-';
+        }
+        return bytes;
+    }
+
+    /**
+     * 十进制字符数（含负号）
+     */
+    private static int stringSize(long value) {
+        if (value == Long.MIN_VALUE) {
+            return 20;
+        }
+        long abs = value;
+        int size = 1;
+        if (value < 0) {
+            abs = -value;
+            size++;
+        }
+        for (; abs >= 10; abs /= 10) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * 按 UTF-8 编码 key，与 StringRedisSerializer.UTF_8 的结果一致
+     */
+    public static byte[] toBytes(String key) {
+        int length = key.length();
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c >= 0x80) {
+                return key.getBytes(StandardCharsets.UTF_8);
+            }
+            bytes[i] = (byte) c;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.cache.support;
+
+/**
+ * 加载未命中缓存的数据时，目标方法抛出的受检异常的包装，切面中会还原成原始异常抛出
+ *
+ * @author zhuwei
+ * @Date 2020/12/14 AM10:12
+ */
+public class BatchCacheLoadException extends RuntimeException {
+
+    public BatchCacheLoadException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.cache.support;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 加载未命中缓存的数据
+ * <p>
+ * 由切面基于 ProceedingJoinPoint 创建：替换 key 参数后调用真实的目标对象（经过 spring 代理链），
+ * 加载异常直接抛出，由调用方处理
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/14 AM10:05
+ */
+@FunctionalInterface
+public interface BatchCacheLoader {
+
+    /**
+     * 加载数据
+     *
+     * @param missKeyList 未命中缓存的key
+     * @return key -> value，不存在的key不包含在结果中
+     */
+    Map<Object, Object> load(List<Object> missKeyList);
+}
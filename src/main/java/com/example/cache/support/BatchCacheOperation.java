@@ -0,0 +1,434 @@
+package com.example.cache.support;
+
+import com.example.cache.HashBucketLayout;
+import com.example.cache.annotation.BatchCache;
+import com.example.cache.annotation.BatchCacheEvict;
+import com.example.cache.annotation.BatchCachePut;
+import com.example.cache.codec.BatchCacheCodec;
+import com.example.cache.codec.BatchCacheCodecs;
+import com.example.cache.codec.BatchValueSerializer;
+import lombok.Builder;
+import lombok.Value;
+import org.springframework.core.CollectionFactory;
+import org.springframework.core.ResolvableType;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * 被 @BatchCache 标注的方法的元数据
+ * <p>
+ * 每个方法只解析一次（注解属性、key参数下标、返回值类型、key提取器），
+ * 之后每次调用直接复用，不再做反射和参数名查找
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/10 PM4:40
+ */
+@Value
+@Builder(toBuilder = true)
+public class BatchCacheOperation {
+
+    /**
+     * 被拦截的方法
+     */
+    Method method;
+
+    /**
+     * 方法返回值类型：Map、CompletableFuture&lt;Map&gt; 或 Mono&lt;Map&gt;
+     */
+    ResultType resultType;
+
+    /**
+     * 缓存名称前缀 @BatchCache.value
+     */
+    String keyPrefix;
+
+    /**
+     * 拼接好分隔符的 redis key 前缀：keyPrefix + ":"，版本号大于 0 时为 keyPrefix + ":g" + generation + ":"
+     */
+    String cacheKeyPrefix;
+
+    /**
+     * cacheKeyPrefix 的 UTF-8 编码，随 cacheKeyPrefix 一起设置，批量读取时 id 直接追加到后面编码为 redis key
+     */
+    byte[] cacheKeyPrefixBytes;
+
+    /**
+     * 缓存版本号，由 BatchCacheGenerations 按缓存名称前缀维护，0 为初始版本
+     */
+    long generation;
+
+    /**
+     * key参数在方法参数中的下标
+     */
+    int keyArgIndex;
+
+    /**
+     * key参数的声明类型，加载未命中数据时按此类型传参
+     */
+    Class<?> keyArgType;
+
+    /**
+     * redis缓存过期时间（秒）
+     */
+    long seconds;
+
+    /**
+     * 本地缓存过期时间（秒），<=0 不使用本地缓存
+     */
+    long localSeconds;
+
+    /**
+     * 未开启本地缓存时是否在本地保留热点 key 的短期副本
+     */
+    boolean hotKeyLocal;
+
+    /**
+     * 空值标记过期时间（秒），<=0 不缓存空值
+     */
+    long nullSeconds;
+
+    /**
+     * 过期时间随机打散比例，<=0 不打散
+     */
+    double ttlJitter;
+
+    /**
+     * 是否提前刷新
+     */
+    boolean refreshAhead;
+
+    /**
+     * 提前刷新系数（XFetch beta）
+     */
+    double refreshBeta;
+
+    /**
+     * 缓存对象中作为key的字段名
+     */
+    String keyMapper;
+
+    /**
+     * 缓存对象类型（返回值 Map 的 value 类型），无法解析时为 null
+     */
+    Class<?> valueType;
+
+    /**
+     * 缓存对象的 key 提取器，valueType 为 null 时按元素实际类型获取
+     */
+    Function<Object, Object> keyExtractor;
+
+    /**
+     * 按 @BatchCache.codec 生成的 value 序列化方式，为 null 时使用 redisTemplate 的 valueSerializer
+     */
+    RedisSerializer<Object> valueSerializer;
+
+    /**
+     * 按 @BatchCache.bucketSize 生成的 hash 分桶存储布局，为 null 时每个对象一个 key
+     */
+    HashBucketLayout bucketLayout;
+
+    /**
+     * 读取 redis 的时间预算（毫秒），<=0 不限制
+     */
+    long budgetMillis;
+
+    /**
+     * 单次调用原方法的最大 key 数，<=0 不拆分
+     */
+    int loaderBatchSize;
+
+    /**
+     * 拆分后同时调用原方法的最大次数
+     */
+    int loaderParallelism;
+
+    /**
+     * 解析方法元数据，校验失败抛出 IllegalStateException
+     *
+     * @param method         被拦截的方法
+     * @param parameterNames 方法参数名
+     * @param batchCache     注解
+     */
+    public static BatchCacheOperation of(Method method, String[] parameterNames, BatchCache batchCache) {
+
+        // 1 校验（方法返回值只能是Map，或异步返回的Map）
+        ResultType resultType = ResultType.of(method.getReturnType());
+        ResolvableType mapType = ResolvableType.forMethodReturnType(method);
+        if (resultType != ResultType.MAP) {
+            mapType = mapType.getGeneric(0);
+        }
+        if (resultType == null || !Map.class.isAssignableFrom(mapType.toClass())) {
+            throw new IllegalStateException("the returnType of the method must be Map, CompletableFuture<Map> or Mono<Map>");
+        }
+
+        // 1 校验（key的参数类型只能是Collection）
+        int keyArgIndex = resolveKeyArgIndex(parameterNames, batchCache.key());
+        Class<?> keyArgType = method.getParameterTypes()[keyArgIndex];
+        if (!Collection.class.isAssignableFrom(keyArgType)) {
+            throw new IllegalStateException("the Parameter type of the key  must be Collection");
+        }
+
+        // 2 解析缓存对象类型，提前生成key提取器
+        Class<?> valueType = mapType.asMap().resolveGeneric(1);
+        if (valueType == Object.class) {
+            valueType = null;
+        }
+        Function<Object, Object> keyExtractor = null;
+        if (valueType != null) {
+            try {
+                keyExtractor = KeyExtractors.get(valueType, batchCache.keyMapper());
+            } catch (IllegalStateException e) {
+                // 声明类型上没有 getter（如接口），按元素实际类型获取
+            }
+        }
+
+        // 3 指定编解码时按缓存对象类型解码，类型必须可以解析
+        RedisSerializer<Object> valueSerializer = resolveValueSerializer(method, valueType, batchCache.codec());
+
+        return BatchCacheOperation.builder()
+            .method(method)
+            .resultType(resultType)
+            .keyPrefix(batchCache.value())
+            .cacheKeyPrefix(cacheKeyPrefix(batchCache.value(), 0L))
+            .keyArgIndex(keyArgIndex)
+            .keyArgType(keyArgType)
+            .seconds(batchCache.seconds())
+            .localSeconds(batchCache.localSeconds())
+            .hotKeyLocal(batchCache.hotKeyLocal())
+            .nullSeconds(batchCache.nullSeconds())
+            .ttlJitter(batchCache.ttlJitter())
+            .refreshAhead(batchCache.refreshAhead())
+            .refreshBeta(batchCache.refreshBeta())
+            .keyMapper(batchCache.keyMapper())
+            .valueType(valueType)
+            .keyExtractor(keyExtractor)
+            .valueSerializer(valueSerializer)
+            .bucketLayout(resolveBucketLayout(batchCache.value(), batchCache.bucketSize()))
+            .budgetMillis(batchCache.budgetMillis())
+            .loaderBatchSize(batchCache.loaderBatchSize())
+            .loaderParallelism(Math.max(1, batchCache.loaderParallelism()))
+            .build();
+    }
+
+    /**
+     * 解析 @BatchCacheEvict 标注的方法，只包含 key 前缀、key参数和存储布局
+     *
+     * @param method          被拦截的方法
+     * @param parameterNames  方法参数名
+     * @param batchCacheEvict 注解
+     */
+    public static BatchCacheOperation of(Method method, String[] parameterNames, BatchCacheEvict batchCacheEvict) {
+        int keyArgIndex = resolveKeyArgIndex(parameterNames, batchCacheEvict.key());
+        Class<?> keyArgType = method.getParameterTypes()[keyArgIndex];
+        if (!Collection.class.isAssignableFrom(keyArgType)) {
+            throw new IllegalStateException("the Parameter type of the key  must be Collection");
+        }
+        return BatchCacheOperation.builder()
+            .method(method)
+            .keyPrefix(batchCacheEvict.value())
+            .cacheKeyPrefix(cacheKeyPrefix(batchCacheEvict.value(), 0L))
+            .keyArgIndex(keyArgIndex)
+            .keyArgType(keyArgType)
+            .bucketLayout(resolveBucketLayout(batchCacheEvict.value(), batchCacheEvict.bucketSize()))
+            .build();
+    }
+
+    /**
+     * 解析 @BatchCachePut 标注的方法，方法返回值只能是 Map
+     *
+     * @param method        被拦截的方法
+     * @param batchCachePut 注解
+     */
+    public static BatchCacheOperation of(Method method, BatchCachePut batchCachePut) {
+        if (!Map.class.isAssignableFrom(method.getReturnType())) {
+            throw new IllegalStateException("the returnType of the method annotated with @BatchCachePut must be Map");
+        }
+        Class<?> valueType = ResolvableType.forMethodReturnType(method).asMap().resolveGeneric(1);
+        if (valueType == Object.class) {
+            valueType = null;
+        }
+        return BatchCacheOperation.builder()
+            .method(method)
+            .resultType(ResultType.MAP)
+            .keyPrefix(batchCachePut.value())
+            .cacheKeyPrefix(cacheKeyPrefix(batchCachePut.value(), 0L))
+            .seconds(batchCachePut.seconds())
+            .ttlJitter(batchCachePut.ttlJitter())
+            .valueType(valueType)
+            .valueSerializer(resolveValueSerializer(method, valueType, batchCachePut.codec()))
+            .bucketLayout(resolveBucketLayout(batchCachePut.value(), batchCachePut.bucketSize()))
+            .build();
+    }
+
+    /**
+     * 切换到指定版本：redis key 前缀和 hash 分桶布局带上版本号，其余元数据不变
+     */
+    public BatchCacheOperation withGeneration(long generation) {
+        if (generation == this.generation) {
+            return this;
+        }
+        String versionedPrefix = cacheKeyPrefix(keyPrefix, generation);
+        return this.toBuilder()
+            .generation(generation)
+            .cacheKeyPrefix(versionedPrefix)
+            .bucketLayout(bucketLayout == null ? null : new HashBucketLayout(versionedPrefix, bucketLayout.getBucketSize()))
+            .build();
+    }
+
+    /**
+     * cacheKeyPrefix 和 cacheKeyPrefixBytes 一起设置，前缀只编码一次
+     */
+    public static class BatchCacheOperationBuilder {
+
+        public BatchCacheOperationBuilder cacheKeyPrefix(String cacheKeyPrefix) {
+            this.cacheKeyPrefix = cacheKeyPrefix;
+            this.cacheKeyPrefixBytes = cacheKeyPrefix == null ? null : BatchCacheKeys.toBytes(cacheKeyPrefix);
+            return this;
+        }
+    }
+
+    /**
+     * 指定版本的 redis key 前缀，版本 0 与未引入版本号之前的 key 一致
+     */
+    public static String cacheKeyPrefix(String keyPrefix, long generation) {
+        return generation == 0 ? keyPrefix + ":" : keyPrefix + ":g" + generation + ":";
+    }
+
+    /**
+     * 指定编解码时按缓存对象类型解码，类型必须可以解析
+     *
+     * @return 未指定编解码时返回 null，使用 redisTemplate 的 valueSerializer
+     */
+    private static RedisSerializer<Object> resolveValueSerializer(Method method, Class<?> valueType,
+                                                                  Class<? extends BatchCacheCodec> codec) {
+        if (codec == BatchCacheCodec.class) {
+            return null;
+        }
+        if (valueType == null) {
+            throw new IllegalStateException("the codec requires the value type of the returned Map: " + method);
+        }
+        return new BatchValueSerializer(BatchCacheCodecs.get(codec), valueType);
+    }
+
+    private static HashBucketLayout resolveBucketLayout(String keyPrefix, long bucketSize) {
+        return bucketSize > 0 ? new HashBucketLayout(cacheKeyPrefix(keyPrefix, 0L), bucketSize) : null;
+    }
+
+    /**
+     * 根据注解BatchCache中的key获取目标方法参数下标
+     *
+     * @param parameterNames 目标方法的所有参数名称
+     * @param key            key后缀适配字段
+     * @return
+     */
+    private static int resolveKeyArgIndex(String[] parameterNames, String key) {
+
+        // 1 校验参数
+        if (parameterNames == null || parameterNames.length == 0) {
+            throw new IllegalStateException("the parameterNames is null");
+        }
+        // 如果未指定key值，则默认取方法的第一个参数
+        if (!StringUtils.hasLength(key) || parameterNames.length == 1) {
+            return 0;
+        }
+
+        // 2 查询key后缀的参数下标
+        for (int i = 0; i < parameterNames.length; i++) {
+            if (key.equals(parameterNames[i])) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("the Parameter of the keyMapper  not exist");
+    }
+
+    /**
+     * 是否使用本地缓存
+     */
+    public boolean isLocalCacheEnabled() {
+        return localSeconds > 0;
+    }
+
+    /**
+     * 是否缓存空值
+     */
+    public boolean isNullCacheEnabled() {
+        return nullSeconds > 0;
+    }
+
+    /**
+     * 生成一个 redis 过期时间（秒），按 ttlJitter 随机打散
+     */
+    public long nextSeconds() {
+        if (ttlJitter <= 0) {
+            return seconds;
+        }
+        return seconds + (long) (seconds * ttlJitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * 将未命中的key转换成key参数的声明类型（如 Set）
+     */
+    @SuppressWarnings("unchecked")
+    public Collection<Object> adaptKeyArg(List<Object> keyList) {
+        if (keyArgType.isInstance(keyList)) {
+            return keyList;
+        }
+        Collection<Object> keys = CollectionFactory.createCollection(keyArgType, keyList.size());
+        keys.addAll(keyList);
+        return keys;
+    }
+
+    /**
+     * 获取缓存对象的 key 提取器
+     */
+    public Function<Object, Object> keyExtractorFor(Class<?> elementClass) {
+        return keyExtractor != null ? keyExtractor : KeyExtractors.get(elementClass, keyMapper);
+    }
+
+    /**
+     * 方法返回值类型
+     */
+    public enum ResultType {
+
+        /**
+         * 同步返回 Map
+         */
+        MAP,
+
+        /**
+         * 返回 CompletableFuture&lt;Map&gt;
+         */
+        FUTURE,
+
+        /**
+         * 返回 reactor Mono&lt;Map&gt;
+         */
+        MONO;
+
+        /**
+         * @return 不支持的返回值类型返回 null
+         */
+        static ResultType of(Class<?> returnType) {
+            if (Map.class.isAssignableFrom(returnType)) {
+                return MAP;
+            }
+            if (returnType == CompletableFuture.class) {
+                return FUTURE;
+            }
+            if (returnType == Mono.class) {
+                return MONO;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.cache.support;
+
+import com.example.cache.annotation.BatchCache;
+import com.example.cache.annotation.BatchCacheEvict;
+import com.example.cache.annotation.BatchCachePut;
+import com.example.cache.codec.BatchCacheCodec;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 启动时校验同一个缓存名称前缀的存储方式
+ * <p>
+ * 1 存储方式（hash 分桶大小、编解码）以 @BatchCache 为准，同一个前缀的多个 @BatchCache 必须一致
+ * 2 @BatchCacheEvict.bucketSize、@BatchCachePut.bucketSize / codec 必须与同一个前缀的 @BatchCache 一致，
+ * 否则删除或写入的是另一种格式的 key，读取时查不到或解码失败
+ * 3 没有 @BatchCache 的前缀不校验
+ * </p>
+ * 所有单例创建完成后校验，不一致时抛出异常，应用启动失败
+ *
+ * @author zhuwei
+ * @Date 2020/12/25 PM3:40
+ */
+public class BatchCacheStorageValidator implements BeanPostProcessor, SmartInitializingSingleton {
+
+    /**
+     * 已扫描的类，同一个类的多个 bean 只扫描一次
+     */
+    private final Set<Class<?>> scannedClasses = ConcurrentHashMap.newKeySet();
+
+    private final List<Declaration> declarations = new ArrayList<>();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Class<?> targetClass = AopProxyUtils.ultimateTargetClass(bean);
+        if (!AnnotationUtils.isCandidateClass(targetClass, Arrays.asList(BatchCache.class, BatchCacheEvict.class, BatchCachePut.class))
+            || !scannedClasses.add(targetClass)) {
+            return bean;
+        }
+        for (Method method : ReflectionUtils.getUniqueDeclaredMethods(targetClass, ReflectionUtils.USER_DECLARED_METHODS)) {
+            this.register(method);
+        }
+        return bean;
+    }
+
+    /**
+     * 记录方法上的注解声明的存储方式
+     */
+    void register(Method method) {
+        BatchCache batchCache = method.getAnnotation(BatchCache.class);
+        BatchCacheEvict batchCacheEvict = method.getAnnotation(BatchCacheEvict.class);
+        BatchCachePut batchCachePut = method.getAnnotation(BatchCachePut.class);
+        synchronized (declarations) {
+            if (batchCache != null) {
+                declarations.add(new Declaration(method, "@BatchCache", batchCache.value(), batchCache.bucketSize(), batchCache.codec()));
+            }
+            if (batchCacheEvict != null) {
+                // 删除不涉及编解码
+                declarations.add(new Declaration(method, "@BatchCacheEvict", batchCacheEvict.value(), batchCacheEvict.bucketSize(), null));
+            }
+            if (batchCachePut != null) {
+                declarations.add(new Declaration(method, "@BatchCachePut", batchCachePut.value(), batchCachePut.bucketSize(), batchCachePut.codec()));
+            }
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        this.validate();
+    }
+
+    /**
+     * 校验已记录的声明，不一致时抛出 IllegalStateException
+     */
+    void validate() {
+        List<String> errors = new ArrayList<>(0);
+        synchronized (declarations) {
+            // 1 每个前缀以第一个 @BatchCache 为准，其余 @BatchCache 与之比较
+            Map<String, Declaration> storages = new HashMap<>();
+            for (Declaration declaration : declarations) {
+                if (!"@BatchCache".equals(declaration.annotation)) {
+                    continue;
+                }
+                Declaration storage = storages.putIfAbsent(declaration.keyPrefix, declaration);
+                if (storage != null) {
+                    storage.compare(declaration, errors);
+                }
+            }
+            // 2 @BatchCacheEvict / @BatchCachePut 与同一个前缀的 @BatchCache 比较
+            for (Declaration declaration : declarations) {
+                Declaration storage = storages.get(declaration.keyPrefix);
+                if (storage != null && !"@BatchCache".equals(declaration.annotation)) {
+                    storage.compare(declaration, errors);
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("inconsistent batch cache storage:\n" + String.join("\n", errors));
+        }
+    }
+
+    /**
+     * 一个注解声明的存储方式
+     */
+    private static class Declaration {
+
+        private final Method method;
+
+        private final String annotation;
+
+        private final String keyPrefix;
+
+        private final long bucketSize;
+
+        /**
+         * 为 null 时不比较编解码
+         */
+        private final Class<? extends BatchCacheCodec> codec;
+
+        Declaration(Method method, String annotation, String keyPrefix, long bucketSize, Class<? extends BatchCacheCodec> codec) {
+            this.method = method;
+            this.annotation = annotation;
+            this.keyPrefix = keyPrefix;
+            this.bucketSize = bucketSize;
+            this.codec = codec;
+        }
+
+        /**
+         * 以当前声明为准比较另一个声明，不一致时记录错误
+         */
+        void compare(Declaration other, List<String> errors) {
+            if (bucketSize != other.bucketSize) {
+                errors.add(this.describe(other, "bucketSize", bucketSize, other.bucketSize));
+            }
+            if (other.codec != null && !Objects.equals(codec, other.codec)) {
+                errors.add(this.describe(other, "codec", codec.getSimpleName(), other.codec.getSimpleName()));
+            }
+        }
+
+        private String describe(Declaration other, String attribute, Object expected, Object actual) {
+            return String.format("%s(\"%s\") on %s declares %s=%s, but %s on %s declares %s=%s", other.annotation, keyPrefix,
+                other.method, attribute, actual, annotation, method, attribute, expected);
+        }
+    }
+}
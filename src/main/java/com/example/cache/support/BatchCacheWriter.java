@@ -0,0 +1,340 @@
+package com.example.cache.support;
+
+import com.example.cache.HashBucketLayout;
+import com.example.cache.RedisMultiCache;
+import com.example.cache.WriteBehindOverflowPolicy;
+import com.example.cache.utils.CollUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.CollectionUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * 加载结果写回 redis（回填，不通知本地缓存失效；数据更新通过 {@link RedisMultiCache#putBatch} 直接写入）
+ * <p>
+ * 1 同步模式：直接调用 {@link RedisMultiCache#fillBatch}
+ * 2 异步模式（write-behind）：写入有界队列后立即返回，后台线程批量取出，
+ * 合并多个请求的数据（同一个 key 只保留最后一次）后一次批量写入，减少请求线程上的一次 redis 往返
+ * 3 队列满时按 {@link WriteBehindOverflowPolicy} 处理；关闭时写完队列中剩余的数据
+ * 4 删除或更新缓存前调用 {@link #discard}，移除队列中这些 key 的回填，避免旧数据在删除之后被写回 redis
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/22 AM10:20
+ */
+@Slf4j
+public class BatchCacheWriter implements DisposableBean {
+
+    private final RedisMultiCache redisMultiCache;
+
+    private final boolean writeBehind;
+
+    private final BlockingQueue<PendingWrite> queue;
+
+    private final int maxBatchSize;
+
+    private final long flushMillis;
+
+    private final WriteBehindOverflowPolicy overflowPolicy;
+
+    private final long blockMillis;
+
+    private final Thread writerThread;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * 后台线程取出数据到写入 redis 期间持有，discard 持有时后台线程不会写入
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * 后台线程已取出、尚未加锁期间被 discard 的 key，由 flushLock 保护
+     */
+    private final Set<String> discardedKeys = new HashSet<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * 同步写入
+     */
+    public BatchCacheWriter(RedisMultiCache redisMultiCache) {
+        this(redisMultiCache, false, 1, 1, 0L, WriteBehindOverflowPolicy.CALLER_RUNS, 0L);
+    }
+
+    /**
+     * @param redisMultiCache 批量缓存
+     * @param writeBehind     是否异步写入
+     * @param capacity        队列容量（条数）
+     * @param maxBatchSize    后台线程单次写入的最大条数
+     * @param flushMillis     队列为空时后台线程的等待间隔
+     * @param overflowPolicy  队列满时的处理方式
+     * @param blockMillis     BLOCK 策略下最多等待的时间
+     */
+    public BatchCacheWriter(RedisMultiCache redisMultiCache, boolean writeBehind, int capacity, int maxBatchSize,
+                            long flushMillis, WriteBehindOverflowPolicy overflowPolicy, long blockMillis) {
+        this.redisMultiCache = redisMultiCache;
+        this.writeBehind = writeBehind;
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, capacity));
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.flushMillis = Math.max(1L, flushMillis);
+        this.overflowPolicy = overflowPolicy;
+        this.blockMillis = blockMillis;
+        if (writeBehind) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("batch-cache-writer-");
+            threadFactory.setDaemon(true);
+            this.writerThread = threadFactory.newThread(this::drainLoop);
+            this.writerThread.start();
+        } else {
+            this.writerThread = null;
+        }
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param map     redis key -> 缓存对象
+     * @param seconds 过期时间
+     */
+    public void write(Map<String, Object> map, long seconds) {
+        this.write(map, key -> seconds, null);
+    }
+
+    /**
+     * 写入缓存，每个 key 使用各自的过期时间
+     *
+     * @param map             redis key -> 缓存对象
+     * @param secondsFunction redis key -> 过期时间（秒）
+     * @param valueSerializer value 序列化方式，为空时使用 redisTemplate 的 valueSerializer
+     */
+    public void write(Map<String, Object> map, ToLongFunction<String> secondsFunction, RedisSerializer<?> valueSerializer) {
+        this.write(map, secondsFunction, valueSerializer, null);
+    }
+
+    /**
+     * 写入缓存，按存储布局写入
+     *
+     * @param map             redis key -> 缓存对象
+     * @param secondsFunction redis key -> 过期时间（秒）
+     * @param valueSerializer value 序列化方式，为空时使用 redisTemplate 的 valueSerializer
+     * @param bucketLayout    hash 分桶存储布局，为空时每个对象一个 key
+     */
+    public void write(Map<String, Object> map, ToLongFunction<String> secondsFunction, RedisSerializer<?> valueSerializer,
+                      HashBucketLayout bucketLayout) {
+        if (CollectionUtils.isEmpty(map)) {
+            return;
+        }
+        if (!writeBehind || !running) {
+            redisMultiCache.fillBatch(map, secondsFunction, valueSerializer, bucketLayout);
+            return;
+        }
+
+        Map<String, Object> rejected = null;
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            String key = entry.getKey();
+            if (!this.offer(new PendingWrite(key, entry.getValue(), secondsFunction.applyAsLong(key), valueSerializer, bucketLayout))) {
+                if (rejected == null) {
+                    rejected = new HashMap<>();
+                }
+                rejected.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (rejected != null) {
+            if (overflowPolicy == WriteBehindOverflowPolicy.DROP) {
+                droppedCount.addAndGet(rejected.size());
+            } else {
+                redisMultiCache.fillBatch(rejected, secondsFunction, valueSerializer, bucketLayout);
+            }
+        }
+    }
+
+    /**
+     * 写入空值标记
+     *
+     * @param keys    redis key
+     * @param seconds         空值标记的过期时间
+     * @param valueSerializer value 序列化方式，为空时使用 redisTemplate 的 valueSerializer
+     */
+    public void writeNull(Collection<String> keys, long seconds, RedisSerializer<?> valueSerializer) {
+        this.writeNull(keys, seconds, valueSerializer, null);
+    }
+
+    /**
+     * 写入空值标记，按存储布局写入
+     *
+     * @param bucketLayout hash 分桶存储布局，为空时每个对象一个 key
+     */
+    public void writeNull(Collection<String> keys, long seconds, RedisSerializer<?> valueSerializer,
+                          HashBucketLayout bucketLayout) {
+        if (CollectionUtils.isEmpty(keys) || seconds <= 0) {
+            return;
+        }
+        if (!writeBehind || !running) {
+            redisMultiCache.putNullBatch(keys, seconds, valueSerializer, bucketLayout);
+            return;
+        }
+        Map<String, Object> nullMap = new HashMap<>((int) (keys.size() / 0.75f) + 1);
+        keys.forEach(key -> nullMap.put(key, NullValue.INSTANCE));
+        this.write(nullMap, key -> seconds, valueSerializer, bucketLayout);
+    }
+
+    /**
+     * 移除队列中这些 key 等待写入的数据，删除或更新 redis 之前调用
+     * <p>
+     * 正在写入 redis 的一批数据写完后才返回，之后队列中不再有这些 key 在调用前提交的回填
+     * </p>
+     *
+     * @param keys redis key
+     */
+    public void discard(Collection<String> keys) {
+        if (!writeBehind || CollectionUtils.isEmpty(keys)) {
+            return;
+        }
+        Set<String> keySet = keys instanceof Set ? (Set<String>) keys : new HashSet<>(keys);
+        synchronized (flushLock) {
+            queue.removeIf(write -> keySet.contains(write.key));
+            discardedKeys.addAll(keySet);
+        }
+    }
+
+    /**
+     * 队列满时丢弃的条数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 队列中等待写入的条数
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    private boolean offer(PendingWrite write) {
+        if (overflowPolicy != WriteBehindOverflowPolicy.BLOCK) {
+            return queue.offer(write);
+        }
+        try {
+            return queue.offer(write, blockMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 后台线程：取出一批数据写入 redis，队列为空时等待
+     */
+    private void drainLoop() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                PendingWrite first = queue.poll(flushMillis, TimeUnit.MILLISECONDS);
+                synchronized (flushLock) {
+                    // first 在加锁前取出，期间被 discard 的不再写入；之后取出的都在 discard 之后提交
+                    if (first != null && !discardedKeys.contains(first.key)) {
+                        batch.add(first);
+                    }
+                    discardedKeys.clear();
+                    if (first == null) {
+                        continue;
+                    }
+                    queue.drainTo(batch, maxBatchSize - 1);
+                    if (!batch.isEmpty()) {
+                        this.flush(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("BatchCacheWriter 异步写入异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 同一个 key 只保留最后一次写入，按序列化方式和存储布局分组（通常只有一组），每个 key 带各自的过期时间批量写入
+     */
+    private void flush(List<PendingWrite> batch) {
+        Map<String, PendingWrite> latest = new LinkedHashMap<>((int) (batch.size() / 0.75f) + 1);
+        batch.forEach(write -> latest.put(write.key, write));
+
+        Map<RedisSerializer<?>, Map<HashBucketLayout, Map<String, Object>>> groups = new IdentityHashMap<>(4);
+        for (PendingWrite write : latest.values()) {
+            groups.computeIfAbsent(write.valueSerializer, serializer -> new IdentityHashMap<>(2))
+                .computeIfAbsent(write.bucketLayout, layout -> new LinkedHashMap<>())
+                .put(write.key, write.value);
+        }
+        groups.forEach((serializer, layouts) -> layouts.forEach((layout, map) ->
+            redisMultiCache.fillBatch(map, key -> latest.get(key).seconds, serializer, layout)));
+    }
+
+    /**
+     * 停止后台线程，并写完队列中剩余的数据
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+
+        synchronized (flushLock) {
+            List<PendingWrite> remaining = new ArrayList<>(queue.size());
+            queue.drainTo(remaining);
+            for (List<PendingWrite> chunk : CollUtil.partition(remaining, maxBatchSize)) {
+                try {
+                    this.flush(chunk);
+                } catch (Exception e) {
+                    log.error("BatchCacheWriter 关闭时写入异常", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待写入的一条数据
+     */
+    private static class PendingWrite {
+
+        private final String key;
+
+        private final Object value;
+
+        private final long seconds;
+
+        private final RedisSerializer<?> valueSerializer;
+
+        private final HashBucketLayout bucketLayout;
+
+        PendingWrite(String key, Object value, long seconds, RedisSerializer<?> valueSerializer, HashBucketLayout bucketLayout) {
+            this.key = key;
+            this.value = value;
+            this.seconds = seconds;
+            this.valueSerializer = valueSerializer;
+            this.bucketLayout = bucketLayout;
+        }
+    }
+}
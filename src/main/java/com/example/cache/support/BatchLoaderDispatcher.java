@@ -0,0 +1,156 @@
+package com.example.cache.support;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 单 key 请求合并器（类似 DataLoader）
+ * <p>
+ * 一个时间窗口内（或累计到 maxBatchSize 个 key）到达的单 key 请求合并成一次批量调用，
+ * 批量方法通常是被 @BatchCache 标注的方法，结果再分发给各个等待的调用方。
+ * 同一个窗口内重复的 key 只查询一次。
+ * 线程池拒绝时：达到 maxBatchSize 触发的批量调用由触发的调用线程执行；窗口到期触发的批量调用不在定时器线程执行，
+ * 等待的请求以 RejectedExecutionException 失败
+ * </p>
+ *
+ * @param <K> key 类型
+ * @param <V> value 类型
+ * @author zhuwei
+ * @Date 2020/12/18 PM3:05
+ */
+public class BatchLoaderDispatcher<K, V> {
+
+    private final Function<List<K>, Map<K, V>> batchFunction;
+
+    private final long windowMillis;
+
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Executor executor;
+
+    private final Object lock = new Object();
+
+    /**
+     * 当前窗口内等待的请求
+     */
+    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+
+    /**
+     * 当前窗口的定时触发任务
+     */
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param batchFunction 批量查询方法
+     * @param windowMillis  合并窗口（毫秒）
+     * @param maxBatchSize  单次合并的最大 key 数，达到后立即触发
+     * @param scheduler     窗口定时器
+     * @param executor      执行批量查询的线程池，队列满时应拒绝（AbortPolicy），不能由定时器线程执行
+     */
+    public BatchLoaderDispatcher(Function<List<K>, Map<K, V>> batchFunction, long windowMillis, int maxBatchSize,
+                                 ScheduledExecutorService scheduler, Executor executor) {
+        this.batchFunction = batchFunction;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.scheduler = scheduler;
+        this.executor = executor;
+    }
+
+    /**
+     * 异步获取
+     *
+     * @return 批量方法结果中不存在的 key 返回 null
+     */
+    public CompletableFuture<V> load(K key) {
+        CompletableFuture<V> future;
+        Map<K, CompletableFuture<V>> batch = null;
+        synchronized (lock) {
+            future = pending.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                pending.put(key, future);
+            }
+            if (pending.size() >= maxBatchSize) {
+                batch = this.takePending();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (batch != null) {
+            this.dispatch(batch, true);
+        }
+        return future;
+    }
+
+    /**
+     * 同步获取，批量方法的异常原样抛出
+     */
+    public V get(K key) {
+        try {
+            return this.load(key).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 窗口到期，执行当前窗口内的请求
+     */
+    private void flush() {
+        Map<K, CompletableFuture<V>> batch;
+        synchronized (lock) {
+            batch = this.takePending();
+        }
+        if (!batch.isEmpty()) {
+            this.dispatch(batch, false);
+        }
+    }
+
+    private Map<K, CompletableFuture<V>> takePending() {
+        Map<K, CompletableFuture<V>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    /**
+     * @param runOnReject 线程池拒绝时是否由当前线程执行
+     */
+    private void dispatch(Map<K, CompletableFuture<V>> batch, boolean runOnReject) {
+        Runnable task = () -> {
+            try {
+                Map<K, V> result = batchFunction.apply(new ArrayList<>(batch.keySet()));
+                batch.forEach((key, future) -> future.complete(result == null ? null : result.get(key)));
+            } catch (Throwable e) {
+                batch.values().forEach(future -> future.completeExceptionally(e));
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (runOnReject) {
+                task.run();
+            } else {
+                batch.values().forEach(future -> future.completeExceptionally(e));
+            }
+        }
+    }
+}
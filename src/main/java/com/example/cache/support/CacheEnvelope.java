@@ -0,0 +1,48 @@
+package com.example.cache.support;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 开启 refresh-ahead 时 redis 中存储的缓存对象，附带过期时间和加载耗时
+ * <p>
+ * 按 XFetch 算法提前刷新：now - delta * beta * ln(random()) >= expireAt 时需要刷新，
+ * 越接近过期、加载越慢，提前刷新的概率越大
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/23 AM10:30
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheEnvelope {
+
+    /**
+     * 缓存对象
+     */
+    private Object value;
+
+    /**
+     * 过期时间（毫秒时间戳）
+     */
+    private long expireAt;
+
+    /**
+     * 加载耗时（毫秒）
+     */
+    private long delta;
+
+    /**
+     * 是否需要提前刷新
+     *
+     * @param beta 提前系数，越大越早刷新，1.0 为默认值
+     */
+    public boolean shouldRefresh(double beta, long now) {
+        double random = ThreadLocalRandom.current().nextDouble();
+        return now - delta * beta * Math.log(random) >= expireAt;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.cache.support;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 缓存对象的 key 提取器
+ * <p>
+ * 每个 (class, 字段) 只解析一次 getter，优先通过 LambdaMetafactory 生成 Function，
+ * 无法生成时（如 getter 不可访问）退化为 MethodHandle 调用
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/9 AM11:02
+ */
+public final class KeyExtractors {
+
+    private static final Map<Class<?>, Map<String, Function<Object, Object>>> EXTRACTORS = new ConcurrentHashMap<>();
+
+    private KeyExtractors() {
+    }
+
+    /**
+     * 获取 key 提取器
+     *
+     * @param targetClass 缓存对象类型
+     * @param keyMapper   key对应的字段名
+     * @return 提取器
+     * @throws IllegalStateException 字段不存在或没有可用的 getter
+     */
+    public static Function<Object, Object> get(Class<?> targetClass, String keyMapper) {
+        return EXTRACTORS
+            .computeIfAbsent(targetClass, clazz -> new ConcurrentHashMap<>(4))
+            .computeIfAbsent(keyMapper, property -> create(targetClass, property));
+    }
+
+    private static Function<Object, Object> create(Class<?> targetClass, String keyMapper) {
+        PropertyDescriptor pd = BeanUtils.getPropertyDescriptor(targetClass, keyMapper);
+        if (pd == null || pd.getReadMethod() == null) {
+            throw new IllegalStateException("the keyMapper '" + keyMapper + "' has no getter in " + targetClass.getName());
+        }
+
+        Method getter = pd.getReadMethod();
+        if (Modifier.isPublic(getter.getModifiers()) && Modifier.isPublic(getter.getDeclaringClass().getModifiers())) {
+            try {
+                return lambda(getter);
+            } catch (Throwable e) {
+                // 类加载器隔离等情况下无法生成 lambda，使用 MethodHandle
+            }
+        }
+        return methodHandle(getter, keyMapper);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> lambda(Method getter) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle handle = lookup.unreflect(getter);
+        CallSite site = LambdaMetafactory.metafactory(lookup,
+            "apply",
+            MethodType.methodType(Function.class),
+            MethodType.methodType(Object.class, Object.class),
+            handle,
+            handle.type().wrap());
+        return (Function<Object, Object>) site.getTarget().invokeExact();
+    }
+
+    private static Function<Object, Object> methodHandle(Method getter, String keyMapper) {
+        MethodHandle handle;
+        try {
+            ReflectionUtils.makeAccessible(getter);
+            handle = MethodHandles.lookup().unreflect(getter).asType(MethodType.methodType(Object.class, Object.class));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("the getter of keyMapper '" + keyMapper + "' is not accessible: " + getter, e);
+        }
+        return value -> {
+            try {
+                return (Object) handle.invokeExact(value);
+            } catch (Throwable e) {
+                throw new IllegalStateException("failed to read keyMapper '" + keyMapper + "' from " + value, e);
+            }
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.cache.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.CollectionUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 跨节点加载租约的释放通知
+ * <p>
+ * 1 持有租约的节点加载并写回后，通过 redis pub/sub 发布释放的 key
+ * 2 等待其他节点加载的请求登记这些 key，收到通知后立即读取 redis，不再按固定间隔轮询
+ * 3 通知可能丢失（订阅断开、登记前已发布），等待方仍按退避间隔读取 redis 兜底
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/16 PM4:30
+ */
+@Slf4j
+public class LeaseReleaseListener implements MessageListener {
+
+    /**
+     * 消息格式：key1 \n key2 ...
+     */
+    private static final String SEPARATOR = "\n";
+
+    private final RedisTemplate redisTemplate;
+
+    private final byte[] channel;
+
+    /**
+     * 缓存 key -> 等待该 key 的请求
+     */
+    private final ConcurrentMap<String, Set<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    public LeaseReleaseListener(RedisTemplate redisTemplate, String channel) {
+        this.redisTemplate = redisTemplate;
+        this.channel = channel.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 登记等待的 key，调用方必须在 finally 中调用 {@link Waiter#close()}
+     */
+    public Waiter register(Collection<String> keys) {
+        Waiter waiter = new Waiter(keys);
+        keys.forEach(key -> waiters.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(waiter));
+        return waiter;
+    }
+
+    /**
+     * 发布租约释放通知，失败只记录日志，等待方按退避间隔读取 redis
+     */
+    @SuppressWarnings("unchecked")
+    public void publish(Collection<String> keys) {
+        if (CollectionUtils.isEmpty(keys)) {
+            return;
+        }
+        byte[] message = String.join(SEPARATOR, keys).getBytes(StandardCharsets.UTF_8);
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, message));
+        } catch (Exception e) {
+            log.error("LeaseReleaseListener 发布租约释放通知异常", e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        for (String key : new String(message.getBody(), StandardCharsets.UTF_8).split(SEPARATOR)) {
+            Set<Waiter> keyWaiters = waiters.get(key);
+            if (keyWaiters != null) {
+                keyWaiters.forEach(Waiter::signal);
+            }
+        }
+    }
+
+    /**
+     * 一次等待，登记的任一 key 被释放时唤醒
+     */
+    public class Waiter implements AutoCloseable {
+
+        private final Collection<String> keys;
+
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        private Waiter(Collection<String> keys) {
+            this.keys = keys;
+        }
+
+        private void signal() {
+            released.countDown();
+        }
+
+        /**
+         * @return 等待期间是否收到释放通知
+         */
+        public boolean await(long millis) throws InterruptedException {
+            return released.await(millis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void close() {
+            for (String key : keys) {
+                waiters.computeIfPresent(key, (k, keyWaiters) -> {
+                    keyWaiters.remove(this);
+                    return keyWaiters.isEmpty() ? null : keyWaiters;
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.cache.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 本 JVM 内按 key 合并并发加载（防止缓存击穿）
+ * <p>
+ * 同一个 key 同一时刻只有一个线程负责加载，其他线程等待该线程的结果
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/16 PM2:20
+ */
+public class SingleFlight {
+
+    /**
+     * 正在加载的 key，value 在加载完成后设置为加载结果（不存在为 null）
+     */
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 登记一批需要加载的 key
+     *
+     * @param keyList 缓存 key
+     * @return 自己负责加载的 key 和需要等待的 key；调用方必须在 finally 中调用 {@link Flight#finish()}
+     */
+    public Flight begin(List<String> keyList) {
+        Flight flight = new Flight(keyList.size());
+        for (int i = 0; i < keyList.size(); i++) {
+            String key = keyList.get(i);
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+            if (existing == null) {
+                flight.ownedIndexes.add(i);
+                flight.ownedKeys.add(key);
+                flight.ownedFutures.add(future);
+            } else {
+                flight.waitingIndexes.add(i);
+                flight.waitingFutures.add(existing);
+            }
+        }
+        return flight;
+    }
+
+    /**
+     * 一次登记的结果
+     */
+    public class Flight {
+
+        private final List<Integer> ownedIndexes;
+
+        private final List<String> ownedKeys;
+
+        private final List<CompletableFuture<Object>> ownedFutures;
+
+        private final List<Integer> waitingIndexes;
+
+        private final List<CompletableFuture<Object>> waitingFutures;
+
+        private Flight(int size) {
+            this.ownedIndexes = new ArrayList<>(size);
+            this.ownedKeys = new ArrayList<>(size);
+            this.ownedFutures = new ArrayList<>(size);
+            this.waitingIndexes = new ArrayList<>(0);
+            this.waitingFutures = new ArrayList<>(0);
+        }
+
+        /**
+         * 自己负责加载的元素下标（相对 begin 传入的 keyList）
+         */
+        public List<Integer> getOwnedIndexes() {
+            return ownedIndexes;
+        }
+
+        /**
+         * 需要等待其他线程加载的元素下标
+         */
+        public List<Integer> getWaitingIndexes() {
+            return waitingIndexes;
+        }
+
+        /**
+         * 需要等待的结果，与 {@link #getWaitingIndexes()} 一一对应
+         */
+        public List<CompletableFuture<Object>> getWaitingFutures() {
+            return waitingFutures;
+        }
+
+        /**
+         * 发布自己加载的结果，不在 values 中的 key 视为不存在
+         */
+        public void complete(Map<String, Object> values) {
+            for (int i = 0; i < ownedKeys.size(); i++) {
+                ownedFutures.get(i).complete(values.get(ownedKeys.get(i)));
+            }
+        }
+
+        /**
+         * 结束加载：未发布结果的 key（加载异常）以异常结束，等待方会自行重新加载
+         */
+        public void finish() {
+            for (int i = 0; i < ownedKeys.size(); i++) {
+                CompletableFuture<Object> future = ownedFutures.get(i);
+                if (!future.isDone()) {
+                    future.completeExceptionally(new IllegalStateException("load failed: " + ownedKeys.get(i)));
+                }
+                inFlight.remove(ownedKeys.get(i), future);
+            }
+        }
+    }
+}
@@ -43,4 +43,23 @@ public class CollUtil {
         Collections.addAll(arrayList, values);
         return arrayList;
     }
+
+    /**
+     * 按固定大小拆分List，返回的子List为原List的视图
+     *
+     * @param <T>  集合元素类型
+     * @param list 原List
+     * @param size 每个子List的最大长度，<=0 时不拆分
+     * @return 子List列表
+     */
+    public static <T> List<List<T>> partition(List<T> list, int size) {
+        if (size <= 0 || list.size() <= size) {
+            return Collections.singletonList(list);
+        }
+        List<List<T>> partitions = new ArrayList<>((list.size() + size - 1) / size);
+        for (int i = 0; i < list.size(); i += size) {
+            partitions.add(list.subList(i, Math.min(i + size, list.size())));
+        }
+        return partitions;
+    }
 }
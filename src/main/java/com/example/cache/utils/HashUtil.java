@@ -0,0 +1,68 @@
+package com.example.cache.utils;
+
+/**
+ * hash 工具
+ *
+ * @author zhuwei
+ * @Date 2020/12/29 PM3:20
+ */
+public class HashUtil {
+
+    /**
+     * MurmurHash64A，同样的数据和种子在各节点得到同样的结果（布隆过滤器的位置存在 redis 中）
+     */
+    @SuppressWarnings("fallthrough")
+    public static long murmur64(byte[] data, int seed) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+        long h = (seed & 0xffffffffL) ^ (data.length * m);
+
+        int blocks = data.length >>> 3;
+        for (int i = 0; i < blocks; i++) {
+            int offset = i << 3;
+            long k = (data[offset] & 0xffL)
+                | (data[offset + 1] & 0xffL) << 8
+                | (data[offset + 2] & 0xffL) << 16
+                | (data[offset + 3] & 0xffL) << 24
+                | (data[offset + 4] & 0xffL) << 32
+                | (data[offset + 5] & 0xffL) << 40
+                | (data[offset + 6] & 0xffL) << 48
+                | (data[offset + 7] & 0xffL) << 56;
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h ^= k;
+            h *= m;
+        }
+
+        int offset = blocks << 3;
+        switch (data.length & 7) {
+            case 7:
+                h ^= (data[offset + 6] & 0xffL) << 48;
+                // fall through
+            case 6:
+                h ^= (data[offset + 5] & 0xffL) << 40;
+                // fall through
+            case 5:
+                h ^= (data[offset + 4] & 0xffL) << 32;
+                // fall through
+            case 4:
+                h ^= (data[offset + 3] & 0xffL) << 24;
+                // fall through
+            case 3:
+                h ^= (data[offset + 2] & 0xffL) << 16;
+                // fall through
+            case 2:
+                h ^= (data[offset + 1] & 0xffL) << 8;
+                // fall through
+            case 1:
+                h ^= data[offset] & 0xffL;
+                h *= m;
+        }
+
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+        return h;
+    }
+}
@@ -0,0 +1,6 @@
+-- 批量写入缓存
+-- KEYS[i] 对应 ARGV[2i-1]（过期时间，单位秒）和 ARGV[2i]（序列化后的 value）
+for i = 1, #KEYS do
+    redis.call('SETEX', KEYS[i], ARGV[2 * i - 1], ARGV[2 * i])
+end
+return #KEYS
@@ -0,0 +1,40 @@
+-- 写入一个 hash 分桶
+-- KEYS[1] 桶，ARGV[1] 当前时间（毫秒时间戳），ARGV[2i]、ARGV[2i+1] 为 field 和 value
+-- value 的前 8 字节为该 field 的过期时间（毫秒时间戳，大端），见 HashBucketLayout
+local function expireAt(value)
+    if #value < 8 then
+        return 0
+    end
+    local t = 0
+    for i = 1, 8 do
+        t = t * 256 + string.byte(value, i)
+    end
+    return t
+end
+
+local now = tonumber(ARGV[1])
+local maxExpireAt = 0
+-- 清理已过期的 field，剩余 field 的最晚过期时间作为桶的过期时间
+local fields = redis.call('HGETALL', KEYS[1])
+for i = 1, #fields, 2 do
+    local t = expireAt(fields[i + 1])
+    if t <= now then
+        redis.call('HDEL', KEYS[1], fields[i])
+    elseif t > maxExpireAt then
+        maxExpireAt = t
+    end
+end
+for i = 2, #ARGV, 2 do
+    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+    local t = expireAt(ARGV[i + 1])
+    if t > maxExpireAt then
+        maxExpireAt = t
+    end
+end
+-- 桶随最后一个 field 一起过期，不会因为持续写入而一直存活
+if maxExpireAt > now then
+    redis.call('PEXPIREAT', KEYS[1], string.format('%.0f', maxExpireAt))
+else
+    redis.call('DEL', KEYS[1])
+end
+return (#ARGV - 1) / 2
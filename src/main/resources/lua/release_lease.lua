@@ -0,0 +1,9 @@
+-- 释放加载租约：只删除仍由 ARGV[1] 持有的 key，避免误删其他节点在租约过期后重新获取的租约
+local released = 0
+for i = 1, #KEYS do
+    if redis.call('GET', KEYS[i]) == ARGV[1] then
+        redis.call('DEL', KEYS[i])
+        released = released + 1
+    end
+end
+return released
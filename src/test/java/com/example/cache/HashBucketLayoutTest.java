@@ -0,0 +1,55 @@
+package com.example.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HashBucketLayout 分桶和 field value 的过期时间编码
+ *
+ * @author zhuwei
+ * @Date 2020/12/23 PM2:20
+ */
+class HashBucketLayoutTest {
+
+    private final HashBucketLayout layout = new HashBucketLayout("user:", 100);
+
+    @Test
+    void groupsByBucket() {
+        Map<String, List<Integer>> expected = new LinkedHashMap<>();
+        expected.put("user:bucket:0", Arrays.asList(0, 2));
+        expected.put("user:bucket:1", Collections.singletonList(1));
+        expected.put("user:bucket:-1", Collections.singletonList(3));
+        Assertions.assertEquals(expected, layout.group(Arrays.asList("user:1", "user:150", "user:99", "user:-1")));
+        Assertions.assertEquals("150", layout.field("user:150"));
+    }
+
+    @Test
+    void rejectsForeignOrNonNumericKey() {
+        Assertions.assertThrows(IllegalStateException.class, () -> layout.bucketKey("order:1"));
+        Assertions.assertThrows(IllegalStateException.class, () -> layout.bucketKey("user:abc"));
+    }
+
+    @Test
+    void decodesValueBeforeExpireAt() {
+        byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+        long expireAt = 1_608_000_000_000L;
+        byte[] encoded = HashBucketLayout.encodeValue(value, expireAt);
+
+        Assertions.assertArrayEquals(value, HashBucketLayout.decodeValue(encoded, expireAt - 1));
+        Assertions.assertNull(HashBucketLayout.decodeValue(encoded, expireAt));
+        Assertions.assertNull(HashBucketLayout.decodeValue(encoded, expireAt + 1));
+    }
+
+    @Test
+    void treatsMissingOrMalformedValueAsMiss() {
+        Assertions.assertNull(HashBucketLayout.decodeValue(null, 0L));
+        Assertions.assertNull(HashBucketLayout.decodeValue(new byte[]{1, 2, 3}, 0L));
+    }
+}
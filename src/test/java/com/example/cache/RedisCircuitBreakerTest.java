@@ -0,0 +1,159 @@
+package com.example.cache;
+
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisConnectionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * RedisCircuitBreaker 状态转换（CLOSED -> OPEN -> HALF_OPEN -> CLOSED）和失败分类
+ *
+ * @author zhuwei
+ * @Date 2020/12/25 PM4:40
+ */
+class RedisCircuitBreakerTest {
+
+    private ScheduledExecutorService scheduler;
+
+    private ExecutorService probeExecutor;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        probeExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+        probeExecutor.shutdownNow();
+    }
+
+    @Test
+    void opensAfterConsecutiveFailuresAndClosesAfterProbe() throws Exception {
+        CountDownLatch probing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean probeThreadIsScheduler = new AtomicBoolean(true);
+        Thread[] schedulerThread = new Thread[1];
+        scheduler.submit(() -> schedulerThread[0] = Thread.currentThread()).get();
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(3, 0, 20, () -> {
+            probeThreadIsScheduler.set(Thread.currentThread() == schedulerThread[0]);
+            probing.countDown();
+            await(release);
+            return true;
+        }, scheduler, probeExecutor);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        Assertions.assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+        Assertions.assertTrue(breaker.allowRequest());
+
+        breaker.onFailure();
+        Assertions.assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+        Assertions.assertFalse(breaker.allowRequest());
+        Assertions.assertEquals(1, breaker.getRejectedCount());
+
+        Assertions.assertTrue(probing.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(RedisCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        Assertions.assertFalse(breaker.allowRequest());
+        Assertions.assertFalse(probeThreadIsScheduler.get(), "probe must not run on the scheduler thread");
+        // 探测期间 scheduler 线程仍然可以执行其他任务
+        Assertions.assertTrue(scheduler.submit(() -> true).get(1, TimeUnit.SECONDS));
+
+        release.countDown();
+        waitFor(() -> breaker.getState() == RedisCircuitBreaker.State.CLOSED);
+        Assertions.assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void staysOpenWhileProbeFails() throws Exception {
+        AtomicBoolean available = new AtomicBoolean(false);
+        CountDownLatch probes = new CountDownLatch(2);
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(1, 0, 10, () -> {
+            probes.countDown();
+            return available.get();
+        }, scheduler, probeExecutor);
+
+        breaker.onFailure();
+        Assertions.assertTrue(probes.await(5, TimeUnit.SECONDS));
+        Assertions.assertNotEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+
+        available.set(true);
+        waitFor(() -> breaker.getState() == RedisCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void successResetsConsecutiveFailures() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(2, 0, 60_000, () -> true, scheduler, probeExecutor);
+        breaker.onFailure();
+        breaker.onSuccess(0L);
+        breaker.onFailure();
+        Assertions.assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void slowCallCountsAsFailure() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(1, 10, 60_000, () -> true, scheduler, probeExecutor);
+        breaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(5));
+        Assertions.assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(50));
+        Assertions.assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void onlyRedisFailuresOpen() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(1, 0, 60_000, () -> true, scheduler, probeExecutor);
+        long start = System.nanoTime();
+        breaker.record(start, new SerializationException("bad value"));
+        breaker.record(start, new IllegalStateException("the hash bucket requires a numeric id"));
+        breaker.record(start, new RedisSystemException("error", new RedisCommandExecutionException("WRONGTYPE")));
+        Assertions.assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.record(start, new CompletionException(new RedisCommandTimeoutException("timeout")));
+        Assertions.assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void classifiesFailures() {
+        Assertions.assertTrue(RedisCircuitBreaker.isRedisFailure(new RedisConnectionFailureException("down")));
+        Assertions.assertTrue(RedisCircuitBreaker.isRedisFailure(new QueryTimeoutException("timeout")));
+        Assertions.assertTrue(RedisCircuitBreaker.isRedisFailure(
+            new RedisSystemException("error", new RedisConnectionException("reset"))));
+        Assertions.assertTrue(RedisCircuitBreaker.isRedisFailure(new RedisCommandTimeoutException("timeout")));
+        Assertions.assertFalse(RedisCircuitBreaker.isRedisFailure(new RedisSystemException("error", new IllegalArgumentException())));
+        Assertions.assertFalse(RedisCircuitBreaker.isRedisFailure(new RedisCommandExecutionException("NOSCRIPT")));
+        Assertions.assertFalse(RedisCircuitBreaker.isRedisFailure(new SerializationException("bad value")));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "condition not reached in 5s");
+            Thread.sleep(10);
+        }
+    }
+}
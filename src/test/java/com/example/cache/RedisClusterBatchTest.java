@@ -0,0 +1,256 @@
+package com.example.cache;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * RedisMultiCache 在 redis cluster 下的批量读写
+ * <p>
+ * 在本地启动 3 个 redis-server 进程组成集群（端口 7100-7102），需要 redis-server / redis-cli；
+ * 设置环境变量 BATCH_CACHE_CLUSTER_TEST=true 时执行：BATCH_CACHE_CLUSTER_TEST=true mvn test -Dtest=RedisClusterBatchTest
+ * </p>
+ *
+ * @author zhuwei
+ * @Date 2020/12/22 PM2:30
+ */
+@EnabledIfEnvironmentVariable(named = "BATCH_CACHE_CLUSTER_TEST", matches = "true")
+class RedisClusterBatchTest {
+
+    private static final int[] PORTS = {7100, 7101, 7102};
+
+    private static final List<Process> NODES = new ArrayList<>();
+
+    private static File workDir;
+
+    private static LettuceConnectionFactory factory;
+
+    private static RedisTemplate<String, Object> redisTemplate;
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        Assertions.assertTrue(available("redis-server") && available("redis-cli"), "redis-server / redis-cli not found");
+
+        workDir = Files.createTempDirectory("batch-cache-cluster").toFile();
+        List<String> create = new ArrayList<>(Arrays.asList("redis-cli", "--cluster", "create"));
+        for (int port : PORTS) {
+            File dir = new File(workDir, String.valueOf(port));
+            dir.mkdirs();
+            NODES.add(new ProcessBuilder("redis-server", "--port", String.valueOf(port), "--cluster-enabled", "yes",
+                "--cluster-config-file", "nodes.conf", "--appendonly", "no", "--save", "")
+                .directory(dir).redirectErrorStream(true).redirectOutput(new File(dir, "redis.log")).start());
+            create.add("127.0.0.1:" + port);
+        }
+        for (int port : PORTS) {
+            waitFor(() -> "PONG".equals(cli(port, "PING")));
+        }
+        create.add("--cluster-yes");
+        exec(create);
+        for (int port : PORTS) {
+            waitFor(() -> cli(port, "CLUSTER", "INFO").contains("cluster_state:ok"));
+        }
+
+        RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration(
+            Arrays.stream(PORTS).mapToObj(port -> "127.0.0.1:" + port).collect(Collectors.toList()));
+        factory = new LettuceConnectionFactory(clusterConfig);
+        factory.afterPropertiesSet();
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(factory);
+        redisTemplate.setKeySerializer(StringRedisSerializer.UTF_8);
+        redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopCluster() {
+        if (factory != null) {
+            factory.destroy();
+        }
+        NODES.forEach(Process::destroy);
+    }
+
+    @Test
+    void pipelineKeepsOrderAcrossNodes() {
+        this.assertRoundTrip(this.newCache(BatchCommandStrategy.PIPELINE), "cluster:pipeline");
+    }
+
+    @Test
+    void multiKeyGroupsBySlot() {
+        this.assertRoundTrip(this.newCache(BatchCommandStrategy.MULTI_KEY), "cluster:mget");
+    }
+
+    @Test
+    void asyncKeepsOrderAcrossNodes() {
+        RedisMultiCache cache = this.newCache(BatchCommandStrategy.PIPELINE);
+        Map<String, Object> data = this.data("cluster:async", 500);
+        cache.putBatchAsync(data, key -> 60L, null).join();
+
+        List<String> keys = this.shuffledKeys(data);
+        List<Object> values = cache.listAsync(keys, null).join();
+        for (int i = 0; i < keys.size(); i++) {
+            Assertions.assertEquals(data.get(keys.get(i)), values.get(i));
+        }
+    }
+
+    /**
+     * 在 pipelineExecutor 的全部线程中调用带时间预算的读取，分片的回调在 callbackExecutor 中执行，不会互相等待到超时
+     */
+    @Test
+    void budgetedListInsidePipelineExecutor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ExecutorService callback = Executors.newFixedThreadPool(2);
+        try {
+            RedisMultiCache cache = this.newCache(BatchCommandStrategy.PIPELINE);
+            cache.setPipelineExecutor(executor);
+            cache.setCallbackExecutor(callback);
+            cache.setMaxPipelineSize(50);
+            Map<String, Object> data = this.data("cluster:budget", 500);
+            cache.putBatch(data, 60L);
+
+            List<String> keys = this.shuffledKeys(data);
+            List<Future<List<Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> cache.list(keys, null, null, 5_000L)));
+            }
+            for (Future<List<Object>> future : futures) {
+                List<Object> values = future.get(10, TimeUnit.SECONDS);
+                for (int i = 0; i < keys.size(); i++) {
+                    Assertions.assertEquals(data.get(keys.get(i)), values.get(i));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            callback.shutdownNow();
+        }
+    }
+
+    /**
+     * 手动迁移一个 slot，客户端拓扑未刷新时由 MOVED 重定向读取到迁移后的数据
+     */
+    @Test
+    void followsMovedAfterResharding() throws Exception {
+        RedisMultiCache cache = this.newCache(BatchCommandStrategy.PIPELINE);
+        Map<String, Object> data = this.data("cluster:moved", 100);
+        cache.putBatch(data, 60L);
+
+        String key = data.keySet().iterator().next();
+        int source = Arrays.stream(PORTS).filter(port -> "1".equals(cli(port, "EXISTS", key))).findFirst().getAsInt();
+        int target = source == PORTS[0] ? PORTS[1] : PORTS[0];
+        String slot = cli(source, "CLUSTER", "KEYSLOT", key);
+        String sourceId = cli(source, "CLUSTER", "MYID");
+        String targetId = cli(target, "CLUSTER", "MYID");
+
+        cli(target, "CLUSTER", "SETSLOT", slot, "IMPORTING", sourceId);
+        cli(source, "CLUSTER", "SETSLOT", slot, "MIGRATING", targetId);
+        for (String k : data.keySet()) {
+            if (slot.equals(cli(source, "CLUSTER", "KEYSLOT", k))) {
+                cli(source, "MIGRATE", "127.0.0.1", String.valueOf(target), k, "0", "5000");
+            }
+        }
+        cli(target, "CLUSTER", "SETSLOT", slot, "NODE", targetId);
+        cli(source, "CLUSTER", "SETSLOT", slot, "NODE", targetId);
+
+        List<String> keys = new ArrayList<>(data.keySet());
+        List<Object> values = cache.list(keys);
+        for (int i = 0; i < keys.size(); i++) {
+            Assertions.assertEquals(data.get(keys.get(i)), values.get(i));
+        }
+    }
+
+    private void assertRoundTrip(RedisMultiCache cache, String prefix) {
+        Map<String, Object> data = this.data(prefix, 1_000);
+        cache.putBatch(data, 60L);
+
+        List<String> keys = this.shuffledKeys(data);
+        keys.add(prefix + ":absent");
+        List<Object> values = cache.list(keys);
+        Assertions.assertEquals(keys.size(), values.size());
+        for (int i = 0; i < keys.size(); i++) {
+            Assertions.assertEquals(data.get(keys.get(i)), values.get(i));
+        }
+    }
+
+    private RedisMultiCache newCache(BatchCommandStrategy strategy) {
+        RedisMultiCache cache = new RedisMultiCache(null, redisTemplate, null, false);
+        cache.setCommandStrategy(strategy);
+        return cache;
+    }
+
+    private Map<String, Object> data(String prefix, int size) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            data.put(prefix + ":" + i, "value-" + i);
+        }
+        return data;
+    }
+
+    private List<String> shuffledKeys(Map<String, Object> data) {
+        List<String> keys = new ArrayList<>(data.keySet());
+        Collections.shuffle(keys, new Random(7));
+        return keys;
+    }
+
+    private static boolean available(String command) {
+        try {
+            return new ProcessBuilder(command, "--version").start().waitFor(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static String cli(int port, String... args) {
+        List<String> command = new ArrayList<>(Arrays.asList("redis-cli", "-p", String.valueOf(port)));
+        command.addAll(Arrays.asList(args));
+        return exec(command);
+    }
+
+    private static String exec(List<String> command) {
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String output;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                output = reader.lines().collect(Collectors.joining("\n")).trim();
+            }
+            process.waitFor(30, TimeUnit.SECONDS);
+            return output;
+        } catch (Exception e) {
+            throw new IllegalStateException("failed to run " + command, e);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("redis cluster not ready");
+            }
+            Thread.sleep(100);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.cache.aspect;
+
+import com.example.cache.annotation.BatchCacheEvict;
+import com.example.cache.annotation.BatchCachePut;
+import com.example.cache.service.BatchCacheClient;
+import com.example.cache.support.BatchCacheOperation;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BatchCacheAspect 的 @BatchCacheEvict / @BatchCachePut：方法正常返回后执行，抛出异常时不执行，
+ * afterCommit 时等到事务提交后执行、回滚时不执行
+ *
+ * @author zhuwei
+ * @Date 2020/12/25 PM4:30
+ */
+class BatchCacheAspectTest {
+
+    private final BatchCacheClient batchCacheClient = Mockito.mock(BatchCacheClient.class);
+
+    private final BatchCacheAspect aspect = new BatchCacheAspect(batchCacheClient);
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void evictsAfterMethodReturns() throws Throwable {
+        Method method = Source.class.getMethod("delete", List.class);
+        ProceedingJoinPoint joinPoint = this.joinPoint(method, new String[]{"ids"}, Arrays.asList(1L, 2L));
+
+        aspect.aroundEvict(joinPoint, method.getAnnotation(BatchCacheEvict.class));
+
+        ArgumentCaptor<BatchCacheOperation> operation = ArgumentCaptor.forClass(BatchCacheOperation.class);
+        ArgumentCaptor<Collection<?>> keys = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(batchCacheClient).evictCache(operation.capture(), keys.capture());
+        Assertions.assertEquals("user", operation.getValue().getKeyPrefix());
+        Assertions.assertEquals(Arrays.asList(1L, 2L), keys.getValue());
+    }
+
+    @Test
+    void doesNotEvictWhenMethodThrows() throws Throwable {
+        Method method = Source.class.getMethod("delete", List.class);
+        ProceedingJoinPoint joinPoint = this.joinPoint(method, new String[]{"ids"}, Arrays.asList(1L, 2L));
+        Mockito.when(joinPoint.proceed()).thenThrow(new IllegalStateException("delete failed"));
+
+        Assertions.assertThrows(IllegalStateException.class,
+            () -> aspect.aroundEvict(joinPoint, method.getAnnotation(BatchCacheEvict.class)));
+        Mockito.verifyNoInteractions(batchCacheClient);
+    }
+
+    @Test
+    void evictsAfterCommit() throws Throwable {
+        Method method = Source.class.getMethod("deleteAfterCommit", List.class);
+        ProceedingJoinPoint joinPoint = this.joinPoint(method, new String[]{"ids"}, Collections.singletonList(1L));
+        TransactionSynchronizationManager.initSynchronization();
+
+        aspect.aroundEvict(joinPoint, method.getAnnotation(BatchCacheEvict.class));
+        Mockito.verifyNoInteractions(batchCacheClient);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        Mockito.verify(batchCacheClient).evictCache(Mockito.any(), Mockito.eq(Collections.singletonList(1L)));
+    }
+
+    @Test
+    void putsReturnedMapCopy() throws Throwable {
+        Method method = Source.class.getMethod("update", List.class);
+        Map<Long, String> result = new HashMap<>();
+        result.put(1L, "a");
+        ProceedingJoinPoint joinPoint = this.joinPoint(method, new String[]{"values"}, Collections.singletonList("a"));
+        Mockito.when(joinPoint.proceed()).thenReturn(result);
+
+        Assertions.assertSame(result, aspect.aroundPut(joinPoint, method.getAnnotation(BatchCachePut.class)));
+        result.put(2L, "b");
+
+        Mockito.verify(batchCacheClient).putCache(Mockito.any(), Mockito.eq(Collections.singletonMap(1L, "a")));
+    }
+
+    @Test
+    void putsAfterCommitAndSkipsRollback() throws Throwable {
+        Method method = Source.class.getMethod("updateAfterCommit", List.class);
+        ProceedingJoinPoint joinPoint = this.joinPoint(method, new String[]{"values"}, Collections.singletonList("a"));
+        Mockito.when(joinPoint.proceed()).thenReturn(Collections.singletonMap(1L, "a"));
+        TransactionSynchronizationManager.initSynchronization();
+
+        aspect.aroundPut(joinPoint, method.getAnnotation(BatchCachePut.class));
+        Mockito.verifyNoInteractions(batchCacheClient);
+
+        // 回滚：只调用 afterCompletion，不写入
+        TransactionSynchronizationManager.getSynchronizations()
+            .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        Mockito.verifyNoInteractions(batchCacheClient);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        Mockito.verify(batchCacheClient).putCache(Mockito.any(), Mockito.eq(Collections.singletonMap(1L, "a")));
+    }
+
+    @Test
+    void putsImmediatelyWithoutTransaction() throws Throwable {
+        Method method = Source.class.getMethod("updateAfterCommit", List.class);
+        ProceedingJoinPoint joinPoint = this.joinPoint(method, new String[]{"values"}, Collections.singletonList("a"));
+        Mockito.when(joinPoint.proceed()).thenReturn(Collections.singletonMap(1L, "a"));
+
+        aspect.aroundPut(joinPoint, method.getAnnotation(BatchCachePut.class));
+        Mockito.verify(batchCacheClient).putCache(Mockito.any(), Mockito.eq(Collections.singletonMap(1L, "a")));
+    }
+
+    private ProceedingJoinPoint joinPoint(Method method, String[] parameterNames, Object arg) {
+        MethodSignature signature = Mockito.mock(MethodSignature.class);
+        Mockito.when(signature.getMethod()).thenReturn(method);
+        Mockito.when(signature.getParameterNames()).thenReturn(parameterNames);
+        ProceedingJoinPoint joinPoint = Mockito.mock(ProceedingJoinPoint.class);
+        Mockito.when(joinPoint.getSignature()).thenReturn(signature);
+        Mockito.when(joinPoint.getArgs()).thenReturn(new Object[]{arg});
+        return joinPoint;
+    }
+
+    static class Source {
+
+        @BatchCacheEvict(value = "user", key = "ids")
+        public void delete(List<Long> ids) {
+        }
+
+        @BatchCacheEvict(value = "user", key = "ids", afterCommit = true)
+        public void deleteAfterCommit(List<Long> ids) {
+        }
+
+        @BatchCachePut(value = "user")
+        public Map<Long, String> update(List<String> values) {
+            return null;
+        }
+
+        @BatchCachePut(value = "user", afterCommit = true)
+        public Map<Long, String> updateAfterCommit(List<String> values) {
+            return null;
+        }
+    }
+}
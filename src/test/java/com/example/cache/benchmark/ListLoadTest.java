@@ -0,0 +1,435 @@
+package com.example.cache.benchmark;
+
+import com.example.cache.CacheApplication;
+import com.example.cache.annotation.BatchCache;
+import com.example.cache.entity.User;
+import com.example.cache.service.BatchCacheClient;
+import com.example.cache.service.ICacheTestService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * /cache/list 端到端压测：启动本地 redis-server 和 CacheApplication，多线程通过 HTTP 调用 CacheTestController.list
+ * <p>
+ * 需要本地安装 redis-server，运行方式：
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.cache.benchmark.ListLoadTest
+ * 可通过以下参数调整：
+ * -Dredis.port（默认 6390，启动的 redis-server 端口）/ -Dredis.external=true（不启动 redis-server，使用 -Dredis.host:-Dredis.port 上已有的 redis）
+ * -Dthreads（并发数，默认 16）/ -Dduration.seconds（默认 30）/ -Dwarmup.seconds（默认 5）
+ * -Dbatch.size（每次请求的 id 数，默认 100）/ -Dkey.space（热点 id 数，默认 100000）
+ * -Ddistribution（uniform / zipf，默认 zipf）/ -Dzipf.exponent（默认 0.99）/ -Dhit.ratio（默认 0.9）/ -Dpath（默认 /cache/list）
+ * redis 地址、database 和连接池大小以命令行参数传给应用，覆盖 application.yml；其他应用配置可通过 -Dexec.args="--xxx=yyy" 传入
+ * </p>
+ * 命中率的控制：启动后先把 1..key.space 全部加载进缓存，压测时每个 id 以 hit.ratio 的概率按分布从这些 id 中选取，
+ * 否则取一个从未请求过的新 id，因此命中率不会随压测时间上升。
+ * 输出吞吐量、p50/p99/p999 延迟、压测期间 redis 各命令的调用次数（INFO commandstats）以及加载方法的调用次数
+ *
+ * @author zhuwei
+ * @Date 2020/12/24 PM4:40
+ */
+public class ListLoadTest {
+
+    private static final String CACHE_NAME = "loadtest:user";
+
+    public static void main(String[] args) throws Exception {
+        String host = System.getProperty("redis.host", "127.0.0.1");
+        int port = Integer.getInteger("redis.port", 6390);
+        boolean external = Boolean.getBoolean("redis.external");
+        int threads = Integer.getInteger("threads", 16);
+        int durationSeconds = Integer.getInteger("duration.seconds", 30);
+        int warmupSeconds = Integer.getInteger("warmup.seconds", 5);
+        int batchSize = Integer.getInteger("batch.size", 100);
+        int keySpace = Integer.getInteger("key.space", 100_000);
+        double hitRatio = Double.parseDouble(System.getProperty("hit.ratio", "0.9"));
+        String path = System.getProperty("path", "/cache/list");
+        IdGenerator generator = "uniform".equalsIgnoreCase(System.getProperty("distribution", "zipf"))
+            ? new UniformGenerator(keySpace)
+            : new ZipfGenerator(keySpace, Double.parseDouble(System.getProperty("zipf.exponent", "0.99")));
+
+        Process redis = external ? null : startRedis(port);
+        ConfigurableApplicationContext context = null;
+        try {
+            // 以命令行参数传入，优先级高于 application.yml（properties(...) 只是默认值，会被 yml 覆盖）
+            List<String> applicationArgs = new ArrayList<>(Arrays.asList(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=warn",
+                "--spring.redis.host=" + host,
+                "--spring.redis.port=" + port,
+                "--spring.redis.database=0",
+                "--spring.redis.lettuce.pool.max-active=" + Math.max(8, threads),
+                "--spring.redis.lettuce.pool.max-idle=" + Math.max(8, threads)));
+            applicationArgs.addAll(Arrays.asList(args));
+            context = new SpringApplicationBuilder(CacheApplication.class, LoadTestBeans.class)
+                .run(applicationArgs.toArray(new String[0]));
+            String url = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port") + path;
+            LoadTestUserService userService = context.getBean(LoadTestUserService.class);
+            RedisConnectionFactory connectionFactory = context.getBean(RedisConnectionFactory.class);
+            RestTemplate restTemplate = new RestTemplate();
+            // 启动时不再清除 redis，切换缓存版本，外部 redis 中上一次运行留下的缓存不影响命中率
+            context.getBean(BatchCacheClient.class).invalidateAll(CACHE_NAME);
+
+            // 预热：加载全部热点 id，之后按分布选取的 id 都能命中缓存
+            List<Long> ids = new ArrayList<>(batchSize);
+            for (long id = 1; id <= keySpace; id++) {
+                ids.add(id);
+                if (ids.size() == batchSize || id == keySpace) {
+                    restTemplate.postForEntity(url, ids, String.class);
+                    ids = new ArrayList<>(batchSize);
+                }
+            }
+            Workload workload = new Workload(generator, keySpace, batchSize, hitRatio);
+            run(url, restTemplate, workload, threads, warmupSeconds);
+
+            Map<String, Long> commandsBefore = commandCalls(connectionFactory);
+            long invocationsBefore = userService.getInvocations();
+            long loadedBefore = userService.getLoadedIds();
+            Result result = run(url, restTemplate, workload, threads, durationSeconds);
+            Map<String, Long> commandsAfter = commandCalls(connectionFactory);
+
+            report(result, durationSeconds, commandsBefore, commandsAfter,
+                userService.getInvocations() - invocationsBefore, userService.getLoadedIds() - loadedBefore);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            if (redis != null) {
+                redis.destroy();
+            }
+        }
+    }
+
+    /**
+     * threads 个线程持续发送请求，直到 seconds 秒后
+     */
+    private static Result run(String url, RestTemplate restTemplate, Workload workload, int threads, int seconds)
+        throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                Result result = new Result();
+                while (System.nanoTime() < deadline) {
+                    List<Long> ids = workload.next();
+                    long start = System.nanoTime();
+                    try {
+                        restTemplate.postForEntity(url, ids, String.class);
+                        result.record(System.nanoTime() - start, ids.size());
+                    } catch (Exception e) {
+                        result.errors++;
+                    }
+                }
+                return result;
+            }));
+        }
+        Result total = new Result();
+        for (Future<Result> future : futures) {
+            total.merge(future.get());
+        }
+        executor.shutdown();
+        return total;
+    }
+
+    private static void report(Result result, int seconds, Map<String, Long> commandsBefore,
+                               Map<String, Long> commandsAfter, long invocations, long loadedIds) {
+        long[] latencies = Arrays.copyOf(result.latencies, result.count);
+        Arrays.sort(latencies);
+        System.out.printf("requests: %d, errors: %d, keys: %d%n", result.count, result.errors, result.keys);
+        System.out.printf("throughput: %.1f req/s, %.1f keys/s%n",
+            result.count / (double) seconds, result.keys / (double) seconds);
+        System.out.printf("latency(ms): p50=%.2f p99=%.2f p999=%.2f max=%.2f%n",
+            percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999),
+            percentile(latencies, 1.0));
+        System.out.printf("loader: invocations=%d, ids=%d, observed hit ratio=%.4f%n",
+            invocations, loadedIds, result.keys == 0 ? 0 : 1 - loadedIds / (double) result.keys);
+
+        System.out.printf("%-16s %12s %14s%n", "redis command", "calls", "per request");
+        long totalCalls = 0;
+        for (Map.Entry<String, Long> entry : commandsAfter.entrySet()) {
+            // INFO 命令本身不计入
+            if ("info".equals(entry.getKey())) {
+                continue;
+            }
+            long calls = entry.getValue() - commandsBefore.getOrDefault(entry.getKey(), 0L);
+            if (calls > 0) {
+                totalCalls += calls;
+                System.out.printf("%-16s %12d %14.2f%n", entry.getKey(), calls, calls / (double) Math.max(result.count, 1));
+            }
+        }
+        System.out.printf("%-16s %12d %14.2f%n", "total", totalCalls, totalCalls / (double) Math.max(result.count, 1));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * INFO commandstats 中各命令的累计调用次数
+     */
+    private static Map<String, Long> commandCalls(RedisConnectionFactory connectionFactory) {
+        Properties info;
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            info = connection.info("commandstats");
+        }
+        Map<String, Long> calls = new TreeMap<>();
+        if (info == null) {
+            return calls;
+        }
+        for (String name : info.stringPropertyNames()) {
+            if (!name.startsWith("cmdstat_")) {
+                continue;
+            }
+            // calls=123,usec=456,usec_per_call=3.71
+            for (String field : info.getProperty(name).split(",")) {
+                if (field.startsWith("calls=")) {
+                    calls.put(name.substring("cmdstat_".length()), Long.parseLong(field.substring("calls=".length())));
+                }
+            }
+        }
+        return calls;
+    }
+
+    private static Process startRedis(int port) throws Exception {
+        File dir = Files.createTempDirectory("batch-cache-load-test").toFile();
+        Process process;
+        try {
+            process = new ProcessBuilder("redis-server", "--port", String.valueOf(port), "--save", "",
+                "--appendonly", "no")
+                .directory(dir).redirectErrorStream(true).redirectOutput(new File(dir, "redis.log")).start();
+        } catch (Exception e) {
+            throw new IllegalStateException("redis-server not found, install it or run with -Dredis.external=true", e);
+        }
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (!ping(port)) {
+            if (System.currentTimeMillis() > deadline || !process.isAlive()) {
+                process.destroy();
+                throw new IllegalStateException("redis-server not ready, see " + new File(dir, "redis.log"));
+            }
+            Thread.sleep(100);
+        }
+        return process;
+    }
+
+    private static boolean ping(int port) {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write("PING\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            byte[] reply = new byte[7];
+            InputStream in = socket.getInputStream();
+            int read = in.read(reply);
+            return read > 0 && new String(reply, 0, read, StandardCharsets.US_ASCII).startsWith("+PONG");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 单个线程的统计结果
+     */
+    private static class Result {
+
+        private long[] latencies = new long[1024];
+
+        private int count;
+
+        private long keys;
+
+        private long errors;
+
+        void record(long nanos, int size) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            keys += size;
+        }
+
+        void merge(Result other) {
+            for (int i = 0; i < other.count; i++) {
+                this.record(other.latencies[i], 0);
+            }
+            keys += other.keys;
+            errors += other.errors;
+        }
+    }
+
+    /**
+     * 生成每次请求的 id 列表：以 hitRatio 的概率从已缓存的 1..keySpace 中按分布选取，否则取一个新 id
+     */
+    private static class Workload {
+
+        private final IdGenerator generator;
+
+        private final int batchSize;
+
+        private final double hitRatio;
+
+        private final AtomicLong nextNewId;
+
+        Workload(IdGenerator generator, int keySpace, int batchSize, double hitRatio) {
+            this.generator = generator;
+            this.batchSize = batchSize;
+            this.hitRatio = hitRatio;
+            this.nextNewId = new AtomicLong(keySpace);
+        }
+
+        List<Long> next() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            // 同一次请求中的 id 去重，倾斜分布下热点 id 会被重复选中
+            Set<Long> ids = new LinkedHashSet<>(batchSize * 2);
+            while (ids.size() < batchSize) {
+                ids.add(random.nextDouble() < hitRatio ? generator.next(random) : nextNewId.incrementAndGet());
+            }
+            return new ArrayList<>(ids);
+        }
+    }
+
+    private interface IdGenerator {
+
+        /**
+         * @return 1..keySpace 中的一个 id
+         */
+        long next(ThreadLocalRandom random);
+    }
+
+    private static class UniformGenerator implements IdGenerator {
+
+        private final int keySpace;
+
+        UniformGenerator(int keySpace) {
+            this.keySpace = keySpace;
+        }
+
+        @Override
+        public long next(ThreadLocalRandom random) {
+            return random.nextInt(keySpace) + 1L;
+        }
+    }
+
+    /**
+     * Zipf 分布：排名为 k 的 id 被选中的概率与 1 / k^exponent 成正比，id 即排名
+     */
+    private static class ZipfGenerator implements IdGenerator {
+
+        private final double[] cumulative;
+
+        ZipfGenerator(int keySpace, double exponent) {
+            cumulative = new double[keySpace];
+            double sum = 0;
+            for (int k = 1; k <= keySpace; k++) {
+                sum += 1 / Math.pow(k, exponent);
+                cumulative[k - 1] = sum;
+            }
+            for (int i = 0; i < keySpace; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        @Override
+        public long next(ThreadLocalRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return (index >= 0 ? index : -index - 1) + 1L;
+        }
+    }
+
+    /**
+     * 压测用的 bean，作为启动类传入，不在组件扫描范围内
+     */
+    public static class LoadTestBeans {
+
+        @Bean
+        @Primary
+        public LoadTestUserService loadTestUserService() {
+            return new LoadTestUserService();
+        }
+    }
+
+    /**
+     * 替换演示用的 CacheTestServiceImpl：任意 id 都能查到用户，并统计加载方法的调用次数
+     */
+    public static class LoadTestUserService implements ICacheTestService {
+
+        private final AtomicLong invocations = new AtomicLong();
+
+        private final AtomicLong loadedIds = new AtomicLong();
+
+        /**
+         * 通过方法读取：容器中的 bean 是 cglib 代理，直接访问代理对象的字段为 null
+         */
+        public long getInvocations() {
+            return invocations.get();
+        }
+
+        public long getLoadedIds() {
+            return loadedIds.get();
+        }
+
+        @Override
+        public User getById(Long userId) {
+            return new User(userId, "user-" + userId);
+        }
+
+        @BatchCache(value = CACHE_NAME, seconds = 3600, nullSeconds = 60)
+        @Override
+        public Map<Long, User> listByIds(List<Long> userIdList) {
+            invocations.incrementAndGet();
+            loadedIds.addAndGet(userIdList.size());
+            Map<Long, User> userMap = new HashMap<>(userIdList.size() * 2);
+            for (Long userId : userIdList) {
+                userMap.put(userId, new User(userId, "user-" + userId));
+            }
+            return userMap;
+        }
+
+        @BatchCache(value = CACHE_NAME, seconds = 3600, nullSeconds = 60)
+        @Override
+        public CompletableFuture<Map<Long, User>> listByIdsAsync(List<Long> userIdList) {
+            return CompletableFuture.completedFuture(this.listByIds(userIdList));
+        }
+
+        @Override
+        public Map<Long, User> updateUsers(List<User> userList) {
+            Map<Long, User> userMap = new HashMap<>(userList.size() * 2);
+            userList.forEach(user -> userMap.put(user.getId(), user));
+            return userMap;
+        }
+
+        @Override
+        public void deleteByIds(List<Long> userIdList) {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.cache.benchmark;
+
+import com.example.cache.RedisMultiCache;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * RedisMultiCache.list 在不同批量大小下的延迟对比（拆分前 / 拆分后）
+ * <p>
+ * 需要本地 redis，运行方式：
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.cache.benchmark.PipelineLatencyBenchmark
+ * 可通过 -Dredis.host / -Dredis.port / -Dmax.pipeline.size 调整
+ * </p>
+ * 输出大批量调用自身的 p50/p99，以及同时进行的小批量（10个key）调用的 p99，用于观察大 pipeline 对其他调用方的影响
+ *
+ * @author zhuwei
+ * @Date 2020/12/4 AM10:20
+ */
+public class PipelineLatencyBenchmark {
+
+    private static final int[] BATCH_SIZES = {100, 1_000, 5_000, 10_000, 50_000};
+
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) throws Exception {
+        String host = System.getProperty("redis.host", "127.0.0.1");
+        int port = Integer.getInteger("redis.port", 6379);
+        int maxPipelineSize = Integer.getInteger("max.pipeline.size", 500);
+
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port),
+            LettucePoolingClientConfiguration.defaultConfiguration());
+        factory.afterPropertiesSet();
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(factory);
+        redisTemplate.setKeySerializer(StringRedisSerializer.UTF_8);
+        redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+
+        ExecutorService pipelineExecutor = Executors.newFixedThreadPool(4);
+        RedisMultiCache before = new RedisMultiCache(null, redisTemplate, null, false);
+        RedisMultiCache after = new RedisMultiCache(null, redisTemplate, null, false);
+        after.setMaxPipelineSize(maxPipelineSize);
+        after.setPipelineExecutor(pipelineExecutor);
+
+        // 预先写入数据
+        int maxSize = BATCH_SIZES[BATCH_SIZES.length - 1];
+        Map<String, Object> data = new HashMap<>(maxSize * 2);
+        for (int i = 0; i < maxSize; i++) {
+            data.put(key(i), "value-" + i);
+        }
+        after.putBatch(data, 600L);
+
+        System.out.printf("%-8s %-7s %10s %10s %14s%n", "batch", "mode", "p50(ms)", "p99(ms)", "small p99(ms)");
+        for (int batchSize : BATCH_SIZES) {
+            List<String> keys = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                keys.add(key(i));
+            }
+            run("before", batchSize, keys, before);
+            run("after", batchSize, keys, after);
+        }
+
+        pipelineExecutor.shutdown();
+        factory.destroy();
+    }
+
+    private static void run(String mode, int batchSize, List<String> keys, RedisMultiCache cache) throws Exception {
+        // 后台持续发起小批量请求，统计其延迟
+        List<String> smallKeys = keys.subList(0, Math.min(10, keys.size()));
+        List<Long> smallLatencies = new ArrayList<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread smallCaller = new Thread(() -> {
+            while (running.get()) {
+                long start = System.nanoTime();
+                cache.list(smallKeys);
+                synchronized (smallLatencies) {
+                    smallLatencies.add(System.nanoTime() - start);
+                }
+            }
+        });
+        smallCaller.start();
+
+        long[] latencies = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            cache.list(keys);
+            latencies[i] = System.nanoTime() - start;
+        }
+        running.set(false);
+        smallCaller.join();
+
+        long[] small;
+        synchronized (smallLatencies) {
+            small = smallLatencies.stream().mapToLong(Long::longValue).toArray();
+        }
+        System.out.printf("%-8d %-7s %10.2f %10.2f %14.2f%n", batchSize, mode,
+            percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(small, 0.99));
+    }
+
+    private static double percentile(long[] nanos, double p) {
+        if (nanos.length == 0) {
+            return 0;
+        }
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static String key(int i) {
+        return "benchmark:pipeline:" + i;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.cache.codec;
+
+import com.example.cache.entity.User;
+import com.example.cache.support.CacheEnvelope;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Arrays;
+
+/**
+ * BatchValueSerializer 读写：缓存对象、空值标记、refresh-ahead 包装，以及损坏数据的处理
+ *
+ * @author zhuwei
+ * @Date 2020/12/24 PM2:10
+ */
+class BatchValueSerializerTest {
+
+    private final BatchValueSerializer json = new BatchValueSerializer(new JsonBatchCacheCodec(), User.class);
+
+    private final BatchValueSerializer cbor = new BatchValueSerializer(new CborBatchCacheCodec(), User.class);
+
+    @Test
+    void roundTripsValue() {
+        User user = new User(1L, "张三");
+        Assertions.assertEquals(user, json.deserialize(json.serialize(user)));
+        Assertions.assertEquals(user, cbor.deserialize(cbor.serialize(user)));
+    }
+
+    @Test
+    void roundTripsNullMarker() {
+        byte[] bytes = json.serialize(NullValue.INSTANCE);
+        Assertions.assertArrayEquals(new byte[]{1}, bytes);
+        Assertions.assertSame(NullValue.INSTANCE, json.deserialize(bytes));
+        Assertions.assertNull(json.serialize(null));
+        Assertions.assertNull(json.deserialize(null));
+        Assertions.assertNull(json.deserialize(new byte[0]));
+    }
+
+    @Test
+    void roundTripsEnvelope() {
+        CacheEnvelope envelope = new CacheEnvelope(new User(2L, "李四"), 1_608_000_000_000L, 35L);
+        Object read = cbor.deserialize(cbor.serialize(envelope));
+        Assertions.assertEquals(envelope, read);
+    }
+
+    @Test
+    void rejectsTruncatedEnvelope() {
+        byte[] bytes = json.serialize(new CacheEnvelope(new User(3L, "王五"), 1L, 2L));
+        Assertions.assertThrows(SerializationException.class, () -> json.deserialize(Arrays.copyOf(bytes, 10)));
+    }
+
+    @Test
+    void rejectsTruncatedValue() {
+        byte[] bytes = json.serialize(new User(4L, "赵六"));
+        Assertions.assertThrows(SerializationException.class, () -> json.deserialize(Arrays.copyOf(bytes, bytes.length / 2)));
+    }
+
+    @Test
+    void rejectsUnknownTag() {
+        SerializationException e = Assertions.assertThrows(SerializationException.class,
+            () -> json.deserialize("{\"id\":1}".getBytes()));
+        Assertions.assertTrue(e.getMessage().contains("tag"));
+    }
+}
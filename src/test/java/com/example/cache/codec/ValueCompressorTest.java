@@ -0,0 +1,102 @@
+package com.example.cache.codec;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * ValueCompressor 压缩读写：阈值、未压缩的旧数据、关闭压缩后读取，以及损坏数据的校验
+ *
+ * @author zhuwei
+ * @Date 2020/12/25 PM2:30
+ */
+class ValueCompressorTest {
+
+    private static final String LARGE = repeat("{\"id\":1,\"name\":\"batch-cache\"}", 200);
+
+    private final RedisSerializer<Object> serializer = new ValueCompressor(true, 64).wrap(StringRedisSerializer.UTF_8);
+
+    @Test
+    void roundTripsCompressedValue() {
+        byte[] bytes = serializer.serialize(LARGE);
+        Assertions.assertEquals((byte) 0xFF, bytes[0]);
+        Assertions.assertTrue(bytes.length < LARGE.length());
+        Assertions.assertEquals(LARGE, serializer.deserialize(bytes));
+    }
+
+    @Test
+    void keepsSmallValueUncompressed() {
+        byte[] bytes = serializer.serialize("small");
+        Assertions.assertArrayEquals("small".getBytes(StandardCharsets.UTF_8), bytes);
+        Assertions.assertEquals("small", serializer.deserialize(bytes));
+    }
+
+    @Test
+    void wrapsEachSerializerOnce() {
+        ValueCompressor compressor = new ValueCompressor(true, 64);
+        RedisSerializer<Object> wrapped = compressor.wrap(StringRedisSerializer.UTF_8);
+        Assertions.assertSame(wrapped, compressor.wrap(StringRedisSerializer.UTF_8));
+        Assertions.assertSame(wrapped, compressor.wrap(wrapped), "already wrapped serializer is not wrapped again");
+    }
+
+    @Test
+    void readsLegacyUncompressedBytes() {
+        byte[] legacy = LARGE.getBytes(StandardCharsets.UTF_8);
+        Assertions.assertEquals(LARGE, serializer.deserialize(legacy));
+    }
+
+    @Test
+    void readsCompressedValueAfterDisabled() {
+        byte[] bytes = serializer.serialize(LARGE);
+        RedisSerializer<Object> disabled = new ValueCompressor(false, 64).wrap(StringRedisSerializer.UTF_8);
+        Assertions.assertArrayEquals(LARGE.getBytes(StandardCharsets.UTF_8), disabled.serialize(LARGE));
+        Assertions.assertEquals(LARGE, disabled.deserialize(bytes));
+    }
+
+    @Test
+    void rejectsTruncatedValue() {
+        byte[] bytes = serializer.serialize(LARGE);
+        Assertions.assertThrows(SerializationException.class, () -> serializer.deserialize(Arrays.copyOf(bytes, bytes.length - 5)));
+    }
+
+    @Test
+    void rejectsNegativeOriginalLength() {
+        byte[] bytes = serializer.serialize(LARGE);
+        bytes[2] = (byte) 0x80;
+        Assertions.assertThrows(SerializationException.class, () -> serializer.deserialize(bytes));
+    }
+
+    @Test
+    void rejectsOversizedOriginalLength() {
+        byte[] bytes = serializer.serialize(LARGE);
+        bytes[2] = 0x7F;
+        Assertions.assertThrows(SerializationException.class, () -> serializer.deserialize(bytes));
+    }
+
+    @Test
+    void rejectsMismatchedOriginalLength() {
+        byte[] bytes = serializer.serialize(LARGE);
+        bytes[5]++;
+        Assertions.assertThrows(SerializationException.class, () -> serializer.deserialize(bytes));
+    }
+
+    @Test
+    void rejectsUnknownAlgorithm() {
+        byte[] bytes = serializer.serialize(LARGE);
+        bytes[1] = 9;
+        Assertions.assertThrows(SerializationException.class, () -> serializer.deserialize(bytes));
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder(value.length() * times);
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
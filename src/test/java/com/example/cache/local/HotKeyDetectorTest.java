@@ -0,0 +1,106 @@
+package com.example.cache.local;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * HotKeyDetector 热点识别：达到阈值后成为热点、topK 已满时替换次数最少的、窗口结束时重新判断、hashCode 相同的 key 分开计数
+ *
+ * @author zhuwei
+ * @Date 2020/12/29 PM3:00
+ */
+class HotKeyDetectorTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * 窗口足够长，由测试调用 rotate 结束窗口
+     */
+    private final HotKeyDetector detector = new HotKeyDetector(1024, 5, 2, 3_600_000L, 2L, scheduler);
+
+    @AfterEach
+    void tearDown() {
+        detector.destroy();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void promotesAtThreshold() {
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertFalse(detector.record("user:1"));
+        }
+        Assertions.assertFalse(detector.isHot("user:1"));
+
+        Assertions.assertTrue(detector.record("user:1"));
+        Assertions.assertTrue(detector.isHot("user:1"));
+        Assertions.assertEquals(1, detector.getHotKeyCount());
+    }
+
+    @Test
+    void replacesColdestWhenTopKIsFull() {
+        this.recordTimes("user:1", 10);
+        // user:2 在第 5 次访问时成为热点，记录的次数为 5
+        this.recordTimes("user:2", 6);
+        Assertions.assertEquals(2, detector.getHotKeyCount());
+
+        // 未超过已满热点集合中的最小次数，不替换
+        this.recordTimes("user:3", 5);
+        Assertions.assertFalse(detector.isHot("user:3"));
+
+        Assertions.assertTrue(detector.record("user:3"));
+        Assertions.assertTrue(detector.isHot("user:3"));
+        Assertions.assertFalse(detector.isHot("user:2"));
+        Assertions.assertTrue(detector.isHot("user:1"));
+        Assertions.assertEquals(2, detector.getHotKeyCount());
+    }
+
+    @Test
+    void rotateKeepsOnlyKeysStillHot() {
+        this.recordTimes("user:1", 5);
+        this.recordTimes("user:2", 5);
+        Assertions.assertEquals(2, detector.getHotKeyCount());
+
+        // 下一个窗口只有 user:1 仍达到阈值
+        detector.rotate();
+        this.recordTimes("user:1", 5);
+        this.recordTimes("user:2", 1);
+        detector.rotate();
+
+        Assertions.assertTrue(detector.isHot("user:1"));
+        Assertions.assertFalse(detector.isHot("user:2"));
+
+        // 计数已清零，新窗口内重新累计
+        detector.rotate();
+        Assertions.assertEquals(0, detector.getHotKeyCount());
+        Assertions.assertFalse(detector.record("user:2"));
+    }
+
+    @Test
+    void disabledDetectorNeverPromotes() {
+        HotKeyDetector disabled = new HotKeyDetector();
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertFalse(disabled.record("user:1"));
+        }
+        Assertions.assertFalse(disabled.isHot("user:1"));
+    }
+
+    private void recordTimes(String key, int times) {
+        for (int i = 0; i < times; i++) {
+            detector.record(key);
+        }
+    }
+
+    @Test
+    void equalHashCodesDoNotShareCounters() {
+        Assertions.assertEquals("user:Aa".hashCode(), "user:BB".hashCode());
+        for (int i = 0; i < 5; i++) {
+            detector.record("user:Aa");
+        }
+        Assertions.assertTrue(detector.isHot("user:Aa"));
+        Assertions.assertFalse(detector.record("user:BB"), "a colliding hashCode must not inherit the count");
+    }
+}
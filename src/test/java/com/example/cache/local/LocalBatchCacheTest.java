@@ -0,0 +1,112 @@
+package com.example.cache.local;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LocalBatchCache：按 localSeconds 过期、按字节数淘汰、其他节点的失效通知，以及忽略本节点发出的通知
+ *
+ * @author zhuwei
+ * @Date 2020/12/3 PM4:10
+ */
+class LocalBatchCacheTest {
+
+    private static final String CHANNEL = "batch-cache:invalidation";
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final Ticker ticker = nanos::get;
+
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, Object> redisTemplate = Mockito.mock(RedisTemplate.class);
+
+    @Test
+    void expiresPerLocalSeconds() {
+        LocalBatchCache cache = this.newCache(0L);
+        cache.put("user:1", "a", 1);
+        cache.put("user:2", "b", 5);
+        cache.put("user:3", "c", 0);
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1_500));
+        Assertions.assertNull(cache.get("user:1"));
+        Assertions.assertEquals("b", cache.get("user:2"));
+        Assertions.assertNull(cache.get("user:3"), "seconds <= 0 is not cached");
+
+        // 读取不延长有效期
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        Assertions.assertNull(cache.get("user:2"));
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void evictsByWeight() {
+        Mockito.when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) StringRedisSerializer.UTF_8);
+        LocalBatchCache cache = this.newCache(1_000L);
+        char[] large = new char[400];
+        Arrays.fill(large, 'x');
+        for (int i = 0; i < 10; i++) {
+            cache.put("user:" + i, new String(large), 60);
+        }
+        cache.cleanUp();
+        Assertions.assertTrue(cache.estimatedSize() <= 2, "at most two 400-byte values fit in 1000 bytes");
+    }
+
+    @Test
+    void invalidatesOnMessageFromOtherNode() {
+        LocalBatchCache cache = this.newCache(0L);
+        cache.put("user:1", "a", 60);
+        cache.put("user:2", "b", 60);
+        cache.put("user:3", "c", 60);
+
+        cache.onMessage(this.message("other-node\nuser:1\nuser:2"), null);
+
+        Assertions.assertNull(cache.get("user:1"));
+        Assertions.assertNull(cache.get("user:2"));
+        Assertions.assertEquals("c", cache.get("user:3"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ignoresOwnMessage() {
+        LocalBatchCache cache = this.newCache(0L);
+        cache.evict(Collections.singletonList("user:1"));
+        ArgumentCaptor<RedisCallback<Long>> callback = ArgumentCaptor.forClass(RedisCallback.class);
+        Mockito.verify(redisTemplate).execute(callback.capture());
+        RedisConnection connection = Mockito.mock(RedisConnection.class);
+        callback.getValue().doInRedis(connection);
+        ArgumentCaptor<byte[]> published = ArgumentCaptor.forClass(byte[].class);
+        Mockito.verify(connection).publish(Mockito.eq(CHANNEL.getBytes(StandardCharsets.UTF_8)), published.capture());
+
+        // 本节点回填后收到自己发出的通知，不失效
+        cache.put("user:1", "a", 60);
+        cache.onMessage(new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8), published.getValue()), null);
+        Assertions.assertEquals("a", cache.get("user:1"));
+
+        // 同样的 key 由其他节点发出时失效
+        cache.onMessage(this.message("other-node\nuser:1"), null);
+        Assertions.assertNull(cache.get("user:1"));
+    }
+
+    private LocalBatchCache newCache(long maximumWeight) {
+        return new LocalBatchCache(100, maximumWeight, redisTemplate, CHANNEL, ticker, Runnable::run);
+    }
+
+    private DefaultMessage message(String body) {
+        return new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
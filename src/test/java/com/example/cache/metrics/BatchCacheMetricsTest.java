@@ -0,0 +1,52 @@
+package com.example.cache.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * BatchCacheMetrics：每个（缓存，序列化方式）只包装一次，交替使用不同序列化方式时实例不变，编解码耗时按缓存记录
+ *
+ * @author zhuwei
+ * @Date 2020/12/23 PM5:20
+ */
+class BatchCacheMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final BatchCacheMetrics metrics = new BatchCacheMetrics(registry);
+
+    @Test
+    void wrapsEachCacheAndSerializerOnce() {
+        RedisSerializer<?> json = new GenericJackson2JsonRedisSerializer();
+        RedisSerializer<?> timedString = metrics.timed("user", StringRedisSerializer.UTF_8);
+        RedisSerializer<?> timedJson = metrics.timed("user", json);
+
+        Assertions.assertNotSame(timedString, timedJson);
+        Assertions.assertSame(timedString, metrics.timed("user", StringRedisSerializer.UTF_8));
+        Assertions.assertSame(timedJson, metrics.timed("user", json));
+        Assertions.assertNotSame(timedString, metrics.timed("order", StringRedisSerializer.UTF_8));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void recordsSerializationPerCache() {
+        RedisSerializer<Object> timed = (RedisSerializer<Object>) metrics.timed("user", StringRedisSerializer.UTF_8);
+        Assertions.assertEquals("a", timed.deserialize(timed.serialize("a")));
+
+        Timer serialize = registry.get("batch.cache.serialization").tags("cache", "user", "operation", "serialize").timer();
+        Timer deserialize = registry.get("batch.cache.serialization").tags("cache", "user", "operation", "deserialize").timer();
+        Assertions.assertEquals(1, serialize.count());
+        Assertions.assertEquals(1, deserialize.count());
+    }
+
+    @Test
+    void returnsDelegateWhenDisabled() {
+        BatchCacheMetrics disabled = new BatchCacheMetrics(null);
+        Assertions.assertSame(StringRedisSerializer.UTF_8, disabled.timed("user", StringRedisSerializer.UTF_8));
+    }
+}
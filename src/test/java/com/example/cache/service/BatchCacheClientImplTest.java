@@ -0,0 +1,329 @@
+package com.example.cache.service;
+
+import com.example.cache.BatchCacheProperties;
+import com.example.cache.RedisMultiCache;
+import com.example.cache.annotation.BatchCache;
+import com.example.cache.aspect.BatchCacheAspect;
+import com.example.cache.bloom.BloomFilterRegistry;
+import com.example.cache.entity.User;
+import com.example.cache.local.HotKeyDetector;
+import com.example.cache.local.LocalBatchCache;
+import com.example.cache.metrics.BatchCacheMetrics;
+import com.example.cache.support.BatchCacheExecutors;
+import com.example.cache.support.BatchCacheGenerations;
+import com.example.cache.support.BatchCacheLoader;
+import com.example.cache.support.BatchCacheOperation;
+import com.example.cache.support.BatchCacheWriter;
+import com.example.cache.support.LeaseReleaseListener;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * BatchCacheClientImpl 和 BatchCacheAspect 基于本地 redis-server 的读写
+ * <p>
+ * 1 loadAndCache 分区：加载方法按 loaderBatchSize 收到分区，每个分区写回，失败抛给调用方，loaderParallelism=1 时都在调用线程加载
+ * 2 loadCacheAsync，以及切面对 CompletableFuture / Mono 返回值的处理
+ * 3 切面：方法元数据每个方法只解析一次，加载器只传入未命中的 key，并按参数声明的集合类型传入，其他参数不变
+ * </p>
+ * 需要本地安装 redis-server（端口 6392），未安装时跳过
+ *
+ * @author zhuwei
+ * @Date 2020/12/26 AM10:20
+ */
+class BatchCacheClientImplTest {
+
+    private static final int PORT = 6392;
+
+    private static Process redis;
+
+    private static LettuceConnectionFactory factory;
+
+    private static RedisTemplate<String, Object> redisTemplate;
+
+    private static BatchCacheExecutors executors;
+
+    private static BatchCacheClientImpl client;
+
+    private final Source source = new Source();
+
+    @BeforeAll
+    static void startRedis() throws Exception {
+        Assumptions.assumeTrue(available(), "redis-server not found");
+        File dir = Files.createTempDirectory("batch-cache-client").toFile();
+        redis = new ProcessBuilder("redis-server", "--port", String.valueOf(PORT), "--save", "", "--appendonly", "no")
+            .directory(dir).redirectErrorStream(true).redirectOutput(new File(dir, "redis.log")).start();
+
+        factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", PORT));
+        factory.afterPropertiesSet();
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(factory);
+        redisTemplate.setKeySerializer(StringRedisSerializer.UTF_8);
+        redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (true) {
+            try {
+                redisTemplate.hasKey("ping");
+                break;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+
+        RedisMultiCache redisMultiCache = new RedisMultiCache(null, redisTemplate, null, false);
+        executors = new BatchCacheExecutors(2, 4);
+        redisMultiCache.setPipelineExecutor(executors.getPipeline());
+        redisMultiCache.setCallbackExecutor(executors.getCallback());
+        client = new BatchCacheClientImpl(redisMultiCache,
+            new LocalBatchCache(1_000, redisTemplate, "batch-cache:invalidation"),
+            new BatchCacheProperties(),
+            executors,
+            new BloomFilterRegistry(redisTemplate, 1_000, 0.01),
+            new BatchCacheWriter(redisMultiCache),
+            new BatchCacheMetrics(null),
+            new BatchCacheGenerations(redisMultiCache, executors, 0L, 500, 0L),
+            new HotKeyDetector(),
+            new LeaseReleaseListener(redisTemplate, "batch-cache:lease-release"));
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        if (executors != null) {
+            executors.destroy();
+        }
+        if (factory != null) {
+            factory.destroy();
+        }
+        if (redis != null) {
+            redis.destroy();
+        }
+    }
+
+    @BeforeEach
+    void flush() {
+        redisTemplate.execute(connection -> {
+            connection.flushDb();
+            return null;
+        }, true);
+    }
+
+    @Test
+    void loadsAndWritesBackEachPartition() throws Exception {
+        BatchCacheOperation operation = this.operation("listPartitioned");
+        List<Object> keys = this.ids(1, 35);
+
+        Map<Object, Object> result = client.loadCache(operation, keys, this.loader(source::listPartitioned));
+
+        Assertions.assertEquals(35, result.size());
+        List<Integer> sizes = source.batches.stream().map(List::size).sorted().collect(Collectors.toList());
+        Assertions.assertEquals(Arrays.asList(5, 10, 10, 10), sizes);
+        for (Object key : keys) {
+            Assertions.assertNotNull(redisTemplate.opsForValue().get("test:partitioned:" + key), "written back: " + key);
+        }
+
+        // 全部命中，不再调用加载方法
+        source.batches.clear();
+        Assertions.assertEquals(35, client.loadCache(operation, keys, this.loader(source::listPartitioned)).size());
+        Assertions.assertTrue(source.batches.isEmpty());
+    }
+
+    @Test
+    void partitionFailureReachesCaller() throws Exception {
+        BatchCacheOperation operation = this.operation("listPartitioned");
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class,
+            () -> client.loadCache(operation, this.ids(1, 35), missKeys -> {
+                if (missKeys.contains(17L)) {
+                    throw new IllegalStateException("partition failed");
+                }
+                return new HashMap<>(source.listPartitioned(this.longs(missKeys)));
+            }));
+        Assertions.assertEquals("partition failed", e.getMessage());
+        Assertions.assertNull(redisTemplate.opsForValue().get("test:partitioned:17"));
+    }
+
+    @Test
+    void serialPartitionsStayOnCallerThread() throws Exception {
+        BatchCacheOperation operation = this.operation("listSerial");
+        client.loadCache(operation, this.ids(1, 35), this.loader(source::listSerial));
+
+        Assertions.assertEquals(4, source.threads.size());
+        Assertions.assertEquals(Collections.singleton(Thread.currentThread().getName()), new LinkedHashSet<>(source.threads));
+    }
+
+    @Test
+    void loadsAsyncAndHitsRedisAfterwards() throws Exception {
+        BatchCacheOperation operation = this.operation("listAsync");
+        List<Object> keys = this.ids(1, 20);
+
+        Map<Object, Object> result = client.loadCacheAsync(operation, keys,
+            missKeys -> source.listAsync(this.longs(missKeys)).thenApply(users -> new HashMap<Object, Object>(users))).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(20, result.size());
+        Assertions.assertEquals(Collections.singletonList(20), source.batches.stream().map(List::size).collect(Collectors.toList()));
+
+        source.batches.clear();
+        result = client.loadCacheAsync(operation, keys,
+            missKeys -> source.listAsync(this.longs(missKeys)).thenApply(users -> new HashMap<Object, Object>(users))).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(20, result.size());
+        Assertions.assertTrue(source.batches.isEmpty());
+    }
+
+    @Test
+    void aspectReturnsFutureAndLazyMono() throws Exception {
+        Source proxy = this.proxy(new BatchCacheAspect(client));
+
+        Map<Long, User> users = proxy.listAsync(Arrays.asList(1L, 2L)).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(new User(2L, "user-2"), users.get(2L));
+
+        Mono<Map<Long, User>> mono = proxy.listMono(Arrays.asList(3L, 4L));
+        Assertions.assertTrue(source.batches.stream().noneMatch(batch -> batch.contains(3L)), "Mono loads on subscribe");
+        Assertions.assertEquals(new User(4L, "user-4"), mono.block().get(4L));
+        Assertions.assertEquals(new User(1L, "user-1"), proxy.listMono(Collections.singletonList(1L)).block().get(1L));
+    }
+
+    @Test
+    void aspectPassesOnlyMissesWithDeclaredCollectionType() {
+        Source proxy = this.proxy(new BatchCacheAspect(client));
+        proxy.listByTenant("t1", new LinkedHashSet<>(Arrays.asList(1L, 2L)));
+        source.batches.clear();
+        source.tenants.clear();
+
+        Map<Long, User> users = proxy.listByTenant("t1", new LinkedHashSet<>(Arrays.asList(1L, 2L, 3L, 4L)));
+
+        Assertions.assertEquals(4, users.size());
+        Assertions.assertEquals(Collections.singletonList(Arrays.asList(3L, 4L)), source.batches);
+        Assertions.assertEquals(Collections.singletonList("t1"), source.tenants);
+        Assertions.assertTrue(source.keyArgs.get(source.keyArgs.size() - 1) instanceof Set);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void aspectParsesEachMethodOnce() {
+        BatchCacheClient mockClient = Mockito.mock(BatchCacheClient.class);
+        Mockito.when(mockClient.loadCache(Mockito.any(), Mockito.anyList(), Mockito.any())).thenReturn(new HashMap<>());
+        Source proxy = this.proxy(new BatchCacheAspect(mockClient));
+
+        proxy.listSerial(Collections.singletonList(1L));
+        proxy.listSerial(Collections.singletonList(2L));
+        proxy.listPartitioned(Collections.singletonList(3L));
+
+        ArgumentCaptor<BatchCacheOperation> operations = ArgumentCaptor.forClass(BatchCacheOperation.class);
+        Mockito.verify(mockClient, Mockito.times(3)).loadCache(operations.capture(), Mockito.anyList(), Mockito.any());
+        Assertions.assertSame(operations.getAllValues().get(0), operations.getAllValues().get(1));
+        Assertions.assertNotSame(operations.getAllValues().get(0), operations.getAllValues().get(2));
+    }
+
+    private BatchCacheOperation operation(String methodName) throws Exception {
+        Method method = Source.class.getMethod(methodName, List.class);
+        return BatchCacheOperation.of(method, new String[]{"ids"}, method.getAnnotation(BatchCache.class));
+    }
+
+    private Source proxy(BatchCacheAspect aspect) {
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(source);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(aspect);
+        return proxyFactory.getProxy();
+    }
+
+    private BatchCacheLoader loader(Function<List<Long>, Map<Long, User>> method) {
+        return missKeys -> new HashMap<>(method.apply(this.longs(missKeys)));
+    }
+
+    private List<Object> ids(long from, long to) {
+        return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+    }
+
+    private List<Long> longs(List<Object> keys) {
+        return keys.stream().map(Long.class::cast).collect(Collectors.toList());
+    }
+
+    private static boolean available() {
+        try {
+            return new ProcessBuilder("redis-server", "--version").start().waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 被缓存的方法，记录每次加载收到的 key、线程和其他参数
+     */
+    public static class Source {
+
+        private final List<List<Long>> batches = new CopyOnWriteArrayList<>();
+
+        private final List<String> threads = new CopyOnWriteArrayList<>();
+
+        private final List<String> tenants = new CopyOnWriteArrayList<>();
+
+        private final List<Object> keyArgs = new CopyOnWriteArrayList<>();
+
+        @BatchCache(value = "test:partitioned", key = "ids", seconds = 60, loaderBatchSize = 10, loaderParallelism = 3)
+        public Map<Long, User> listPartitioned(List<Long> ids) {
+            return this.load(ids);
+        }
+
+        @BatchCache(value = "test:serial", key = "ids", seconds = 60, loaderBatchSize = 10)
+        public Map<Long, User> listSerial(List<Long> ids) {
+            return this.load(ids);
+        }
+
+        @BatchCache(value = "test:async", key = "ids", seconds = 60)
+        public CompletableFuture<Map<Long, User>> listAsync(List<Long> ids) {
+            return CompletableFuture.supplyAsync(() -> this.load(ids));
+        }
+
+        @BatchCache(value = "test:async", key = "ids", seconds = 60)
+        public Mono<Map<Long, User>> listMono(List<Long> ids) {
+            return Mono.fromSupplier(() -> this.load(ids));
+        }
+
+        @BatchCache(value = "test:tenant", key = "ids", seconds = 60)
+        public Map<Long, User> listByTenant(String tenant, Set<Long> ids) {
+            tenants.add(tenant);
+            keyArgs.add(ids);
+            return this.load(new ArrayList<>(ids));
+        }
+
+        private Map<Long, User> load(List<Long> ids) {
+            batches.add(new ArrayList<>(ids));
+            threads.add(Thread.currentThread().getName());
+            Map<Long, User> users = new HashMap<>(ids.size() * 2);
+            ids.forEach(id -> users.put(id, new User(id, "user-" + id)));
+            return users;
+        }
+    }
+}
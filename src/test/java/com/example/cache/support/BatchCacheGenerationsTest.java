@@ -0,0 +1,102 @@
+package com.example.cache.support;
+
+import com.example.cache.RedisMultiCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchCacheGenerations 版本号：以 redis 为准（包括变小），读取期间本节点写入的版本号不被覆盖，按元数据实例切换版本
+ *
+ * @author zhuwei
+ * @Date 2020/12/28 PM2:20
+ */
+class BatchCacheGenerationsTest {
+
+    private static final String COUNTER = BatchCacheGenerations.REDIS_KEY_PREFIX + "user";
+
+    private final RedisMultiCache redisMultiCache = Mockito.mock(RedisMultiCache.class);
+
+    private final BatchCacheExecutors executors = new BatchCacheExecutors(1, 1);
+
+    private final BatchCacheGenerations generations = new BatchCacheGenerations(redisMultiCache, executors, 0L, 100, 0L);
+
+    @AfterEach
+    void tearDown() {
+        executors.destroy();
+    }
+
+    @Test
+    void refreshFollowsRedisIncludingDecrease() {
+        Mockito.when(redisMultiCache.listCounters(Collections.singletonList(COUNTER)))
+            .thenReturn(Collections.singletonList(3L), Collections.singletonList(5L), Collections.singletonList(0L));
+        Assertions.assertEquals(3L, generations.current("user"));
+
+        generations.refresh();
+        Assertions.assertEquals(5L, generations.current("user"));
+
+        // 计数器被删除或淘汰后回到版本 0
+        generations.refresh();
+        Assertions.assertEquals(0L, generations.current("user"));
+    }
+
+    @Test
+    void refreshKeepsFailedReadGeneration() {
+        Mockito.when(redisMultiCache.listCounters(Collections.singletonList(COUNTER)))
+            .thenReturn(Collections.singletonList(2L), (List<Long>) null);
+        Assertions.assertEquals(2L, generations.current("user"));
+
+        generations.refresh();
+        Assertions.assertEquals(2L, generations.current("user"));
+    }
+
+    @Test
+    void staleRefreshDoesNotOverrideAdvance() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(redisMultiCache.listCounters(Collections.singletonList(COUNTER)))
+            .thenReturn(Collections.singletonList(1L))
+            .thenAnswer(invocation -> {
+                reading.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                // advance 之前读取到的版本号
+                return Collections.singletonList(1L);
+            });
+        Mockito.when(redisMultiCache.incrCounter(COUNTER)).thenReturn(2L);
+        Assertions.assertEquals(1L, generations.current("user"));
+
+        CompletableFuture<Void> refresh = CompletableFuture.runAsync(generations::refresh);
+        Assertions.assertTrue(reading.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(2L, generations.advance("user"));
+        release.countDown();
+        refresh.get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(2L, generations.current("user"));
+    }
+
+    @Test
+    void resolvesPerOperationInstance() throws Exception {
+        Mockito.when(redisMultiCache.listCounters(Collections.singletonList(COUNTER))).thenReturn(Collections.singletonList(1L));
+        // 同一个方法上的 @BatchCacheEvict / @BatchCachePut 元数据不同，分别切换版本
+        Method method = Object.class.getMethod("toString");
+        BatchCacheOperation evict = BatchCacheOperation.builder().method(method).keyPrefix("user")
+            .cacheKeyPrefix(BatchCacheOperation.cacheKeyPrefix("user", 0L)).build();
+        BatchCacheOperation put = evict.toBuilder().seconds(60L).build();
+
+        BatchCacheOperation versionedEvict = generations.resolve(evict);
+        BatchCacheOperation versionedPut = generations.resolve(put);
+        Assertions.assertEquals("user:g1:", versionedEvict.getCacheKeyPrefix());
+        Assertions.assertEquals(0L, versionedEvict.getSeconds());
+        Assertions.assertEquals(60L, versionedPut.getSeconds());
+        Assertions.assertSame(versionedEvict, generations.resolve(evict));
+        Assertions.assertSame(versionedPut, generations.resolve(put));
+    }
+}
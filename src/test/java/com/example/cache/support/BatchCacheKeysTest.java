@@ -0,0 +1,45 @@
+package com.example.cache.support;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BatchCacheKeys 生成的 String key 和 byte[] key 与 prefix + id 经 StringRedisSerializer.UTF_8 编码的结果一致
+ *
+ * @author zhuwei
+ * @Date 2020/12/30 PM4:00
+ */
+class BatchCacheKeysTest {
+
+    private static final String PREFIX = "user:g2:";
+
+    private static final byte[] PREFIX_BYTES = StringRedisSerializer.UTF_8.serialize(PREFIX);
+
+    @Test
+    void encodesLikeStringSerializer() {
+        List<Object> ids = Arrays.asList(0L, 7L, 10L, 1_000_000L, -1L, -90L, Long.MAX_VALUE, Long.MIN_VALUE,
+            0, 42, -42, Integer.MAX_VALUE, Integer.MIN_VALUE, "abc", "", "用户", "a用b", new BigDecimal("1.50"));
+        for (Object id : ids) {
+            String expected = PREFIX + id;
+            Assertions.assertEquals(expected, BatchCacheKeys.key(PREFIX, id));
+            Assertions.assertArrayEquals(StringRedisSerializer.UTF_8.serialize(expected), BatchCacheKeys.toBytes(expected));
+            Assertions.assertArrayEquals(StringRedisSerializer.UTF_8.serialize(expected), BatchCacheKeys.rawKey(PREFIX_BYTES, id),
+                "id=" + id);
+        }
+    }
+
+    @Test
+    void operationEncodesPrefixOnce() {
+        BatchCacheOperation operation = BatchCacheOperation.builder().keyPrefix("user").cacheKeyPrefix("user:").build();
+        Assertions.assertArrayEquals(StringRedisSerializer.UTF_8.serialize("user:"), operation.getCacheKeyPrefixBytes());
+
+        BatchCacheOperation versioned = operation.withGeneration(3L);
+        Assertions.assertEquals("user:g3:", versioned.getCacheKeyPrefix());
+        Assertions.assertArrayEquals(StringRedisSerializer.UTF_8.serialize("user:g3:"), versioned.getCacheKeyPrefixBytes());
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.cache.support;
+
+import com.example.cache.annotation.BatchCache;
+import com.example.cache.annotation.BatchCacheEvict;
+import com.example.cache.annotation.BatchCachePut;
+import com.example.cache.codec.CborBatchCacheCodec;
+import com.example.cache.codec.JsonBatchCacheCodec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BatchCacheStorageValidator：@BatchCacheEvict / @BatchCachePut 的分桶和编解码与同一个前缀的 @BatchCache 比较
+ *
+ * @author zhuwei
+ * @Date 2020/12/25 PM4:10
+ */
+class BatchCacheStorageValidatorTest {
+
+    @Test
+    void acceptsConsistentDeclarations() {
+        BatchCacheStorageValidator validator = new BatchCacheStorageValidator();
+        validator.postProcessAfterInitialization(new ConsistentSource(), "consistentSource");
+        validator.postProcessAfterInitialization(new UnrelatedEvict(), "unrelatedEvict");
+        Assertions.assertDoesNotThrow(validator::afterSingletonsInstantiated);
+    }
+
+    @Test
+    void rejectsMismatchedBucketSizeAndCodec() {
+        BatchCacheStorageValidator validator = new BatchCacheStorageValidator();
+        validator.postProcessAfterInitialization(new ConsistentSource(), "consistentSource");
+        validator.postProcessAfterInitialization(new MismatchedWriter(), "mismatchedWriter");
+
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, validator::afterSingletonsInstantiated);
+        Assertions.assertTrue(e.getMessage().contains("@BatchCacheEvict(\"user\")"), e.getMessage());
+        Assertions.assertTrue(e.getMessage().contains("bucketSize=0"), e.getMessage());
+        Assertions.assertTrue(e.getMessage().contains("codec=JsonBatchCacheCodec"), e.getMessage());
+    }
+
+    @Test
+    void rejectsDisagreeingBatchCaches() {
+        BatchCacheStorageValidator validator = new BatchCacheStorageValidator();
+        validator.postProcessAfterInitialization(new ConsistentSource(), "consistentSource");
+        validator.postProcessAfterInitialization(new OtherReader(), "otherReader");
+        Assertions.assertThrows(IllegalStateException.class, validator::afterSingletonsInstantiated);
+    }
+
+    static class ConsistentSource {
+
+        @BatchCache(value = "user", bucketSize = 1000, codec = CborBatchCacheCodec.class)
+        public Map<Long, String> listByIds(List<Long> ids) {
+            return null;
+        }
+
+        @BatchCachePut(value = "user", bucketSize = 1000, codec = CborBatchCacheCodec.class)
+        public Map<Long, String> update(List<String> values) {
+            return null;
+        }
+
+        @BatchCacheEvict(value = "user", key = "ids", bucketSize = 1000)
+        public void delete(List<Long> ids) {
+        }
+    }
+
+    static class UnrelatedEvict {
+
+        @BatchCacheEvict(value = "order", key = "ids")
+        public void delete(List<Long> ids) {
+        }
+    }
+
+    static class MismatchedWriter {
+
+        @BatchCachePut(value = "user", bucketSize = 1000, codec = JsonBatchCacheCodec.class)
+        public Map<Long, String> update(List<String> values) {
+            return null;
+        }
+
+        @BatchCacheEvict(value = "user", key = "ids")
+        public void delete(List<Long> ids) {
+        }
+    }
+
+    static class OtherReader {
+
+        @BatchCache(value = "user", codec = CborBatchCacheCodec.class)
+        public Map<Long, String> listAll(List<Long> ids) {
+            return null;
+        }
+    }
+}
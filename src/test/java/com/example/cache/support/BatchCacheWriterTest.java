@@ -0,0 +1,77 @@
+package com.example.cache.support;
+
+import com.example.cache.RedisMultiCache;
+import com.example.cache.WriteBehindOverflowPolicy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchCacheWriter write-behind：discard 移除队列中的回填，并等待正在写入的一批完成
+ *
+ * @author zhuwei
+ * @Date 2020/12/22 PM3:10
+ */
+class BatchCacheWriterTest {
+
+    @Test
+    void discardRemovesQueuedWrites() throws Exception {
+        RedisMultiCache redisMultiCache = Mockito.mock(RedisMultiCache.class);
+        List<Map<String, Object>> written = new CopyOnWriteArrayList<>();
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            Map<String, Object> map = invocation.getArgument(0);
+            written.add(map);
+            flushing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(redisMultiCache).fillBatch(Mockito.anyMap(), Mockito.any(), Mockito.any(), Mockito.any());
+
+        BatchCacheWriter writer = new BatchCacheWriter(redisMultiCache, true, 100, 100, 10L,
+            WriteBehindOverflowPolicy.CALLER_RUNS, 0L);
+        try {
+            writer.write(Collections.singletonMap("a", "old-a"), 60L);
+            Assertions.assertTrue(flushing.await(5, TimeUnit.SECONDS));
+
+            // 后台线程正在写 a，此时 b 在队列中等待
+            writer.write(Collections.singletonMap("b", "old-b"), 60L);
+            CompletableFuture<Void> discard = CompletableFuture.runAsync(() -> writer.discard(Collections.singletonList("b")));
+            Thread.sleep(100);
+            Assertions.assertFalse(discard.isDone(), "discard waits for the in-flight flush");
+
+            release.countDown();
+            discard.get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(0, writer.getPendingCount());
+        } finally {
+            release.countDown();
+        }
+        // b 可能在 discard 返回前被写入（之后的删除会覆盖它），但 discard 返回后不会再写入
+        int writtenBeforeReturn = written.size();
+        Thread.sleep(100);
+        writer.destroy();
+        Assertions.assertEquals(writtenBeforeReturn, written.size());
+        Assertions.assertEquals(Collections.singletonMap("a", "old-a"), written.get(0));
+    }
+
+    @Test
+    void discardIsNoopWithoutWriteBehind() {
+        RedisMultiCache redisMultiCache = Mockito.mock(RedisMultiCache.class);
+        BatchCacheWriter writer = new BatchCacheWriter(redisMultiCache);
+
+        writer.write(Collections.singletonMap("a", "a"), 60L);
+        writer.discard(Collections.singletonList("a"));
+
+        Mockito.verify(redisMultiCache).fillBatch(Mockito.eq(Collections.singletonMap("a", "a")), Mockito.any(), Mockito.any(),
+            Mockito.any());
+        Assertions.assertEquals(0, writer.getPendingCount());
+    }
+}
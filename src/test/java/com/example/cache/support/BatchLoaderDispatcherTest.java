@@ -0,0 +1,127 @@
+package com.example.cache.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * BatchLoaderDispatcher 合并触发：达到 maxBatchSize 立即执行、窗口到期执行、异常分发、线程池拒绝
+ *
+ * @author zhuwei
+ * @Date 2020/12/18 PM4:10
+ */
+class BatchLoaderDispatcherTest {
+
+    private ScheduledExecutorService scheduler;
+
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+
+    private final List<String> batchThreads = new CopyOnWriteArrayList<>();
+
+    private final Executor rejecting = command -> {
+        throw new RejectedExecutionException("queue full");
+    };
+
+    private final Function<List<Integer>, Map<Integer, String>> batchFunction = keys -> {
+        batches.add(keys);
+        batchThreads.add(Thread.currentThread().getName());
+        return keys.stream().filter(key -> key > 0).collect(Collectors.toMap(key -> key, key -> "v" + key));
+    };
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void flushesWhenMaxBatchSizeReached() throws Exception {
+        // 窗口足够长，只有达到 maxBatchSize 才会执行
+        BatchLoaderDispatcher<Integer, String> dispatcher =
+            new BatchLoaderDispatcher<>(batchFunction, 60_000, 3, scheduler, Runnable::run);
+
+        CompletableFuture<String> first = dispatcher.load(1);
+        CompletableFuture<String> second = dispatcher.load(2);
+        Assertions.assertFalse(first.isDone());
+        Assertions.assertTrue(batches.isEmpty());
+
+        CompletableFuture<String> third = dispatcher.load(3);
+        Assertions.assertEquals("v1", first.get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals("v2", second.get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals("v3", third.get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(Collections.singletonList(Arrays.asList(1, 2, 3)), batches);
+    }
+
+    @Test
+    void flushesWhenWindowExpires() throws Exception {
+        BatchLoaderDispatcher<Integer, String> dispatcher =
+            new BatchLoaderDispatcher<>(batchFunction, 20, 100, scheduler, Runnable::run);
+
+        CompletableFuture<String> first = dispatcher.load(1);
+        CompletableFuture<String> duplicate = dispatcher.load(1);
+        CompletableFuture<String> absent = dispatcher.load(-1);
+
+        Assertions.assertSame(first, duplicate);
+        Assertions.assertEquals("v1", first.get(1, TimeUnit.SECONDS));
+        Assertions.assertNull(absent.get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(Collections.singletonList(Arrays.asList(1, -1)), batches);
+
+        // 上一个窗口结束后开始新的窗口
+        Assertions.assertEquals("v2", dispatcher.load(2).get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, batches.size());
+    }
+
+    @Test
+    void batchFailureReachesEveryCaller() {
+        BatchLoaderDispatcher<Integer, String> dispatcher = new BatchLoaderDispatcher<>(keys -> {
+            throw new IllegalStateException("batch failed");
+        }, 60_000, 2, scheduler, Runnable::run);
+
+        CompletableFuture<String> first = dispatcher.load(1);
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, () -> dispatcher.get(2));
+        Assertions.assertEquals("batch failed", e.getMessage());
+        Assertions.assertTrue(first.isCompletedExceptionally());
+    }
+
+    @Test
+    void rejectedSizeTriggeredBatchRunsOnCaller() throws Exception {
+        BatchLoaderDispatcher<Integer, String> dispatcher =
+            new BatchLoaderDispatcher<>(batchFunction, 60_000, 2, scheduler, rejecting);
+
+        CompletableFuture<String> first = dispatcher.load(1);
+        Assertions.assertEquals("v2", dispatcher.get(2));
+        Assertions.assertEquals("v1", first.get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(Collections.singletonList(Thread.currentThread().getName()), batchThreads);
+    }
+
+    @Test
+    void rejectedWindowBatchFailsWithoutRunningOnScheduler() {
+        BatchLoaderDispatcher<Integer, String> dispatcher =
+            new BatchLoaderDispatcher<>(batchFunction, 20, 100, scheduler, rejecting);
+
+        CompletableFuture<String> first = dispatcher.load(1);
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> first.get(1, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        Assertions.assertTrue(batches.isEmpty(), "batch function must not run on the scheduler thread");
+    }
+}
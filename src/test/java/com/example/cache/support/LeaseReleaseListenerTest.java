@@ -0,0 +1,76 @@
+package com.example.cache.support;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * LeaseReleaseListener：发布的通知唤醒等待同一 key 的请求，其他 key 的通知不唤醒，关闭后不再登记
+ *
+ * @author zhuwei
+ * @Date 2020/12/16 PM4:50
+ */
+class LeaseReleaseListenerTest {
+
+    private static final String CHANNEL = "batch-cache:lease-release";
+
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, Object> redisTemplate = Mockito.mock(RedisTemplate.class);
+
+    private final LeaseReleaseListener listener = new LeaseReleaseListener(redisTemplate, CHANNEL);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void publishedReleaseWakesWaiter() throws Exception {
+        try (LeaseReleaseListener.Waiter waiter = listener.register(Arrays.asList("user:1", "user:2"))) {
+            listener.publish(Arrays.asList("user:2", "user:3"));
+            ArgumentCaptor<RedisCallback<Long>> callback = ArgumentCaptor.forClass(RedisCallback.class);
+            Mockito.verify(redisTemplate).execute(callback.capture());
+            RedisConnection connection = Mockito.mock(RedisConnection.class);
+            callback.getValue().doInRedis(connection);
+            ArgumentCaptor<byte[]> published = ArgumentCaptor.forClass(byte[].class);
+            Mockito.verify(connection).publish(Mockito.eq(CHANNEL.getBytes(StandardCharsets.UTF_8)), published.capture());
+
+            listener.onMessage(new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8), published.getValue()), null);
+            Assertions.assertTrue(waiter.await(0L));
+        }
+    }
+
+    @Test
+    void otherKeysDoNotWake() throws Exception {
+        try (LeaseReleaseListener.Waiter waiter = listener.register(Collections.singletonList("user:1"))) {
+            listener.onMessage(this.message("user:2\nuser:3"), null);
+            Assertions.assertFalse(waiter.await(10L));
+        }
+    }
+
+    @Test
+    void closedWaiterIsNotSignalled() throws Exception {
+        LeaseReleaseListener.Waiter closed = listener.register(Collections.singletonList("user:1"));
+        closed.close();
+        try (LeaseReleaseListener.Waiter waiter = listener.register(Collections.singletonList("user:1"))) {
+            listener.onMessage(this.message("user:1"), null);
+            Assertions.assertTrue(waiter.await(0L));
+            Assertions.assertFalse(closed.await(0L));
+        }
+    }
+
+    @Test
+    void emptyReleaseIsNotPublished() {
+        listener.publish(Collections.emptyList());
+        Mockito.verifyNoInteractions(redisTemplate);
+    }
+
+    private DefaultMessage message(String body) {
+        return new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.cache.support;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SingleFlight 合并加载：结果发布、加载异常传递给等待方、结束后移除登记
+ *
+ * @author zhuwei
+ * @Date 2020/12/16 PM3:40
+ */
+class SingleFlightTest {
+
+    @Test
+    void waiterReceivesOwnerResult() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        SingleFlight.Flight owner = singleFlight.begin(Arrays.asList("a", "b"));
+        SingleFlight.Flight waiter = singleFlight.begin(Arrays.asList("c", "b", "a"));
+
+        Assertions.assertEquals(Arrays.asList(0, 1), owner.getOwnedIndexes());
+        Assertions.assertEquals(Collections.singletonList(0), waiter.getOwnedIndexes());
+        Assertions.assertEquals(Arrays.asList(1, 2), waiter.getWaitingIndexes());
+
+        owner.complete(Collections.singletonMap("a", "A"));
+        owner.finish();
+        waiter.finish();
+
+        Assertions.assertNull(waiter.getWaitingFutures().get(0).get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals("A", waiter.getWaitingFutures().get(1).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void waiterSeesOwnerFailure() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        SingleFlight.Flight owner = singleFlight.begin(Collections.singletonList("k"));
+        CompletableFuture<SingleFlight.Flight> waiter = CompletableFuture.supplyAsync(
+            () -> singleFlight.begin(Collections.singletonList("k")));
+        CompletableFuture<Object> waiting = waiter.get(1, TimeUnit.SECONDS).getWaitingFutures().get(0);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            try {
+                throw new IllegalArgumentException("loader failed");
+            } finally {
+                owner.finish();
+            }
+        });
+
+        Assertions.assertTrue(waiting.isCompletedExceptionally());
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> waiting.get(1, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause() instanceof IllegalStateException);
+        Assertions.assertTrue(e.getCause().getMessage().contains("k"));
+    }
+
+    @Test
+    void finishRemovesFlight() {
+        SingleFlight singleFlight = new SingleFlight();
+        SingleFlight.Flight first = singleFlight.begin(Arrays.asList("a", "b"));
+        first.complete(Collections.singletonMap("a", "A"));
+        first.finish();
+
+        SingleFlight.Flight second = singleFlight.begin(Arrays.asList("a", "b"));
+        Assertions.assertEquals(Arrays.asList(0, 1), second.getOwnedIndexes());
+        Assertions.assertTrue(second.getWaitingIndexes().isEmpty());
+        second.finish();
+    }
+
+    @Test
+    void finishOfStaleFlightKeepsNewerOne() {
+        SingleFlight singleFlight = new SingleFlight();
+        SingleFlight.Flight first = singleFlight.begin(Collections.singletonList("k"));
+        first.finish();
+        SingleFlight.Flight second = singleFlight.begin(Collections.singletonList("k"));
+
+        // 重复 finish 只移除自己登记的 future，不影响后来的 owner
+        first.finish();
+        SingleFlight.Flight third = singleFlight.begin(Collections.singletonList("k"));
+        Assertions.assertEquals(Collections.singletonList(0), third.getWaitingIndexes());
+        second.finish();
+        third.finish();
+    }
+}